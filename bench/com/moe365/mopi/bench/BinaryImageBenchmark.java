@@ -0,0 +1,105 @@
+package com.moe365.mopi.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.processing.BinaryImage;
+
+/**
+ * Benchmarks the {@link BinaryImage} queries (single pixels, row spans, and
+ * column spans) on each representation.
+ * <p>
+ * Each invocation runs {@value #QUERIES} queries at random positions (the
+ * same for every representation), with spans of up to a quarter of the
+ * frame. Scores are per query.
+ * </p>
+ * @author mailmindlin
+ * @see Masks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryImageBenchmark {
+	public static final int QUERIES = 1024;
+	
+	@Param({"BooleanArray", "Rich", "Tiled", "Bitset", "RunLength", "SummedArea"})
+	public String representation;
+	
+	@Param({"random", "clustered", "empty"})
+	public String pattern;
+	
+	@Param({"640x480"})
+	public String resolution;
+	
+	protected BinaryImage mask;
+	/**
+	 * Query positions. For rows, {x, y} are {xMin, y}, and the span is from
+	 * xMin to xMin + length (and the same for columns).
+	 */
+	protected final int[] xs = new int[QUERIES], ys = new int[QUERIES];
+	protected final int[] rowLengths = new int[QUERIES], colLengths = new int[QUERIES];
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		final int[] size = SyntheticFrames.parseResolution(resolution);
+		final int width = size[0], height = size[1];
+		Random random = new Random(365);
+		this.mask = Masks.convert(Masks.generate(pattern, width, height, random), representation);
+		for (int i = 0; i < QUERIES; i++) {
+			rowLengths[i] = random.nextInt(width / 4);
+			colLengths[i] = random.nextInt(height / 4);
+			xs[i] = random.nextInt(width - rowLengths[i]);
+			ys[i] = random.nextInt(height - colLengths[i]);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int test() {
+		final BinaryImage mask = this.mask;
+		int result = 0;
+		for (int i = 0; i < QUERIES; i++)
+			if (mask.test(xs[i], ys[i]))
+				result++;
+		return result;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int testRow() {
+		final BinaryImage mask = this.mask;
+		int result = 0;
+		for (int i = 0; i < QUERIES; i++)
+			if (mask.testRow(ys[i], xs[i], xs[i] + rowLengths[i]))
+				result++;
+		return result;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int testCol() {
+		final BinaryImage mask = this.mask;
+		int result = 0;
+		for (int i = 0; i < QUERIES; i++)
+			if (mask.testCol(xs[i], ys[i], ys[i] + colLengths[i]))
+				result++;
+		return result;
+	}
+}
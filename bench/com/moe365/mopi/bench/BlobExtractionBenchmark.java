@@ -0,0 +1,149 @@
+package com.moe365.mopi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.ImageProcessor;
+import com.moe365.mopi.geom.RectangleBuffer;
+import com.moe365.mopi.geom.ResultFrame;
+import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.BitsetBinaryImage;
+import com.moe365.mopi.processing.SummedAreaBinaryImage;
+
+/**
+ * End-to-end benchmarks of blob extraction
+ * ({@link ImageProcessor#boundingBox(BinaryImage, RectangleBuffer, int, int, int, int) boundingBox}
+ * and <code>processBooleanMap</code>) on a corpus of masks.
+ * <p>
+ * The corpus is loaded from the <kbd>delta[#].png</kbd> files in
+ * <kbd>maskDir</kbd> (as saved with <kbd>--save-diff</kbd>), i.e.,
+ * <kbd>-p maskDir=/path/to/field/img</kbd>. If there aren't any, masks are
+ * generated instead. Each invocation processes the next mask in the corpus,
+ * so scores are averaged over the whole corpus.
+ * </p>
+ * <p>
+ * {@link #boundingBox()} is always the recursive split search, so only
+ * {@link #processBooleanMap(Search)} is run with each <var>blobSearch</var>.
+ * A <kbd>SummedArea</kbd> table is rebuilt from the corpus mask on every
+ * invocation (into the same table), because in the processor it's built
+ * for every frame; building it from a bitset is a bit slower than building
+ * it while diffing, so this is an upper bound.
+ * </p>
+ * @author mailmindlin
+ * @see Masks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobExtractionBenchmark {
+	protected static final int MIN_BLOB_WIDTH = 5, MIN_BLOB_HEIGHT = 5;
+	
+	@Param({"img"})
+	public String maskDir;
+	
+	@Param({"Tiled", "Bitset", "RunLength", "SummedArea", "BooleanArray"})
+	public String representation;
+	
+	/**
+	 * Exposes {@link ImageProcessor#processBooleanMap(BinaryImage, int, int) processBooleanMap}
+	 */
+	protected static class BenchImageProcessor extends ImageProcessor {
+		public BenchImageProcessor(int frameWidth, int frameHeight) {
+			super(frameWidth, frameHeight, MIN_BLOB_WIDTH, MIN_BLOB_HEIGHT, rectangles -> {});
+		}
+		
+		public ResultFrame process(BinaryImage mask) {
+			return processBooleanMap(mask, getFrameWidth(), getFrameHeight());
+		}
+	}
+	
+	/**
+	 * Processor to run {@link BlobExtractionBenchmark#processBooleanMap(Search) processBooleanMap} with
+	 */
+	@State(Scope.Thread)
+	public static class Search {
+		@Param({"SPLIT", "LABEL"})
+		public String blobSearch;
+		
+		protected BenchImageProcessor processor;
+		
+		@Setup(Level.Trial)
+		public void setup(BlobExtractionBenchmark bench) {
+			this.processor = new BenchImageProcessor(bench.width, bench.height);
+			this.processor.setBlobSearch(ImageProcessor.BlobSearch.valueOf(blobSearch));
+		}
+	}
+	
+	protected BinaryImage[] masks;
+	/**
+	 * The corpus, if the masks have to be rebuilt on each invocation
+	 */
+	protected BitsetBinaryImage[] sources;
+	protected SummedAreaBinaryImage table;
+	protected int width, height;
+	protected BenchImageProcessor processor;
+	protected final RectangleBuffer rectangles = new RectangleBuffer();
+	protected int next = 0;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<BitsetBinaryImage> corpus = Masks.load(new File(maskDir));
+		if (corpus.isEmpty())
+			corpus = Masks.generateCorpus(640, 480, 10, new Random(365));
+		this.width = corpus.get(0).getWidth();
+		this.height = corpus.get(0).getHeight();
+		if ("SummedArea".equals(representation)) {
+			this.sources = corpus.toArray(new BitsetBinaryImage[corpus.size()]);
+			this.table = new SummedAreaBinaryImage(width, height);
+		} else {
+			this.masks = new BinaryImage[corpus.size()];
+			for (int i = 0; i < masks.length; i++)
+				masks[i] = Masks.convert(corpus.get(i), representation);
+		}
+		this.processor = new BenchImageProcessor(width, height);
+		this.processor.setBlobSearch(ImageProcessor.BlobSearch.SPLIT);
+	}
+	
+	protected BinaryImage nextMask() {
+		final BinaryImage mask;
+		if (sources != null) {
+			table.integrate(sources[next], 0, 0, width, height);
+			mask = table;
+		} else {
+			mask = masks[next];
+		}
+		next = (next + 1) % (sources != null ? sources.length : masks.length);
+		return mask;
+	}
+	
+	@Benchmark
+	public int boundingBox() {
+		rectangles.clear();
+		processor.boundingBox(nextMask(), rectangles, 0, width - 1, 0, height - 1);
+		return rectangles.size();
+	}
+	
+	@Benchmark
+	public ResultFrame processBooleanMap(Search search) {
+		return search.processor.process(nextMask());
+	}
+}
@@ -0,0 +1,107 @@
+package com.moe365.mopi.bench;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.geom.Polygon;
+import com.moe365.mopi.processing.BitsetBinaryImage;
+import com.moe365.mopi.processing.BorderFollowingTracer;
+import com.moe365.mopi.processing.ContourTracer;
+
+/**
+ * Compares the contour extractors on the same masks (i.e., without
+ * diffing).
+ * <dl>
+ * <dt>probe</dt><dd>{@link ContourTracer} (sparse seeds, then refining
+ * each edge by stepping along its normal)</dd>
+ * <dt>border</dt><dd>{@link BorderFollowingTracer} (one raster scan)</dd>
+ * </dl>
+ * Masks only have solid targets, because ContourTracer's second pass
+ * doesn't always terminate on speckle noise. Each invocation traces the next
+ * mask, so scores are averaged over all of them.
+ * @author mailmindlin
+ * @see Masks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContourTracerBenchmark {
+	protected static final int NUM_MASKS = 16;
+
+	@Param({"640x480", "1280x720"})
+	public String resolution;
+
+	@Param({"probe", "border"})
+	public String tracer;
+
+	/**
+	 * Exposes <code>tracePass1</code>
+	 */
+	protected static class BenchContourTracer extends ContourTracer {
+		public BenchContourTracer(int width, int height) {
+			super(width, height);
+		}
+
+		public List<Polygon> trace(BitsetBinaryImage mask) {
+			return tracePass1(mask);
+		}
+	}
+
+	protected BitsetBinaryImage[] masks;
+	protected Function<BitsetBinaryImage, List<Polygon>> trace;
+	protected int next = 0;
+	protected PrintStream stdout;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final int[] size = SyntheticFrames.parseResolution(resolution);
+		final Random random = new Random(365);
+		this.masks = new BitsetBinaryImage[NUM_MASKS];
+		for (int i = 0; i < NUM_MASKS; i++)
+			masks[i] = Masks.generate("clustered", size[0], size[1], random);
+		switch (tracer) {
+			case "probe":
+				this.trace = new BenchContourTracer(size[0], size[1])::trace;
+				break;
+			case "border":
+				this.trace = new BorderFollowingTracer(size[0], size[1], null)::trace;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown tracer: " + tracer);
+		}
+		//ContourTracer logs every polygon
+		this.stdout = QuietStdout.silence();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		QuietStdout.restore(this.stdout);
+	}
+
+	@Benchmark
+	public List<Polygon> trace() {
+		final BitsetBinaryImage mask = masks[next];
+		next = (next + 1) % masks.length;
+		return trace.apply(mask);
+	}
+}
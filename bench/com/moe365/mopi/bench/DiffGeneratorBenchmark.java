@@ -0,0 +1,144 @@
+package com.moe365.mopi.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.ImageProcessor;
+import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.DebuggingDiffGenerator;
+import com.moe365.mopi.processing.DiffGenerator;
+import com.moe365.mopi.processing.LazyDiffGenerator;
+import com.moe365.mopi.processing.ParallelDiffGenerator;
+import com.moe365.mopi.processing.PyramidDiffGenerator;
+import com.moe365.mopi.processing.RunLengthDiffGenerator;
+import com.moe365.mopi.processing.SummedAreaDiffGenerator;
+
+/**
+ * Benchmarks diffing a synthetic frame pair with each of the RGB diff
+ * generators, through {@link BiFunction#apply(Object, Object) apply} (which is
+ * what the processor calls).
+ * <p>
+ * Every generator returns a finished mask, so the time includes building
+ * any index over it (i.e., integrating the summed-area table). The
+ * <kbd>Parallel*</kbd> generators wrap the serial one of the same name in a
+ * {@link ParallelDiffGenerator} with <var>threads</var> threads.
+ * </p>
+ * <p>
+ * Run with <kbd>java -jar moepi-bench.jar DiffGeneratorBenchmark</kbd>. Any
+ * parameter can be narrowed down from the command line, i.e.,
+ * <kbd>-p resolution=640x480 -p imageType=TYPE_3BYTE_BGR</kbd>, or
+ * <kbd>-p generator=ParallelDiffGenerator -p threads=1,2,4</kbd>.
+ * </p>
+ * @author mailmindlin
+ * @see SyntheticFrames
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffGeneratorBenchmark {
+	@Param({"320x240", "640x480", "1280x720", "1920x1080"})
+	public String resolution;
+	
+	/**
+	 * Fraction of the frame covered by targets
+	 */
+	@Param({"0.01", "0.05", "0.2"})
+	public double density;
+	
+	@Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB", "TYPE_INT_ARGB"})
+	public String imageType;
+	
+	@Param({"DiffGenerator", "LazyDiffGenerator", "DebuggingDiffGenerator", "RunLengthDiffGenerator", "PyramidDiffGenerator", "SummedAreaDiffGenerator",
+			"ParallelDiffGenerator", "ParallelLazyDiffGenerator", "ParallelRunLengthDiffGenerator", "ParallelPyramidDiffGenerator"})
+	public String generator;
+	
+	/**
+	 * Number of threads for the <kbd>Parallel*</kbd> generators (ignored by
+	 * the others)
+	 */
+	@Param({"4"})
+	public int threads;
+	
+	protected BufferedImage on, off;
+	protected BiFunction<BufferedImage, BufferedImage, BinaryImage> diff;
+	protected PrintStream stdout;
+	
+	/**
+	 * Build a generator by name
+	 * @param threads Number of threads for the <kbd>Parallel*</kbd> generators
+	 */
+	public static BiFunction<BufferedImage, BufferedImage, BinaryImage> createGenerator(String name, int width, int height, int tolerance, int threads) {
+		switch (name) {
+			case "DiffGenerator":
+				return new DiffGenerator(0, 0, width, height, tolerance);
+			case "LazyDiffGenerator":
+				return new LazyDiffGenerator(0, 0, width, height, tolerance);
+			case "DebuggingDiffGenerator":
+				return new DebuggingDiffGenerator(0, 0, width, height, tolerance) {
+					@Override
+					protected void saveImages(BufferedImage onImg, BufferedImage offImg, BufferedImage imgR, BufferedImage imgG, BufferedImage imgB, BufferedImage imgFlt) {
+						//Don't write to the disk
+					}
+				};
+			case "RunLengthDiffGenerator":
+				return new RunLengthDiffGenerator(0, 0, width, height, tolerance);
+			case "PyramidDiffGenerator":
+				return new PyramidDiffGenerator(0, 0, width, height, tolerance, PyramidDiffGenerator.DEFAULT_COARSE_FACTOR);
+			case "SummedAreaDiffGenerator":
+				return new SummedAreaDiffGenerator(0, 0, width, height, tolerance);
+			case "ParallelDiffGenerator":
+				return new ParallelDiffGenerator<>(new DiffGenerator(0, 0, width, height, tolerance), threads);
+			case "ParallelLazyDiffGenerator":
+				return new ParallelDiffGenerator<>(new LazyDiffGenerator(0, 0, width, height, tolerance), threads);
+			case "ParallelRunLengthDiffGenerator":
+				return new ParallelDiffGenerator<>(new RunLengthDiffGenerator(0, 0, width, height, tolerance), threads);
+			case "ParallelPyramidDiffGenerator":
+				return new ParallelDiffGenerator<>(new PyramidDiffGenerator(0, 0, width, height, tolerance, PyramidDiffGenerator.DEFAULT_COARSE_FACTOR), threads);
+			default:
+				throw new IllegalArgumentException("Unknown generator: " + name);
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		final int[] size = SyntheticFrames.parseResolution(resolution);
+		BufferedImage[] frames = SyntheticFrames.generate(size[0], size[1], SyntheticFrames.parseImageType(imageType), density, new Random(365));
+		this.on = frames[0];
+		this.off = frames[1];
+		this.diff = createGenerator(generator, size[0], size[1], ImageProcessor.DEFAULT_TOLERANCE, threads);
+		//Some generators log every frame
+		this.stdout = QuietStdout.silence();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		QuietStdout.restore(this.stdout);
+		if (this.diff instanceof ParallelDiffGenerator)
+			((ParallelDiffGenerator<?>) this.diff).close();
+	}
+	
+	@Benchmark
+	public BinaryImage diff() {
+		return this.diff.apply(this.on, this.off);
+	}
+}
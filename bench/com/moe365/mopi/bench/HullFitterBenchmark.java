@@ -0,0 +1,80 @@
+package com.moe365.mopi.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.geom.HullFitter;
+
+/**
+ * Measures fitting a minimum-area rectangle to the outline of a rotated,
+ * target-sized blob (the leftmost and rightmost pixels of each row, like
+ * {@link com.moe365.mopi.ImageProcessor} gives the fitter).
+ * @author mailmindlin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HullFitterBenchmark {
+	/**
+	 * Length of the long side of the blob, in pixels
+	 */
+	@Param({"40", "160"})
+	public int length;
+
+	protected final HullFitter fitter = new HullFitter();
+	protected double[] xs, ys;
+	protected int numPoints;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final Random random = new Random(365);
+		final double angle = random.nextDouble() * Math.PI;
+		final double cos = Math.cos(angle), sin = Math.sin(angle);
+		final int size = length * 2;
+		this.xs = new double[size * 2];
+		this.ys = new double[size * 2];
+		this.numPoints = 0;
+		for (int y = 0; y < size; y++) {
+			int left = -1, right = -1;
+			for (int x = 0; x < size; x++) {
+				final double dx = x - length, dy = y - length;
+				final double u = dx * cos + dy * sin, v = dy * cos - dx * sin;
+				if (Math.abs(u) <= length / 2.0 && Math.abs(v) <= length / 8.0) {
+					if (left < 0)
+						left = x;
+					right = x;
+				}
+			}
+			if (left < 0)
+				continue;
+			xs[numPoints] = left;
+			ys[numPoints++] = y;
+			xs[numPoints] = right;
+			ys[numPoints++] = y;
+		}
+	}
+
+	@Benchmark
+	public double fit() {
+		final HullFitter fitter = this.fitter;
+		fitter.clear();
+		fitter.addPoints(xs, ys, 0, numPoints);
+		return fitter.fitMinAreaRectangle();
+	}
+}
@@ -0,0 +1,170 @@
+package com.moe365.mopi.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.BitsetBinaryImage;
+import com.moe365.mopi.processing.DebuggingDiffGenerator.RichBinaryImage;
+import com.moe365.mopi.processing.LazyDiffGenerator.TiledBinaryImage;
+import com.moe365.mopi.processing.RunLengthBinaryImage;
+import com.moe365.mopi.processing.SummedAreaBinaryImage;
+
+/**
+ * Generates, loads, and converts masks for the {@link BinaryImage}
+ * benchmarks.
+ * <p>
+ * Masks are built as a {@link BitsetBinaryImage}, then converted to the
+ * representation being benchmarked with {@link #convert(BitsetBinaryImage, String)}.
+ * </p>
+ * @author mailmindlin
+ */
+public class Masks {
+	/**
+	 * Fraction of pixels set in a {@link #generate(String, int, int, Random) random} mask
+	 */
+	public static final double NOISE_DENSITY = 0.005;
+	
+	/**
+	 * Generate a mask
+	 * @param pattern One of:
+	 * <dl>
+	 * <dt>random</dt><dd>Uniform speckle noise, with {@value #NOISE_DENSITY} of the pixels set</dd>
+	 * <dt>clustered</dt><dd>A few solid rectangles (like targets), and nothing else</dd>
+	 * <dt>empty</dt><dd>Nothing set (the worst case for any search)</dd>
+	 * </dl>
+	 * @param width Width of the mask
+	 * @param height Height of the mask
+	 * @param random Source of positions
+	 * @return mask
+	 */
+	public static BitsetBinaryImage generate(String pattern, int width, int height, Random random) {
+		BitsetBinaryImage mask = new BitsetBinaryImage(width, height);
+		switch (pattern) {
+			case "random":
+				final int noise = (int) (width * height * NOISE_DENSITY);
+				for (int i = 0; i < noise; i++)
+					mask.set(random.nextInt(width), random.nextInt(height));
+				break;
+			case "clustered":
+				for (int i = 0; i < 4; i++) {
+					final int w = width / 32 + random.nextInt(width / 16), h = height / 16 + random.nextInt(height / 8);
+					final int x0 = random.nextInt(width - w), y0 = random.nextInt(height - h);
+					for (int y = y0; y < y0 + h; y++)
+						for (int x = x0; x < x0 + w; x++)
+							mask.set(x, y);
+				}
+				break;
+			case "empty":
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pattern: " + pattern);
+		}
+		return mask;
+	}
+	
+	/**
+	 * Load the masks that
+	 * {@link com.moe365.mopi.processing.DebuggingDiffGenerator DebuggingDiffGenerator}
+	 * saves (<kbd>delta[#].png</kbd>, with <kbd>--save-diff</kbd>), where any
+	 * non-black pixel is set.
+	 * @param dir Directory to load masks from
+	 * @return masks, in order (empty if there weren't any)
+	 * @throws IOException if a mask couldn't be read
+	 */
+	public static List<BitsetBinaryImage> load(File dir) throws IOException {
+		List<BitsetBinaryImage> masks = new ArrayList<>();
+		for (int i = 0; ; i++) {
+			File file = new File(dir, "delta" + i + ".png");
+			if (!file.exists())
+				break;
+			BufferedImage img = ImageIO.read(file);
+			BitsetBinaryImage mask = new BitsetBinaryImage(img.getWidth(), img.getHeight());
+			for (int y = 0; y < img.getHeight(); y++)
+				for (int x = 0; x < img.getWidth(); x++)
+					if ((img.getRGB(x, y) & 0xFFFFFF) != 0)
+						mask.set(x, y);
+			masks.add(mask);
+		}
+		return masks;
+	}
+	
+	/**
+	 * Generate stand-ins for a corpus of real masks: a few targets, with an
+	 * increasing amount of speckle noise.
+	 */
+	public static List<BitsetBinaryImage> generateCorpus(int width, int height, int count, Random random) {
+		List<BitsetBinaryImage> masks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			BitsetBinaryImage mask = generate("clustered", width, height, random);
+			final int noise = i * width * height / 2000;
+			for (int j = 0; j < noise; j++)
+				mask.set(random.nextInt(width), random.nextInt(height));
+			masks.add(mask);
+		}
+		return masks;
+	}
+	
+	/**
+	 * Convert a mask to another representation
+	 * @param mask Mask to convert
+	 * @param representation One of <kbd>BooleanArray</kbd> (a lambda over a
+	 *            <code>boolean[][]</code>, with the default row/column
+	 *            queries), <kbd>Rich</kbd>, <kbd>Tiled</kbd>,
+	 *            <kbd>Bitset</kbd>, <kbd>RunLength</kbd>, or
+	 *            <kbd>SummedArea</kbd>
+	 * @return converted mask
+	 */
+	public static BinaryImage convert(BitsetBinaryImage mask, String representation) {
+		final int width = mask.getWidth(), height = mask.getHeight();
+		switch (representation) {
+			case "BooleanArray": {
+				final boolean[][] data = toArray(mask);
+				return (x, y) -> data[y][x];
+			}
+			case "Rich":
+				return new RichBinaryImage(toArray(mask), null);
+			case "Tiled": {
+				long[][] tiles = new long[(height + 7) / 8][(width + 7) / 8];
+				forEachSet(mask, (x, y) -> tiles[y / 8][x / 8] |= 1L << ((y % 8) * 8 + x % 8));
+				return new TiledBinaryImage(tiles);
+			}
+			case "Bitset":
+				return mask;
+			case "RunLength": {
+				RunLengthBinaryImage result = new RunLengthBinaryImage(width, height);
+				forEachSet(mask, result::set);
+				return result;
+			}
+			case "SummedArea": {
+				SummedAreaBinaryImage result = new SummedAreaBinaryImage(width, height);
+				result.integrate(mask, 0, 0, width, height);
+				return result;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown representation: " + representation);
+		}
+	}
+	
+	protected static boolean[][] toArray(BitsetBinaryImage mask) {
+		boolean[][] data = new boolean[mask.getHeight()][mask.getWidth()];
+		forEachSet(mask, (x, y) -> data[y][x] = true);
+		return data;
+	}
+	
+	protected static interface PixelConsumer {
+		void accept(int x, int y);
+	}
+	
+	protected static void forEachSet(BitsetBinaryImage mask, PixelConsumer action) {
+		for (int y = 0; y < mask.getHeight(); y++)
+			for (int x = mask.nextSetBit(y, 0); x >= 0; x = mask.nextSetBit(y, x + 1))
+				action.accept(x, y);
+	}
+}
@@ -0,0 +1,48 @@
+package com.moe365.mopi.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Silences {@link System#out} for the length of a trial, because some of the
+ * code being benchmarked logs every frame (or every polygon), which we don't
+ * want to measure (or see).
+ * <p>
+ * Call {@link #silence()} at the end of a <code>@Setup</code> method, and pass
+ * what it returns to {@link #restore(PrintStream)} in the matching
+ * <code>@TearDown</code>.
+ * </p>
+ * @author mailmindlin
+ */
+public class QuietStdout {
+	/**
+	 * Stream that drops everything written to it
+	 */
+	protected static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+	
+	/**
+	 * Replace {@link System#out} with a stream that drops everything
+	 * @return the old {@link System#out}
+	 */
+	public static PrintStream silence() {
+		final PrintStream stdout = System.out;
+		System.setOut(NULL);
+		return stdout;
+	}
+	
+	/**
+	 * Put back the stream that {@link #silence()} replaced
+	 * @param stdout Stream returned by {@link #silence()}
+	 */
+	public static void restore(PrintStream stdout) {
+		System.setOut(stdout);
+	}
+}
@@ -0,0 +1,108 @@
+package com.moe365.mopi.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.moe365.mopi.processing.YuyvImage;
+
+/**
+ * Generates synthetic flash/no-flash frame pairs for the benchmarks.
+ * <p>
+ * The 'off' frame is dim noise, and the 'on' frame is the same noise with a
+ * number of bright green rectangles (like the retroreflective tape) drawn on
+ * it. Each rectangle covers 1/{@value #TARGET_FRACTION} of the frame, so the
+ * number of rectangles is set by the target density (the fraction of the
+ * frame that the targets cover).
+ * </p>
+ * @author mailmindlin
+ */
+public class SyntheticFrames {
+	/**
+	 * Inverse of the fraction of the frame that each target covers
+	 */
+	public static final int TARGET_FRACTION = 256;
+	
+	/**
+	 * Parse a resolution
+	 * @param resolution Resolution, in the form <kbd>[width]x[height]</kbd>
+	 * @return {width, height}
+	 */
+	public static int[] parseResolution(String resolution) {
+		int idx = resolution.indexOf('x');
+		return new int[] {Integer.parseInt(resolution.substring(0, idx)), Integer.parseInt(resolution.substring(idx + 1))};
+	}
+	
+	/**
+	 * Look up a BufferedImage type by name
+	 * @param name Name of the constant (i.e., <kbd>TYPE_3BYTE_BGR</kbd>)
+	 * @return image type
+	 */
+	public static int parseImageType(String name) {
+		try {
+			return BufferedImage.class.getField(name).getInt(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unknown image type: " + name, e);
+		}
+	}
+	
+	/**
+	 * Generate a frame pair
+	 * @param width Width of the frames
+	 * @param height Height of the frames
+	 * @param imageType BufferedImage type of the frames
+	 * @param density Fraction of the frame covered by targets, from 0 to 1
+	 * @param random Source of noise and target positions
+	 * @return {on, off}
+	 */
+	public static BufferedImage[] generate(int width, int height, int imageType, double density, Random random) {
+		BufferedImage off = new BufferedImage(width, height, imageType);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				off.setRGB(x, y, 0xFF000000 | random.nextInt(0x808080));
+		BufferedImage on = new BufferedImage(width, height, imageType);
+		Graphics2D g = on.createGraphics();
+		g.drawImage(off, 0, 0, null);
+		g.setColor(new Color(0x20, 0xFF, 0x40));
+		final int targetWidth = Math.max(1, width / 32), targetHeight = Math.max(1, height / 8);
+		final int numTargets = (int) Math.round(density * TARGET_FRACTION);
+		for (int i = 0; i < numTargets; i++)
+			g.fillRect(random.nextInt(width - targetWidth), random.nextInt(height - targetHeight), targetWidth, targetHeight);
+		g.dispose();
+		return new BufferedImage[] {on, off};
+	}
+	
+	/**
+	 * Convert an image to YUYV (BT.601, full range), like a webcam would
+	 * deliver it
+	 * @param img Image to convert. Must have an even width.
+	 * @return converted image
+	 */
+	public static YuyvImage toYuyv(BufferedImage img) {
+		final int width = img.getWidth(), height = img.getHeight();
+		byte[] data = new byte[width * height * 2];
+		int idx = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x += 2, idx += 4) {
+				int rgb0 = img.getRGB(x, y), rgb1 = img.getRGB(x + 1, y);
+				int r = (((rgb0 >> 16) & 0xFF) + ((rgb1 >> 16) & 0xFF)) / 2;
+				int g = (((rgb0 >> 8) & 0xFF) + ((rgb1 >> 8) & 0xFF)) / 2;
+				int b = ((rgb0 & 0xFF) + (rgb1 & 0xFF)) / 2;
+				data[idx] = (byte) luma(rgb0);
+				data[idx + 1] = (byte) clamp((int) Math.round(-0.169 * r - 0.331 * g + 0.5 * b) + 128);
+				data[idx + 2] = (byte) luma(rgb1);
+				data[idx + 3] = (byte) clamp((int) Math.round(0.5 * r - 0.419 * g - 0.081 * b) + 128);
+			}
+		}
+		return new YuyvImage(data, width, height);
+	}
+	
+	protected static int luma(int rgb) {
+		return clamp((int) Math.round(0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF)));
+	}
+	
+	protected static int clamp(int value) {
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+}
@@ -0,0 +1,64 @@
+package com.moe365.mopi.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moe365.mopi.ImageProcessor;
+import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.YuvDiffGenerator;
+import com.moe365.mopi.processing.YuyvImage;
+
+/**
+ * Benchmarks diffing a synthetic YUYV frame pair with
+ * {@link YuvDiffGenerator}, for comparison with {@link DiffGeneratorBenchmark}
+ * (which has to decode the frames to RGB first).
+ * @author mailmindlin
+ * @see SyntheticFrames#toYuyv(BufferedImage)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvDiffGeneratorBenchmark {
+	@Param({"320x240", "640x480", "1280x720", "1920x1080"})
+	public String resolution;
+	
+	/**
+	 * Fraction of the frame covered by targets
+	 */
+	@Param({"0.01", "0.05", "0.2"})
+	public double density;
+	
+	protected YuyvImage on, off;
+	protected YuvDiffGenerator diff;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		final int[] size = SyntheticFrames.parseResolution(resolution);
+		BufferedImage[] frames = SyntheticFrames.generate(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR, density, new Random(365));
+		this.on = SyntheticFrames.toYuyv(frames[0]);
+		this.off = SyntheticFrames.toYuyv(frames[1]);
+		this.diff = new YuvDiffGenerator(0, 0, size[0], size[1], ImageProcessor.DEFAULT_TOLERANCE);
+	}
+	
+	@Benchmark
+	public BinaryImage diff() {
+		return this.diff.apply(this.on, this.off);
+	}
+}
@@ -106,7 +106,11 @@ public class CommandLineParser implements Serializable, Function<String[], Parse
 	}
 	
 	/**
-	 * Apply to the argument array
+	 * Apply to the argument array. Values can be given in the next argument
+	 * (<kbd>--key value</kbd>), or inline (<kbd>--key=value</kbd>). Flags can
+	 * be given a value inline too, which can be read with
+	 * {@link ParsedCommandLineArguments#get(String) get}; otherwise, their
+	 * value is <code>"true"</code>.
 	 * @param args
 	 * @return
 	 */
@@ -115,6 +119,11 @@ public class CommandLineParser implements Serializable, Function<String[], Parse
 		HashMap<String, String> data = new HashMap<>();
 		for (int i = 0; i < args.length; i++) {
 			CommandLineToken token = this.options.get(args[i]);
+			//Value given inline, as in '--flag=value'
+			String value = null;
+			int eq;
+			if (token == null && (eq = args[i].indexOf('=')) > 0 && (token = this.options.get(args[i].substring(0, eq))) != null)
+				value = args[i].substring(eq + 1);
 			if (token == null) {
 				System.err.println("Unknown token: " + args[i]);
 				data.putIfAbsent(args[i], "");
@@ -125,9 +134,9 @@ public class CommandLineParser implements Serializable, Function<String[], Parse
 				token = options.get(((CommandLineAlias) token).getTarget());
 			
 			if (token.getType() == CommandLineTokenType.FLAG)
-				data.put(token.getName(), "true");
+				data.put(token.getName(), value == null ? "true" : value);
 			if (token.getType() == CommandLineTokenType.KV_PAIR)
-				data.put(token.getName(), args[++i]);
+				data.put(token.getName(), value == null ? args[++i] : value);
 		}
 		return new ParsedCommandLineArguments(data);
 	}
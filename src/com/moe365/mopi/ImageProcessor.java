@@ -1,20 +1,31 @@
 package com.moe365.mopi;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
+import com.moe365.mopi.geom.HullFitter;
 import com.moe365.mopi.geom.PreciseRectangle;
+import com.moe365.mopi.geom.RectangleBuffer;
+import com.moe365.mopi.geom.ResultFrame;
 import com.moe365.mopi.processing.AbstractImageProcessor;
 import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.BitsetBinaryImage;
 import com.moe365.mopi.processing.DebuggingDiffGenerator;
 import com.moe365.mopi.processing.DiffGenerator;
+import com.moe365.mopi.processing.ImageFrame;
+import com.moe365.mopi.processing.ImageFrame.Format;
+import com.moe365.mopi.processing.ImageRaster;
+import com.moe365.mopi.processing.ParallelDiffGenerator;
+import com.moe365.mopi.processing.ProcessingPipeline;
+import com.moe365.mopi.processing.RegionDiffGenerator;
+import com.moe365.mopi.processing.RunLengthLabeler;
+import com.moe365.mopi.processing.YuvDiffGenerator;
+import com.moe365.mopi.processing.YuyvImage;
+import com.moe365.mopi.util.FrameTimestamps;
 
-import au.edu.jcu.v4l4j.VideoFrame;
 import au.edu.jcu.v4l4j.exceptions.UnsupportedMethod;
 
 /**
@@ -23,11 +34,34 @@ import au.edu.jcu.v4l4j.exceptions.UnsupportedMethod;
  * @see DiffGenerator
  * @see com.moe365.mopi.processing.LazyDiffGenerator LazyDiffGenerator
  */
-public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle>> {
+public class ImageProcessor extends AbstractImageProcessor<ResultFrame> {
 	public static final int DEFAULT_TOLERANCE = 70;
 	
+	/**
+	 * Algorithms to find blobs in the diff with
+	 * @author mailmindlin
+	 */
+	public static enum BlobSearch {
+		/**
+		 * Recursively split the image on empty rows/columns.
+		 * @see ImageProcessor#boundingBox(BinaryImage, List, int, int, int, int)
+		 */
+		SPLIT,
+		/**
+		 * Label connected components.
+		 * @see RunLengthLabeler
+		 */
+		LABEL;
+	}
+	
 	protected final BiFunction<BufferedImage, BufferedImage, BinaryImage> diff;
 	
+	/**
+	 * Diff generator for YUYV frames. Null if YUYV frames should be converted
+	 * to RGB and handed to {@link #diff} instead.
+	 */
+	protected final BiFunction<YuyvImage, YuyvImage, BinaryImage> yuvDiff;
+	
 	/**
 	 * Smallest allowed width of a bounding box, in pixels.
 	 * 
@@ -42,23 +76,165 @@ public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle
 	 */
 	protected final int minBlobHeight;
 	
-	public ImageProcessor(int frameWidth, int frameHeight, int minBlobWidth, int minBlobHeight, Consumer<List<PreciseRectangle>> handler) {
+	/**
+	 * Algorithm used to find blobs
+	 * @see #setBlobSearch(BlobSearch)
+	 */
+	protected BlobSearch blobSearch = BlobSearch.SPLIT;
+	
+	/**
+	 * Labeler used when {@link #blobSearch} is {@link BlobSearch#LABEL LABEL}
+	 */
+	protected final RunLengthLabeler labeler = new RunLengthLabeler();
+	
+	/**
+	 * Rectangles found in the current frame, in pixels. Reused between frames.
+	 */
+	protected final RectangleBuffer rectangles = new RectangleBuffer();
+	
+	/**
+	 * Stack of regions left to search in {@link #boundingBox(BinaryImage, RectangleBuffer, int, int, int, int)},
+	 * stored as <code>{xMin, xMax, yMin, yMax}</code>. Grows as needed.
+	 */
+	protected int[] workStack = new int[64 * 4];
+	
+	/**
+	 * Results handed to the handler. Refilled every frame, so it's only valid
+	 * until the handler returns.
+	 */
+	protected final ResultFrame resultFrame = new ResultFrame();
+	
+	/**
+	 * Number of frames processed so far
+	 */
+	protected long frameSequence = 0;
+	
+	/**
+	 * Maximum number of windows to search in ROI mode. If more rectangles than
+	 * this were found, only the largest ones are tracked.
+	 */
+	protected static final int MAX_ROI_WINDOWS = 4;
+	
+	/**
+	 * Number of pixels to expand each rectangle by when searching the next
+	 * frame in ROI mode, or negative if ROI mode is disabled.
+	 * @see #setRoiTracking(int, int)
+	 */
+	protected int roiMargin = -1;
+	
+	/**
+	 * Maximum number of frames to process in ROI mode before doing a
+	 * full-frame rescan.
+	 */
+	protected int roiRescanInterval = 0;
+	
+	/**
+	 * Windows to search in the next frame in ROI mode. Stored as
+	 * <code>{xMin, yMin, xMax, yMax}</code> (max exclusive), in pixels.
+	 */
+	protected final int[] roiWindows = new int[MAX_ROI_WINDOWS * 4];
+	
+	/**
+	 * Number of windows in {@link #roiWindows} that are valid
+	 */
+	protected int numRoiWindows = 0;
+	
+	/**
+	 * Mask reused between full-frame scans (when not pipelined)
+	 */
+	protected BinaryImage frameMask;
+	
+	/**
+	 * Mask reused between full-frame scans of YUYV frames (when not pipelined)
+	 */
+	protected BitsetBinaryImage yuvFrameMask;
+	
+	/**
+	 * Mask reused between ROI frames, created on the first ROI frame
+	 */
+	protected BinaryImage roiMask;
+	
+	/**
+	 * Windows that were diffed into {@link #roiMask}, and have to be cleared
+	 * before it is reused
+	 */
+	protected final int[] roiMaskWindows = new int[MAX_ROI_WINDOWS * 4];
+	
+	/**
+	 * Number of windows in {@link #roiMaskWindows} that are valid
+	 */
+	protected int numRoiMaskWindows = 0;
+	
+	/**
+	 * Mask reused between ROI frames in YUYV mode
+	 */
+	protected BitsetBinaryImage yuvRoiMask;
+	
+	/**
+	 * Windows that were diffed into {@link #yuvRoiMask}
+	 */
+	protected final int[] yuvRoiMaskWindows = new int[MAX_ROI_WINDOWS * 4];
+	
+	/**
+	 * Number of windows in {@link #yuvRoiMaskWindows} that are valid
+	 */
+	protected int numYuvRoiMaskWindows = 0;
+	
+	/**
+	 * Number of frames processed in ROI mode since the last full-frame scan
+	 */
+	protected int framesSinceRescan = 0;
+	
+	/**
+	 * Fits rotated rectangles to the blobs found, or null if disabled
+	 * @see #setFitRotated(boolean)
+	 */
+	protected HullFitter fitter = null;
+	
+	public ImageProcessor(int frameWidth, int frameHeight, int minBlobWidth, int minBlobHeight, Consumer<ResultFrame> handler) {
 		this(frameWidth, frameHeight, minBlobWidth, minBlobHeight, handler, false);
 	}
 	
-	public ImageProcessor(int frameWidth, int frameHeight, int minBlobWidth, int minBlobHeight, Consumer<List<PreciseRectangle>> handler, boolean saveDiff) {
+	public ImageProcessor(int frameWidth, int frameHeight, int minBlobWidth, int minBlobHeight, Consumer<ResultFrame> handler, boolean saveDiff) {
+		this(frameWidth, frameHeight, minBlobWidth, minBlobHeight, handler,
+				saveDiff ? new DebuggingDiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE) : new DiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE),
+				saveDiff ? null : new YuvDiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE));
+	}
+	
+	/**
+	 * Create a processor with the given diff generators
+	 * @param frameWidth Width of frames
+	 * @param frameHeight Height of frames
+	 * @param minBlobWidth Smallest width of a blob to find
+	 * @param minBlobHeight Smallest height of a blob to find
+	 * @param handler Handler for results
+	 * @param diff Diff generator for RGB images
+	 * @param yuvDiff Diff generator for YUYV images. If null, YUYV frames are converted to RGB
+	 *            and handed to <var>diff</var>.
+	 */
+	public ImageProcessor(int frameWidth, int frameHeight, int minBlobWidth, int minBlobHeight, Consumer<ResultFrame> handler,
+			BiFunction<BufferedImage, BufferedImage, BinaryImage> diff, BiFunction<YuyvImage, YuyvImage, BinaryImage> yuvDiff) {
 		super(0, 0, frameWidth, frameHeight, handler);
-		
-		if (saveDiff)
-			this.diff = new DebuggingDiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE);
-		else
-			this.diff = new DiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE);
-//		this.diff = new LazyDiffGenerator(0, 0, frameWidth, frameHeight, DEFAULT_TOLERANCE);
+		this.diff = diff;
+		this.yuvDiff = yuvDiff;
 		
 		this.minBlobWidth = minBlobWidth;
 		this.minBlobHeight = minBlobHeight;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also shuts down the diff generator's threads, if it has any.
+	 * </p>
+	 */
+	@Override
+	public void stop() {
+		super.stop();
+		if (this.diff instanceof ParallelDiffGenerator)
+			((ParallelDiffGenerator<?>) this.diff).close();
+	}
+	
 	
 	/**
 	 * Try to split the image horizontally (perpendicular to the Y axis)
@@ -73,7 +249,7 @@ public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle
 		int step = nextPowerOf2(yMax - yMin);
 		while (step > 2) {
 			for (int split = yMin + step / 2; split < yMax; split += step) {
-				if (!img.testRow(split, xMin, xMax))
+				if (!img.anyIn(xMin, split, xMax, split))
 					return split;
 			}
 			step /= 2;
@@ -94,7 +270,7 @@ public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle
 		int step = nextPowerOf2(xMax - xMin);
 		while (step > 2) {
 			for (int split = xMin + step / 2; split < xMax; split += step) {
-				if (!img.testCol(split, yMin, yMax))
+				if (!img.anyIn(split, yMin, split, yMax))
 					return split;
 			}
 			step /= 2;
@@ -105,6 +281,10 @@ public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle
 	/**
 	 * Searches an image for blobs. You can think of it as a kind of binary
 	 * search of a 2d array.
+	 * <p>
+	 * This is a convenience method that allocates a new buffer; see
+	 * {@link #boundingBox(BinaryImage, RectangleBuffer, int, int, int, int)}.
+	 * </p>
 	 * 
 	 * @param img
 	 *            A boolean image, ordered row, column
@@ -122,67 +302,468 @@ public class ImageProcessor extends AbstractImageProcessor<List<PreciseRectangle
 	 * @return if any bounding boxes were found
 	 */
 	public boolean boundingBox(BinaryImage img, List<PreciseRectangle> result, final int xMin, final int xMax, final int yMin, final int yMax) {
-		int width = xMax - xMin;
-		int height= yMax - yMin;
-		if (width < minBlobWidth || height < minBlobHeight)
-			// The image is too small to find any boxes
-			return false;
-		int xSplit = -2;
-		int ySplit = -2;
-		//It should be faster to calculate a split perpendicular to the widest axis
-		if (width >= height) {
-			if ((ySplit = splitH(img, xMin, xMax, yMin, yMax)) < 0)
-				xSplit = splitV(img, xMin, xMax, yMin, yMax);
-		} else {
-			if ((xSplit = splitV(img, xMin, xMax, yMin, yMax)) < 0)
-				ySplit = splitH(img, xMin, xMax, yMin, yMax);
+		RectangleBuffer buffer = new RectangleBuffer();
+		boolean found = boundingBox(img, buffer, xMin, xMax, yMin, yMax);
+		buffer.addTo(result, 1, 1);
+		return found;
+	}
+	
+	/**
+	 * Searches an image for blobs. You can think of it as a kind of binary
+	 * search of a 2d array.
+	 * <p>
+	 * Each region is split on an empty row or column (if there is one), and
+	 * both halves are searched. Regions that can't be split are blobs.
+	 * Instead of recursing, the regions left to search are kept on
+	 * {@link #workStack}, which is reused between calls, so this method
+	 * doesn't allocate anything once the stack and buffer have grown big
+	 * enough.
+	 * </p>
+	 * 
+	 * @param img
+	 *            A boolean image, ordered row, column
+	 * @param result
+	 *            Buffer to add bounding boxes to
+	 * @param xMin
+	 *            Left bound of image to search (inclusive)
+	 * @param xMax
+	 *            Right bound of the image to search (inclusive)
+	 * @param yMin
+	 *            Top bound (inclusive)
+	 * @param yMax
+	 *            Bottom bound (inclusive)
+	 * @return if any bounding boxes were found
+	 */
+	public boolean boundingBox(BinaryImage img, RectangleBuffer result, int xMin, int xMax, int yMin, int yMax) {
+		int[] stack = this.workStack;
+		int sp = 0;
+		stack[sp++] = xMin;
+		stack[sp++] = xMax;
+		stack[sp++] = yMin;
+		stack[sp++] = yMax;
+		boolean found = false;
+		while (sp > 0) {
+			yMax = stack[--sp];
+			yMin = stack[--sp];
+			xMax = stack[--sp];
+			xMin = stack[--sp];
+			int width = xMax - xMin;
+			int height= yMax - yMin;
+			if (width < minBlobWidth || height < minBlobHeight)
+				// The region is too small to find any boxes
+				continue;
+			int xSplit = -2;
+			int ySplit = -2;
+			//It should be faster to calculate a split perpendicular to the widest axis
+			if (width >= height) {
+				if ((ySplit = splitH(img, xMin, xMax, yMin, yMax)) < 0)
+					xSplit = splitV(img, xMin, xMax, yMin, yMax);
+			} else {
+				if ((xSplit = splitV(img, xMin, xMax, yMin, yMax)) < 0)
+					ySplit = splitH(img, xMin, xMax, yMin, yMax);
+			}
+			if (xSplit < 0 && ySplit < 0) {
+				result.add(xMin, yMin, xMax - xMin, yMax - yMin);
+				found = true;
+				continue;
+			}
+			if (sp + 8 > stack.length)
+				stack = this.workStack = Arrays.copyOf(stack, stack.length * 2);
+			//Push the second half first, so the first half is searched first
+			if (xSplit >= 0) {
+				stack[sp++] = xSplit + 1;
+				stack[sp++] = xMax;
+				stack[sp++] = yMin;
+				stack[sp++] = yMax;
+				stack[sp++] = xMin;
+				stack[sp++] = xSplit - 1;
+				stack[sp++] = yMin;
+				stack[sp++] = yMax;
+			} else {
+				stack[sp++] = xMin;
+				stack[sp++] = xMax;
+				stack[sp++] = ySplit + 1;
+				stack[sp++] = yMax;
+				stack[sp++] = xMin;
+				stack[sp++] = xMax;
+				stack[sp++] = yMin;
+				stack[sp++] = ySplit - 1;
+			}
 		}
-		if (xSplit >= 0)
-			return boundingBox(img, result, xMin, xSplit - 1, yMin, yMax) | boundingBox(img, result, xSplit + 1, xMax, yMin, yMax);
-		if (ySplit >= 0)
-			return boundingBox(img, result, xMin, xMax, yMin, ySplit - 1) | boundingBox(img, result, xMin, xMax, ySplit + 1, yMax);
-		return result.add(new PreciseRectangle(xMin, yMin, xMax - xMin, yMax - yMin));
+		return found;
+	}
+	
+	/**
+	 * Enable region-of-interest tracking. Once a target is found, the next
+	 * frame is only diffed and searched in a window around where it was last
+	 * seen, which is a lot cheaper than the whole frame.
+	 * <p>
+	 * A full-frame scan is done if nothing was found last frame, if nothing is
+	 * found in any window, if a rectangle touches the edge of its window (it
+	 * probably continues outside it), or every <var>rescanInterval</var>
+	 * frames (so we notice targets that came into view).
+	 * </p>
+	 * <p>
+	 * ROI mode requires a {@link RegionDiffGenerator} or {@link YuvDiffGenerator}.
+	 * Note that frames processed in ROI mode aren't saved by {@link DebuggingDiffGenerator}.
+	 * </p>
+	 * @param margin Number of pixels to expand each rectangle by, or negative to disable ROI mode
+	 * @param rescanInterval Maximum number of frames between full-frame scans
+	 */
+	public void setRoiTracking(int margin, int rescanInterval) {
+		this.roiMargin = margin;
+		this.roiRescanInterval = rescanInterval;
+		this.numRoiWindows = 0;
+		this.framesSinceRescan = 0;
+	}
+	
+	/**
+	 * Enable or disable fitting a rotated rectangle to each blob found. When
+	 * enabled, the minimum-area rectangle around the outline of each blob is
+	 * found (see {@link HullFitter}), and its corners are stored in the
+	 * {@link ResultFrame}, along with the bounding box.
+	 * @param fitRotated Whether to fit rotated rectangles
+	 */
+	public void setFitRotated(boolean fitRotated) {
+		this.fitter = fitRotated ? new HullFitter() : null;
+	}
+	
+	/**
+	 * @return whether the next frame should only be searched in {@link #roiWindows}
+	 */
+	protected boolean shouldUseRoi() {
+		return this.roiMargin >= 0 && this.numRoiWindows > 0 && this.framesSinceRescan < this.roiRescanInterval;
+	}
+	
+	/**
+	 * Diff the ROI windows of the images
+	 * @return the rectangles found, or null if a full-frame scan is needed
+	 */
+	@SuppressWarnings("unchecked")
+	protected <M extends BinaryImage> ResultFrame applyRoi(RegionDiffGenerator<M> diff, ImageRaster on, ImageRaster off) {
+		//The mask is only ever created by this.diff, so the cast is safe
+		M mask = (M) this.roiMask;
+		if (mask == null)
+			this.roiMask = mask = diff.createMask();
+		//Clear what the last ROI frame left behind, instead of allocating a new mask
+		final int[] old = this.roiMaskWindows;
+		for (int i = 0; i < this.numRoiMaskWindows * 4; i += 4)
+			diff.clearRegion(mask, old[i], old[i + 1], old[i + 2], old[i + 3]);
+		final int[] windows = this.roiWindows;
+		for (int i = 0; i < this.numRoiWindows * 4; i += 4)
+			diff.diffRegion(on, off, mask, windows[i], windows[i + 1], windows[i + 2], windows[i + 3]);
+		System.arraycopy(windows, 0, old, 0, this.numRoiWindows * 4);
+		this.numRoiMaskWindows = this.numRoiWindows;
+		this.timestamps.mark(FrameTimestamps.DIFFED);
+		return searchRoi(mask);
 	}
 	
-	protected List<PreciseRectangle> processBooleanMap(BinaryImage processed, int w, int h) {
-		// List of the rectangles to be generated by boundingBoxRecursive
-		List<PreciseRectangle> rectangles = new ArrayList<>();
+	/**
+	 * Diff the ROI windows of the images
+	 * @return the rectangles found, or null if a full-frame scan is needed
+	 */
+	protected ResultFrame applyRoi(YuvDiffGenerator diff, YuyvImage on, YuyvImage off) {
+		BitsetBinaryImage mask = this.yuvRoiMask;
+		if (mask == null)
+			this.yuvRoiMask = mask = diff.createMask();
+		final int[] old = this.yuvRoiMaskWindows;
+		for (int i = 0; i < this.numYuvRoiMaskWindows * 4; i += 4)
+			mask.clear(old[i], old[i + 1], old[i + 2] - 1, old[i + 3] - 1);
+		final int[] windows = this.roiWindows;
+		for (int i = 0; i < this.numRoiWindows * 4; i += 4)
+			diff.diffRegion(on, off, mask, windows[i], windows[i + 1], windows[i + 2], windows[i + 3]);
+		System.arraycopy(windows, 0, old, 0, this.numRoiWindows * 4);
+		this.numYuvRoiMaskWindows = this.numRoiWindows;
+		this.timestamps.mark(FrameTimestamps.DIFFED);
+		return searchRoi(mask);
+	}
+	
+	/**
+	 * Search the ROI windows of a mask for blobs
+	 * @param mask Mask, which only has to be valid inside of the ROI windows
+	 * @return the rectangles found, or null if a full-frame scan is needed
+	 */
+	protected ResultFrame searchRoi(BinaryImage mask) {
+		this.framesSinceRescan++;
+		final int[] windows = this.roiWindows;
+		final RectangleBuffer rectangles = this.rectangles;
+		rectangles.clear();
+		for (int i = 0; i < this.numRoiWindows * 4; i += 4) {
+			final int xMin = windows[i], yMin = windows[i + 1], xMax = windows[i + 2], yMax = windows[i + 3];
+			final int numFound = rectangles.size();
+			findBlobs(mask, rectangles, xMin, xMax - 1, yMin, yMax - 1);
+			for (int j = numFound; j < rectangles.size(); j++) {
+				final int x = rectangles.getX(j), y = rectangles.getY(j);
+				//If a rectangle touches the edge of its window (but not the edge of the frame), it
+				//probably continues outside of it
+				if ((xMin > 0 && x <= xMin) || (yMin > 0 && y <= yMin)
+						|| (xMax < getFrameWidth() && x + rectangles.getWidth(j) >= xMax - 1)
+						|| (yMax < getFrameHeight() && y + rectangles.getHeight(j) >= yMax - 1))
+					return null;
+			}
+		}
+		if (rectangles.isEmpty())
+			return null;
+		return publishRectangles(mask, rectangles, this.resultFrame);
+	}
+	
+	/**
+	 * Update the ROI windows to search in the next frame
+	 * @param rectangles Rectangles found in this frame, in pixels, sorted by area (largest first)
+	 */
+	protected void updateRoi(RectangleBuffer rectangles) {
+		if (this.roiMargin < 0)
+			return;
+		final int margin = this.roiMargin;
+		final int[] windows = this.roiWindows;
+		int numWindows = 0;
+		for (int r = 0; r < rectangles.size() && numWindows < MAX_ROI_WINDOWS; r++) {
+			int i = numWindows * 4;
+			windows[i + 0] = Math.max(0, rectangles.getX(r) - margin);
+			windows[i + 1] = Math.max(0, rectangles.getY(r) - margin);
+			windows[i + 2] = Math.min(getFrameWidth(), rectangles.getX(r) + rectangles.getWidth(r) + 1 + margin);
+			windows[i + 3] = Math.min(getFrameHeight(), rectangles.getY(r) + rectangles.getHeight(r) + 1 + margin);
+			numWindows++;
+		}
+		//Merge overlapping (or touching) windows, so we don't find the same blob twice, and
+		//so masks that are built one region at a time (i.e., summed-area tables) can keep them apart
+		for (int i = 0; i < numWindows; i++) {
+			for (int j = i + 1; j < numWindows; j++) {
+				final int a = i * 4, b = j * 4;
+				if (windows[a] <= windows[b + 2] && windows[b] <= windows[a + 2] && windows[a + 1] <= windows[b + 3] && windows[b + 1] <= windows[a + 3]) {
+					windows[a + 0] = Math.min(windows[a + 0], windows[b + 0]);
+					windows[a + 1] = Math.min(windows[a + 1], windows[b + 1]);
+					windows[a + 2] = Math.max(windows[a + 2], windows[b + 2]);
+					windows[a + 3] = Math.max(windows[a + 3], windows[b + 3]);
+					//Move the last window into j's slot, and start over, because window i grew
+					numWindows--;
+					System.arraycopy(windows, numWindows * 4, windows, b, 4);
+					i = -1;
+					break;
+				}
+			}
+		}
+		this.numRoiWindows = numWindows;
+	}
+	
+	/**
+	 * Set the algorithm used to find blobs
+	 * @param blobSearch algorithm
+	 */
+	public void setBlobSearch(BlobSearch blobSearch) {
+		this.blobSearch = blobSearch;
+	}
+	
+	/**
+	 * Find blobs in the image with the {@link #blobSearch selected algorithm}.
+	 * Bounds are inclusive.
+	 * @return if any bounding boxes were found
+	 * @see #boundingBox(BinaryImage, RectangleBuffer, int, int, int, int)
+	 * @see #labelBlobs(BinaryImage, RectangleBuffer, int, int, int, int)
+	 */
+	protected boolean findBlobs(BinaryImage img, RectangleBuffer result, final int xMin, final int xMax, final int yMin, final int yMax) {
+		if (this.blobSearch == BlobSearch.LABEL)
+			return labelBlobs(img, result, xMin, xMax, yMin, yMax);
+		return boundingBox(img, result, xMin, xMax, yMin, yMax);
+	}
+	
+	/**
+	 * Find the bounding boxes of the connected components of the image that are
+	 * at least {@link #minBlobWidth} x {@link #minBlobHeight}. Bounds are
+	 * inclusive.
+	 * @return if any bounding boxes were found
+	 * @see RunLengthLabeler
+	 */
+	public boolean labelBlobs(BinaryImage img, RectangleBuffer result, final int xMin, final int xMax, final int yMin, final int yMax) {
+		final RunLengthLabeler labeler = this.labeler;
+		final int numBlobs = labeler.label(img, xMin, xMax, yMin, yMax);
+		boolean found = false;
+		for (int i = 0; i < numBlobs; i++) {
+			//Same dimension convention as boundingBox
+			int width = labeler.getMaxX(i) - labeler.getMinX(i);
+			int height = labeler.getMaxY(i) - labeler.getMinY(i);
+			if (width < minBlobWidth || height < minBlobHeight)
+				continue;
+			result.add(labeler.getMinX(i), labeler.getMinY(i), width, height);
+			found = true;
+		}
+		return found;
+	}
+	
+	protected ResultFrame processBooleanMap(BinaryImage processed, int w, int h) {
+		return processBooleanMap(processed, w, h, this.resultFrame);
+	}
+	
+	protected ResultFrame processBooleanMap(BinaryImage processed, int w, int h, ResultFrame result) {
+		this.framesSinceRescan = 0;
+		final RectangleBuffer rectangles = this.rectangles;
+		rectangles.clear();
 		//find rectangles
 //		long start = System.nanoTime();
-		boundingBox(processed, rectangles, 0, w - 1, 0, h - 1);
+		findBlobs(processed, rectangles, 0, w - 1, 0, h - 1);
 //		long end = System.nanoTime();
 //		System.out.println("T: " + (end - start) );
-		
+		return publishRectangles(processed, rectangles, result);
+	}
+	
+	/**
+	 * Sort the rectangles by area (in place), update the ROI windows, and
+	 * copy them into a ResultFrame, scaled to be in terms of the frame's
+	 * width/height (and fit rotated rectangles to them, if enabled).
+	 * @param mask Mask that the rectangles were found in
+	 * @param rectangles Rectangles found, in pixels
+	 * @param result Frame to write to (usually {@link #resultFrame})
+	 * @return scaled rectangles
+	 */
+	protected ResultFrame publishRectangles(BinaryImage mask, RectangleBuffer rectangles, ResultFrame result) {
 		//sort the rectangles by area
+		rectangles.sortByAreaDescending();
+		updateRoi(rectangles);
+		
 		final double xFactor = 1.0 / ((double) getFrameWidth());
 		final double yFactor = 1.0 / ((double) getFrameHeight());
 		//scale the rectangles to be in terms of width/height
-		rectangles = rectangles.stream()
-				.map(PreciseRectangle.scalar(xFactor, yFactor, xFactor, yFactor))
-				.sorted((a, b)->(Double.compare(b.getArea(), a.getArea())))
-				.collect(Collectors.toList());
-		return rectangles;
+		result.set(++this.frameSequence, rectangles, xFactor, yFactor);
+		if (this.fitter != null)
+			fitRotated(mask, rectangles, result, xFactor, yFactor);
+		return result;
+	}
+	
+	/**
+	 * Fit a rotated rectangle to each blob, and store its corners in the
+	 * result.
+	 * <p>
+	 * The hull of a blob only depends on its outline, so only the leftmost and
+	 * rightmost pixels of each row are given to the fitter. Pixel centers are
+	 * used, so a blob that isn't rotated is fitted to the same rectangle as
+	 * its bounding box.
+	 * </p>
+	 * @param mask Mask that the rectangles were found in
+	 * @param rectangles Rectangles found, in pixels (in the same order as the result)
+	 * @param result Frame to store the corners in
+	 * @param xFactor Factor to scale x coordinates by
+	 * @param yFactor Factor to scale y coordinates by
+	 */
+	protected void fitRotated(BinaryImage mask, RectangleBuffer rectangles, ResultFrame result, double xFactor, double yFactor) {
+		final HullFitter fitter = this.fitter;
+		for (int i = 0; i < rectangles.size(); i++) {
+			final int xMin = rectangles.getX(i), yMin = rectangles.getY(i);
+			final int xMax = xMin + rectangles.getWidth(i), yMax = yMin + rectangles.getHeight(i);
+			fitter.clear();
+			for (int y = yMin; y <= yMax; y++) {
+				int left = xMin;
+				while (left <= xMax && !mask.test(left, y))
+					left++;
+				if (left > xMax)
+					continue;
+				int right = xMax;
+				while (!mask.test(right, y))
+					right--;
+				fitter.addPoint(left, y);
+				if (right != left)
+					fitter.addPoint(right, y);
+			}
+			fitter.fitMinAreaRectangle();
+			result.setCorners(i, fitter, xFactor, yFactor);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The frames are decoded and diffed by the shared stages, and then blobs
+	 * are found by {@link #extractBlobs(ProcessingPipeline.Frame)}. ROI
+	 * tracking isn't used when pipelined, because the next frame is diffed
+	 * before this frame's blobs are found.
+	 * </p>
+	 */
+	@Override
+	protected List<ProcessingPipeline.Stage<ResultFrame>> createPipelineStages() {
+		return Arrays.asList(
+				ProcessingPipeline.decodeStage(this.yuvDiff != null),
+				ProcessingPipeline.diffStage(this.diff, this.yuvDiff),
+				new ProcessingPipeline.Stage<>("extract", this::extractBlobs));
+	}
+	
+	/**
+	 * Pipeline stage to find the blobs in a frame's mask. Each pipeline frame
+	 * gets its own ResultFrame, because the previous frame's might still be
+	 * being published.
+	 * @param frame Frame to process
+	 */
+	protected void extractBlobs(ProcessingPipeline.Frame<ResultFrame> frame) {
+		ResultFrame result = frame.getResult();
+		if (result == null)
+			frame.setResult(result = new ResultFrame());
+		if (frame.getMask() == null)
+			result.reset(++this.frameSequence);
+		else
+			processBooleanMap(frame.getMask(), getFrameWidth(), getFrameHeight(), result);
+		result.setCaptureTime(frame.getPair().getCaptureTime());
+		frame.getTimestamps().mark(FrameTimestamps.EXTRACTED);
+		result.getTimestamps().copyFrom(frame.getTimestamps());
 	}
 
 	@Override
-	public List<PreciseRectangle> apply(VideoFrame frameOn, VideoFrame frameOff) {
-		try {
-			BufferedImage offImg = frameOff.getBufferedImage();
-			BufferedImage onImg = frameOn.getBufferedImage();
-			return apply(onImg, offImg);
-		} catch (UnsupportedMethod e) {
-			//JPEG decode failed
-			e.printStackTrace();
-			return Collections.emptyList();
+	public ResultFrame apply(ImageFrame frameOn, ImageFrame frameOff) {
+		ResultFrame result;
+		if (this.yuvDiff != null && frameOn.getFormat() == Format.YUYV && frameOff.getFormat() == Format.YUYV) {
+			//Skip the conversion to RGB
+			this.timestamps.mark(FrameTimestamps.DECODED);
+			result = apply(frameOn.getYuyvImage(), frameOff.getYuyvImage());
+		} else {
+			try {
+				BufferedImage offImg = frameOff.getBufferedImage();
+				BufferedImage onImg = frameOn.getBufferedImage();
+				this.timestamps.mark(FrameTimestamps.DECODED);
+				result = apply(onImg, offImg);
+			} catch (UnsupportedMethod e) {
+				//JPEG decode failed
+				e.printStackTrace();
+				result = this.resultFrame;
+				result.reset(++this.frameSequence);
+			}
+		}
+		if (result != null) {
+			result.setCaptureTime(Math.max(frameOn.getCaptureTime(), frameOff.getCaptureTime()));
+			this.timestamps.mark(FrameTimestamps.EXTRACTED);
+			result.getTimestamps().copyFrom(this.timestamps);
 		}
+		return result;
 	}
 	
-	public List<PreciseRectangle> apply(BufferedImage onImg, BufferedImage offImg) {
+	public ResultFrame apply(BufferedImage onImg, BufferedImage offImg) {
 		// TODO maybe add null check for images
-		long timeA = System.nanoTime();
-		BinaryImage result = this.diff.apply(onImg, offImg);
-		long timeB = System.nanoTime();
-		System.out.println("S: " + (timeB - timeA) );
+		if (shouldUseRoi() && this.diff instanceof RegionDiffGenerator) {
+			ResultFrame rectangles = applyRoi((RegionDiffGenerator<?>) this.diff, ImageRaster.wrap(onImg), ImageRaster.wrap(offImg));
+			if (rectangles != null)
+				return rectangles;
+			//Fall back to scanning the entire frame
+		}
+		BinaryImage result;
+		if (this.diff instanceof RegionDiffGenerator)
+			result = this.frameMask = ((RegionDiffGenerator<?>) this.diff).apply(onImg, offImg, this.frameMask);
+		else
+			result = this.diff.apply(onImg, offImg);
+		this.timestamps.mark(FrameTimestamps.DIFFED);
+		if (result == null)
+			return null;
+		return processBooleanMap(result, offImg.getWidth(), offImg.getHeight());
+	}
+	
+	public ResultFrame apply(YuyvImage onImg, YuyvImage offImg) {
+		if (shouldUseRoi() && this.yuvDiff instanceof YuvDiffGenerator) {
+			ResultFrame rectangles = applyRoi((YuvDiffGenerator) this.yuvDiff, onImg, offImg);
+			if (rectangles != null)
+				return rectangles;
+			//Fall back to scanning the entire frame
+		}
+		BinaryImage result;
+		if (this.yuvDiff instanceof YuvDiffGenerator)
+			result = this.yuvFrameMask = ((YuvDiffGenerator) this.yuvDiff).apply(onImg, offImg, this.yuvFrameMask);
+		else
+			result = this.yuvDiff.apply(onImg, offImg);
+		this.timestamps.mark(FrameTimestamps.DIFFED);
 		if (result == null)
 			return null;
 		return processBooleanMap(result, offImg.getWidth(), offImg.getHeight());
@@ -23,6 +23,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import javax.imageio.ImageIO;
 
@@ -30,12 +32,30 @@ import com.moe365.mopi.CommandLineParser.ParsedCommandLineArguments;
 import com.moe365.mopi.client.RioClient;
 import com.moe365.mopi.client.StaticRioClient;
 import com.moe365.mopi.geom.Polygon;
-import com.moe365.mopi.geom.Polygon.PointNode;
 import com.moe365.mopi.geom.PreciseRectangle;
 import com.moe365.mopi.net.MPHttpServer;
 import com.moe365.mopi.processing.AbstractImageProcessor;
+import com.moe365.mopi.processing.BinaryImage;
+import com.moe365.mopi.processing.BorderFollowingTracer;
 import com.moe365.mopi.processing.ContourTracer;
 import com.moe365.mopi.processing.DebuggingDiffGenerator;
+import com.moe365.mopi.processing.DiffGenerator;
+import com.moe365.mopi.processing.FramePairRing;
+import com.moe365.mopi.processing.ImageFrame;
+import com.moe365.mopi.processing.LazyDiffGenerator;
+import com.moe365.mopi.processing.ParallelDiffGenerator;
+import com.moe365.mopi.processing.PyramidDiffGenerator;
+import com.moe365.mopi.processing.RawImageFrame;
+import com.moe365.mopi.processing.RegionDiffGenerator;
+import com.moe365.mopi.processing.ReplayFrameSource;
+import com.moe365.mopi.processing.RunLengthDiffGenerator;
+import com.moe365.mopi.processing.SummedAreaDiffGenerator;
+import com.moe365.mopi.processing.SyntheticFrameSource;
+import com.moe365.mopi.processing.TargetTracker;
+import com.moe365.mopi.processing.WrappedVideoFrame;
+import com.moe365.mopi.processing.YuvDiffGenerator;
+import com.moe365.mopi.util.FrameMetrics;
+import com.moe365.mopi.util.FrameTimestamps;
 import com.pi4j.io.gpio.GpioController;
 import com.pi4j.io.gpio.GpioFactory;
 import com.pi4j.io.gpio.GpioPinDigitalOutput;
@@ -45,6 +65,7 @@ import com.pi4j.io.gpio.RaspiPin;
 
 import au.edu.jcu.v4l4j.Control;
 import au.edu.jcu.v4l4j.ControlList;
+import au.edu.jcu.v4l4j.FrameGrabber;
 import au.edu.jcu.v4l4j.ImageFormat;
 import au.edu.jcu.v4l4j.ImagePalette;
 import au.edu.jcu.v4l4j.JPEGFrameGrabber;
@@ -92,8 +113,22 @@ public class Main {
 	@Deprecated
 	public static volatile boolean processorEnabled = true;
 	public static VideoDevice camera;
-	public static JPEGFrameGrabber frameGrabber;
+	public static FrameGrabber frameGrabber;
 	public static AbstractImageProcessor<?> processor;
+	/**
+	 * Value of <kbd>--camera</kbd> that uses a {@link SyntheticFrameSource}
+	 * instead of a real camera
+	 */
+	public static final String SYNTHETIC_CAMERA = "synthetic";
+	/**
+	 * Per-stage latencies of processed frames, or null if they aren't recorded
+	 */
+	public static FrameMetrics metrics;
+	/**
+	 * How long <kbd>--test replay</kbd> waits for the processor to make
+	 * progress before giving up on the pairs that are left, in nanoseconds
+	 */
+	protected static final long REPLAY_IDLE_TIMEOUT = 1_000_000_000L;
 	
 	/**
 	 * Main entry point.
@@ -171,6 +206,12 @@ public class Main {
 				case "processing":
 					testProcessing(processor, parsed);
 					break;
+				case "raw":
+					testRawProcessing(processor, parsed);
+					break;
+				case "replay":
+					testReplay(processor, server, parsed);
+					break;
 				case "sse":
 					testSSE(server);
 				default:
@@ -182,17 +223,27 @@ public class Main {
 		}
 		
 		if (device != null) {
-			//Get the JPEG quality. Default to 80 if not set
-			final int jpegQuality = parsed.getOrDefault("--jpeg-quality", 80);
-			System.out.println("JPEG quality: " + jpegQuality + "%");
-			
-			//Get native capture format (format that the camera actually provides)
-			//Whatever format is captured will be software converted to JPEG
-			ImageFormat imf = device.getDeviceInfo().getFormatList().getNativeFormatOfType(ImagePalette.MJPEG);
-			System.out.println("Capturing with format " + imf);
-			
-			//Actually create the framegrabber
-			final JPEGFrameGrabber fg = frameGrabber = device.getJPEGFrameGrabber(width, height, 0, V4L4JConstants.STANDARD_WEBCAM, jpegQuality, imf);
+			final boolean rawCapture = parsed.isFlagSet("--raw-capture");
+			final FrameGrabber fg;
+			if (rawCapture) {
+				//Capture YUYV frames, so the processor can skip the JPEG encode/decode.
+				//Frames are only JPEG-encoded for the MJPEG stream.
+				ImageFormat imf = device.getDeviceInfo().getFormatList().getNativeFormatOfType(ImagePalette.YUYV);
+				System.out.println("Capturing raw frames with format " + imf);
+				fg = frameGrabber = device.getRawFrameGrabber(width, height, 0, V4L4JConstants.STANDARD_WEBCAM, imf);
+			} else {
+				//Get the JPEG quality. Default to 80 if not set
+				final int jpegQuality = parsed.getOrDefault("--jpeg-quality", 80);
+				System.out.println("JPEG quality: " + jpegQuality + "%");
+				
+				//Get native capture format (format that the camera actually provides)
+				//Whatever format is captured will be software converted to JPEG
+				ImageFormat imf = device.getDeviceInfo().getFormatList().getNativeFormatOfType(ImagePalette.MJPEG);
+				System.out.println("Capturing with format " + imf);
+				
+				//Actually create the framegrabber
+				fg = frameGrabber = device.getJPEGFrameGrabber(width, height, 0, V4L4JConstants.STANDARD_WEBCAM, jpegQuality, imf);
+			}
 			
 			//Set the target framerate to capture at. Default to 20FPS.
 			fg.setFrameInterval(parsed.getOrDefault("--fps-num", 1), parsed.getOrDefault("--fps-denom", 20));
@@ -205,7 +256,8 @@ public class Main {
 			
 			final int gpioDelay = parsed.getOrDefault("--gpio-delay", 5);
 			
-			fg.setCaptureCallback(frame -> {
+			fg.setCaptureCallback(videoFrame -> {
+					final ImageFrame frame = rawCapture ? WrappedVideoFrame.yuyv(videoFrame, width, height) : WrappedVideoFrame.jpeg(videoFrame);
 					try {
 						boolean gpioState;
 						//Drop frames taken before the LED had time to flash
@@ -214,7 +266,6 @@ public class Main {
 							if (frameTimestamp < 0)
 								frameTimestamp = Integer.toUnsignedLong((int) frameTimestamp);
 							final long newTimestamp = System.nanoTime() / 1000 + gpioDelay;
-							System.out.format("F: %d C: %d U: %d N: %d\n", frameTimestamp, System.nanoTime() / 1000, ledUpdateTimestamp.get(), newTimestamp);
 							if (ledUpdateTimestamp.accumulateAndGet(frameTimestamp, (threshold, _frameTimestmp)->(_frameTimestmp >= threshold ? newTimestamp : threshold)) != newTimestamp) {
 								//Drop frame (it was old)
 	//							System.out.println("[drop frame]");
@@ -259,6 +310,27 @@ public class Main {
 					}
 				});
 			fg.startCapture();
+		} else if (SYNTHETIC_CAMERA.equals(parsed.get("--camera"))) {
+			final double fps = getFramerate(parsed);
+			final int jpegQuality = parsed.getOrDefault("--jpeg-quality", 80);
+			final int numTargets = parsed.getOrDefault("--synthetic-targets", 2);
+			final double speed = Double.parseDouble(parsed.getOrDefault("--synthetic-speed", "0.25"));
+			final int noise = parsed.getOrDefault("--synthetic-noise", 32);
+			System.out.format("Generating synthetic frames: %dx%d @ %.1ffps, %d targets, JPEG quality %d%%%n", width, height, fps, numTargets, jpegQuality);
+			final SyntheticFrameSource source = new SyntheticFrameSource(width, height, fps, numTargets, speed, noise, jpegQuality, (frame, flash) -> {
+				//Same as the capture callback: only stream lit frames, and
+				//pass the state that the LED would be switching to
+				if (server != null && flash)
+					server.offerFrame(frame);
+				if (tracer != null)
+					tracer.offerFrame(frame, !flash);
+				else
+					frame.recycle();
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				System.out.println("Synthetic frames: " + source.getFramesGenerated() + " (" + source.getLateFrames() + " late)");
+			}));
+			source.start();
 		}
 	}
 	
@@ -325,7 +397,7 @@ public class Main {
 			System.out.println("========== IMAGE " + numImages + " ===========");
 			BufferedImage onImg = ImageIO.read(onImgFile);
 			BufferedImage offImg = ImageIO.read(offImgFile);
-			List<PreciseRectangle> rectangles = processor.apply(onImg, offImg);
+			List<PreciseRectangle> rectangles = processor.apply(onImg, offImg).toList();
 			BufferedImage out = ((DebuggingDiffGenerator)processor.diff).imgFlt;
 			System.out.println("Found rectangles " + rectangles);
 
@@ -342,6 +414,83 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Run the processor on recorded YUYV frames (<kbd>on#.yuv</kbd> and
+	 * <kbd>off#.yuv</kbd>, at the resolution set by <kbd>--width</kbd> and
+	 * <kbd>--height</kbd>) instead of a camera.
+	 */
+	protected static void testRawProcessing(AbstractImageProcessor<?> processor, ParsedCommandLineArguments args) throws IOException {
+		System.out.println("RUNNING TEST: RAW PROCESSING");
+		File dir = new File(args.get("--test-images"));
+		for (int i = 0; ; i++) {
+			File onFile = new File(dir, "on" + i + ".yuv");
+			File offFile = new File(dir, "off" + i + ".yuv");
+			if (!(onFile.exists() && offFile.exists()))
+				break;
+			System.out.println("========== FRAME " + i + " ===========");
+			ImageFrame onFrame = RawImageFrame.readYuyv(onFile, width, height);
+			ImageFrame offFrame = RawImageFrame.readYuyv(offFile, width, height);
+			System.out.println("Found " + processor.apply(onFrame, offFrame));
+		}
+	}
+	
+	/**
+	 * Replay recorded pairs through the processor's capture path (see
+	 * {@link ReplayFrameSource}), and report the throughput. Drop counts and
+	 * latencies are printed when the program exits.
+	 */
+	protected static void testReplay(AbstractImageProcessor<?> processor, MPHttpServer server, ParsedCommandLineArguments args) throws IOException, InterruptedException {
+		System.out.println("RUNNING TEST: REPLAY");
+		if (processor == null) {
+			System.err.println("Replay requires a processor");
+			return;
+		}
+		final double fps = getFramerate(args);
+		final double speed = Double.parseDouble(args.getOrDefault("--replay-speed", "1"));
+		final int loops = args.getOrDefault("--replay-loops", 10);
+		ReplayFrameSource source = new ReplayFrameSource(new File(args.get("--test-images")), width, height, processor,
+				server == null ? null : server::offerFrame, fps, speed, loops);
+		System.out.format("Replaying %d pairs %d times at %s%n", source.getNumPairs(), loops, speed > 0 ? (speed + "x " + fps + "fps") : "full speed");
+		final FramePairRing ring = processor.getFrameRing();
+		//Everything is counted relative to before the replay
+		final long publishedBefore = ring.getPairsPublished(), staleBefore = ring.getStaleDrops();
+		final long processedBefore = metrics != null ? metrics.getTotal().getCount() : 0;
+		final long start = System.nanoTime();
+		source.run();
+		//Wait for the processor to finish every pair that wasn't dropped (the
+		//ring is empty while the last one is still being processed)
+		long processed = 0, expected = 0, lastChange = System.nanoTime();
+		while (true) {
+			expected = (ring.getPairsPublished() - publishedBefore) - (ring.getStaleDrops() - staleBefore);
+			if (metrics != null ? processed >= expected : ring.isEmpty())
+				break;
+			Thread.sleep(5);
+			final long count = metrics != null ? metrics.getTotal().getCount() - processedBefore : processed;
+			if (count != processed) {
+				processed = count;
+				lastChange = System.nanoTime();
+			} else if (System.nanoTime() - lastChange > REPLAY_IDLE_TIMEOUT) {
+				//The processor threw on (and dropped) a pair
+				System.out.println("WARNING: gave up waiting for " + (expected - processed) + " pairs");
+				break;
+			}
+		}
+		final double seconds = (lastChange - start) / 1e9;
+		System.out.format("Offered %d frames in %.2fs (%.1f fps)%n", source.getFramesOffered(), source.getElapsed() / 1e9, source.getFramesOffered() * 1e9 / source.getElapsed());
+		if (metrics != null)
+			System.out.format("Processed %d of %d pairs in %.2fs (%.1f pairs/s)%n", processed, expected, seconds, processed / seconds);
+	}
+	
+	/**
+	 * Get the framerate set by <kbd>--fps-num</kbd> and <kbd>--fps-denom</kbd>
+	 * (which set the frame interval, like v4l4j does). Defaults to 20fps.
+	 * @param args Command line arguments
+	 * @return framerate, in frames per second
+	 */
+	protected static double getFramerate(ParsedCommandLineArguments args) {
+		return ((double) args.getOrDefault("--fps-denom", 20)) / args.getOrDefault("--fps-num", 1);
+	}
+	
 	protected static void testControls(VideoDevice device) throws ControlException, UnsupportedMethod, StateException {
 		System.out.println("RUNNING TEST: CONTROLS");
 		ControlList controls = device.getControlList();
@@ -476,23 +625,34 @@ public class Main {
 		}
 		
 		if (args.isFlagSet("--trace-contours")) {
-			ContourTracer processor = new ContourTracer(width, height, polygons -> {
+			Consumer<List<Polygon>> handler = polygons -> {
 				for (Polygon polygon : polygons) {
 					System.out.println("=> " + polygon);
-					PointNode node = polygon.getStartingPoint();
 					// Scale
-					do {
-						node = node.set(node.getX() / width, node.getY() / height);
-					} while (!(node = node.next()).equals(polygon.getStartingPoint()));
+					polygon.scale(1.0 / width, 1.0 / height);
 				}
 				if (httpServer != null)
 					httpServer.offerPolygons(polygons);
-			});
-			Main.processor = processor;
+			};
+			String algorithm = args.get("--trace-contours");
+			if ("border".equalsIgnoreCase(algorithm)) {
+				System.out.println("Tracing contours by border following");
+				Main.processor = new BorderFollowingTracer(width, height, handler);
+			} else {
+				ContourTracer.ContourTracerParams params = new ContourTracer.ContourTracerParams()
+						.setFrameMaxX(width)
+						.setFrameMaxY(height)
+						.setSimplifyTolerance(Double.parseDouble(args.getOrDefault("--contour-tolerance", "1")));
+				Main.processor = new ContourTracer(params, handler);
+			}
 		} else {
 			int targetWidth = args.getOrDefault("--target-width", BOILER_TARGET_WIDTH);
 			int targetHeight = args.getOrDefault("--target-height", BOILER_TARGET_HEIGHT);
 			System.out.println("Target dimensions: " + targetWidth + "x" + targetHeight);
+			//Extrapolate targets to when they're sent
+			final TargetTracker tracker = args.isFlagSet("--track-targets") ? new TargetTracker() : null;
+			final boolean fitRotated = args.isFlagSet("--fit-rotated");
+			final FrameMetrics metrics = Main.metrics = new FrameMetrics();
 			ImageProcessor processor = new ImageProcessor(width, height, targetWidth, targetHeight, rectangles-> {
 //				System.out.println("Found " + rectangles.size() + " rects (preARfilter)");
 				//Filter based on aspect ratio (height/width)
@@ -503,37 +663,100 @@ public class Main {
 					return ar > (1/6f) || ar < (1/16f);
 				});*/
 				
-				System.out.println("Found " + rectangles.size() + " rects");
-				//print the rectangles' dimensions to STDOUT
-				for (PreciseRectangle rectangle : rectangles)
-					System.out.println("=> (" + (rectangle.getX() + (rectangle.getWidth()/2)) * 100.0 + "," + (rectangle.getY() + (rectangle.getHeight()/2)) * 100.0 + ")");
-				
+				//The rectangles are reused for the next frame, so don't
+				//allocate (or print) anything here
 				//send the largest rectangle(s) to the Rio
 				try {
-					if (client != null) {
-						if (rectangles.isEmpty()) {
-							client.writeNoneFound();
-						} else if (rectangles.size() == 1) {
-							client.writeOneFound(rectangles.get(0));
-						} else {
-							client.writeTwoFound(rectangles.get(0), rectangles.get(1));
-						}
+					if (client != null && tracker != null) {
+						tracker.update(rectangles);
+						//Capture times are in microseconds
+						client.writeTracked(tracker, System.nanoTime() / 1000);
+					} else if (client != null && fitRotated) {
+						client.writeRotated(rectangles);
+					} else if (client != null) {
+						client.writeResult(rectangles);
 					}
 				} catch (IOException | NullPointerException e) {
 					e.printStackTrace();
 				}
+				rectangles.getTimestamps().mark(FrameTimestamps.SENT);
+				metrics.record(rectangles.getTimestamps());
 				//Offer the rectangles to be put in the SSE stream
 				if (httpServer != null)
 					httpServer.offerRectangles(rectangles);
-			}, args.isFlagSet("--save-diff"));
+			}, initDiffGenerator(args), args.isFlagSet("--save-diff") ? null : new YuvDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE));
+			processor.setBlobSearch(ImageProcessor.BlobSearch.valueOf(args.getOrDefault("--blob-search", "split").toUpperCase()));
+			if (args.isFlagSet("--roi-tracking"))
+				processor.setRoiTracking(args.getOrDefault("--roi-margin", 32), args.getOrDefault("--roi-rescan", 15));
+			processor.setFitRotated(fitRotated);
 			Main.processor = processor;
+			if (httpServer != null)
+				httpServer.setMetrics(metrics);
 		}
+		if (args.isFlagSet("--pipeline")) {
+			if (args.isFlagSet("--roi-tracking"))
+				System.out.println("WARNING: ROI tracking is not used when pipelined");
+			Main.processor.setPipelined(true);
+		}
+		Main.processor.setPairingPolicy(FramePairRing.PairingPolicy.valueOf(args.getOrDefault("--frame-pairing", "newest_pair").toUpperCase()));
+		final AbstractImageProcessor<?> processor = Main.processor;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			System.out.println("Frames: " + processor.getFrameRing());
+			System.out.println("Queue latency: " + processor.getQueueLatency());
+			if (Main.metrics != null)
+				System.out.println("Frame latency:\n" + Main.metrics);
+			if (processor instanceof ContourTracer) {
+				ContourTracer tracer = (ContourTracer) processor;
+				long traced = tracer.getVerticesTraced(), kept = tracer.getVerticesKept();
+				System.out.format("Vertices: traced=%d kept=%d (%.1f%% removed)%n", traced, kept, traced == 0 ? 0.0 : 100.0 * (traced - kept) / traced);
+			}
+			//Also shuts down any threads that the processor owns
+			processor.stop();
+		}));
 		Main.processor.start();
 		enableProcessor();
 		return Main.processor;
 	}
 	
 
+	/**
+	 * Build the diff generator for the {@link ImageProcessor}, as selected
+	 * by the <kbd>--diff</kbd> and <kbd>--processing-threads</kbd> args.
+	 * @param args
+	 * @return diff generator
+	 */
+	protected static BiFunction<BufferedImage, BufferedImage, BinaryImage> initDiffGenerator(ParsedCommandLineArguments args) {
+		if (args.isFlagSet("--save-diff"))
+			return new DebuggingDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE);
+		RegionDiffGenerator<?> diff;
+		String algorithm = args.getOrDefault("--diff", "simple");
+		switch (algorithm) {
+			case "simple":
+				diff = new DiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE);
+				break;
+			case "lazy":
+				diff = new LazyDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE);
+				break;
+			case "rle":
+				diff = new RunLengthDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE);
+				break;
+			case "sat":
+				diff = new SummedAreaDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE);
+				break;
+			case "pyramid":
+				diff = new PyramidDiffGenerator(0, 0, width, height, ImageProcessor.DEFAULT_TOLERANCE, args.getOrDefault("--coarse-factor", PyramidDiffGenerator.DEFAULT_COARSE_FACTOR));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown diff algorithm: " + algorithm);
+		}
+		System.out.println("Using diff algorithm " + algorithm);
+		
+		int threads = args.getOrDefault("--processing-threads", 1);
+		if (threads > 1)
+			return new ParallelDiffGenerator<>(diff, threads);
+		return diff;
+	}
+	
 	/**
 	 * COMPUTERVISION(c)(sm): For the embetterment of computers seeing things.
 	 * <p>
@@ -622,10 +845,10 @@ public class Main {
 	 *            quality to set. Must be 0 to 100 (inclusive)
 	 */
 	public static void setQuality(int quality) {
-		if (frameGrabber == null)
+		if (!(frameGrabber instanceof JPEGFrameGrabber))
 			return;
 		System.out.println("SETTING QUALITY TO " + quality);
-		frameGrabber.setJPGQuality(quality);
+		((JPEGFrameGrabber) frameGrabber).setJPGQuality(quality);
 	}
 	
 	/**
@@ -661,7 +884,7 @@ public class Main {
 	 */
 	protected static VideoDevice initCamera(ParsedCommandLineArguments args) throws V4L4JException {
 		String devName = args.getOrDefault("--camera", "/dev/video0");
-		if (args.isFlagSet("--no-camera"))
+		if (args.isFlagSet("--no-camera") || SYNTHETIC_CAMERA.equals(devName))
 			return null;
 		System.out.print("Attempting to connect to camera @ " + devName + "...\t");
 		VideoDevice device;
@@ -704,17 +927,23 @@ public class Main {
 			.alias("-v", "--verbose")
 			.addFlag("--version", "Print the version string.")
 			.addFlag("--out", "Specify where to write log messages to (not implemented)")
-			.addKvPair("--test", "target", "Run test by name. Tests include 'controls', 'client', and 'sse'.")
+			.addKvPair("--test", "target", "Run test by name. Tests include 'controls', 'client', 'processing', 'raw', 'replay', and 'sse'.")
 			.addKvPair("--test-images", "dir", "Directory in which images for testing are put")
+			.addKvPair("--replay-speed", "multiplier", "Speed to replay frames at for '--test replay', relative to the camera's framerate (--fps-num/--fps-denom, default 20fps). Default 1 (real time); 0 replays as fast as the processor can keep up")
+			.addKvPair("--replay-loops", "count", "Number of times to replay the frames for '--test replay'. Default 10")
 			.addKvPair("--props", "file", "Specify the file to read properties from (not implemented)")
 			.addKvPair("--write-props", "file", "Write properties to file, which can be passed into the --props arg in the future (not implemented)")
 			.addFlag("--rebuild-parser", "Rebuilds the parser binary file")
 			// Camera options
-			.addKvPair("--camera", "device", "Specify the camera device file to use. Default '/dev/video0'")
+			.addKvPair("--camera", "device", "Specify the camera device file to use, or 'synthetic' to generate frames with moving targets instead. Default '/dev/video0'")
 			.alias("-C", "--camera")
 			.addKvPair("--width", "px", "Set the width of image to capture/broadcast")
 			.addKvPair("--height", "px", "Set the height of image to capture/broadcast")
 			.addKvPair("--jpeg-quality", "quality", "Set the JPEG quality to request. Must be 1-100")
+			.addKvPair("--synthetic-targets", "count", "Number of targets in synthetic frames. Default 2")
+			.addKvPair("--synthetic-speed", "widths/s", "Speed of the targets in synthetic frames, in frame widths per second. Default 0.25")
+			.addKvPair("--synthetic-noise", "level", "Maximum sensor noise in synthetic frames, per channel (0-255). Default 32")
+			.addFlag("--raw-capture", "Capture raw YUYV frames, and process them without JPEG encoding/decoding them")
 			.addKvPair("--fps-num", "numerator", "Set the FPS numerator. If the camera does not support the set framerate, the closest one available is chosen.")
 			.addKvPair("--fps-denom", "denom", "Set the FPS denominator. If the camera does not support the set framerate, the closest one available is chosen.")
 			// HTTP server options
@@ -727,8 +956,20 @@ public class Main {
 			// Image processor options
 			.addKvPair("--x-skip", "px", "Number of pixels to skip on the x axis when processing sweep 1 (not implemented)")
 			.addKvPair("--y-skip", "px", "Number of pixels to skip on the y axis when processing sweep 1 (not implemented)")
-			.addFlag("--trace-contours", "Enable the (dev) contour tracing algorithm")
+			.addFlag("--trace-contours", "Enable the (dev) contour tracing algorithm. Use '--trace-contours=border' to extract exact contours in one pass by border following")
+			.addKvPair("--contour-tolerance", "px", "Maximum distance that simplifying a traced contour can move its outline by, when removing vertices. Default 1; 0 disables simplification. Not used with --trace-contours=border")
 			.addFlag("--save-diff", "Save the diff image to a file (./img/delta[#].png). Requires processor.")
+			.addKvPair("--diff", "algorithm", "Algorithm to calculate the diff with. Options are 'simple' (default), 'lazy' (8x8 tiles), 'rle' (run-length encoded), 'sat' (summed-area table), and 'pyramid' (coarse-to-fine)")
+			.addKvPair("--coarse-factor", "px", "Size of the blocks that the pyramid diff samples before refining. Default 4")
+			.addKvPair("--processing-threads", "threads", "Number of threads to calculate the diff of each frame on. Default 1")
+			.addKvPair("--blob-search", "algorithm", "Algorithm to find blobs in the diff with. Options are 'split' (default; recursive bounding box) and 'label' (connected components)")
+			.addFlag("--pipeline", "Decode, diff, find blobs, and publish results on separate threads, so consecutive frames overlap")
+			.addKvPair("--frame-pairing", "policy", "Which pairs of frames to process. Options are 'newest_pair' (default; skip to the newest pair) and 'consecutive' (process every pair in order)")
+			.addFlag("--track-targets", "Track targets between frames, and send their positions extrapolated to the time they're sent (as well as measured)")
+			.addFlag("--fit-rotated", "Fit a minimum-area rotated rectangle to each target, and send its corners along with the bounding box. Ignored by the Rio client with --track-targets")
+			.addFlag("--roi-tracking", "Only search the area around the last frame's targets, with periodic full-frame rescans")
+			.addKvPair("--roi-margin", "px", "Number of pixels to expand each target by when searching the next frame in ROI mode. Default 32")
+			.addKvPair("--roi-rescan", "frames", "Maximum number of frames to process in ROI mode between full-frame rescans. Default 15")
 			.addKvPair("--target-width", "px", "Minimum width of target")
 			.addKvPair("--target-height", "px", "Minimum height of target")
 			// Client options
@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.moe365.mopi.geom.ResultFrame;
+import com.moe365.mopi.processing.TargetTracker;
+
 public abstract class AbstractRioClient implements RioClient {
 	
 	/**
@@ -13,10 +16,21 @@ public abstract class AbstractRioClient implements RioClient {
 	protected AtomicInteger packetNum = new AtomicInteger(0);
 	
 	/**
-	 * Buffer backing packets.
+	 * Buffer backing packets. It's direct, so the channel doesn't have to copy
+	 * it before sending.
 	 * TODO fix multithreading issues
 	 */
-	protected final ByteBuffer buffer = ByteBuffer.allocate(RioClient.BUFFER_SIZE);
+	protected final ByteBuffer buffer = ByteBuffer.allocateDirect(RioClient.BUFFER_SIZE);
+	
+	/*
+	 * Packets that are reused for every frame, so sending results doesn't
+	 * create garbage. Only touched while holding the lock on buffer.
+	 */
+	protected final NoneFoundRioPacket noneFoundPacket = new NoneFoundRioPacket();
+	protected final OneFoundRioPacket oneFoundPacket = new OneFoundRioPacket(0, 0, 0, 0);
+	protected final TwoFoundRioPacket twoFoundPacket = new TwoFoundRioPacket(0, 0, 0, 0, 0, 0, 0, 0);
+	protected final TrackedRioPacket trackedPacket = new TrackedRioPacket();
+	protected final RotatedRioPacket rotatedPacket = new RotatedRioPacket();
 	
 	@Override
 	public void broadcast(RioPacket packet) throws IOException {
@@ -30,5 +44,38 @@ public abstract class AbstractRioClient implements RioClient {
 		}
 	}
 	
+	@Override
+	public void writeNoneFound() throws IOException {
+		this.broadcast(noneFoundPacket);
+	}
+	
+	@Override
+	public void writeOneFound(double left, double top, double width, double height) throws IOException {
+		synchronized (buffer) {
+			this.broadcast(oneFoundPacket.set(left, top, width, height));
+		}
+	}
+	
+	@Override
+	public void writeTwoFound(double left1, double top1, double width1, double height1, double left2, double top2, double width2, double height2) throws IOException {
+		synchronized (buffer) {
+			this.broadcast(twoFoundPacket.set(left1, top1, width1, height1, left2, top2, width2, height2));
+		}
+	}
+	
+	@Override
+	public void writeTracked(TargetTracker tracker, long now) throws IOException {
+		synchronized (buffer) {
+			this.broadcast(trackedPacket.set(tracker, now));
+		}
+	}
+	
+	@Override
+	public void writeRotated(ResultFrame result) throws IOException {
+		synchronized (buffer) {
+			this.broadcast(rotatedPacket.set(result));
+		}
+	}
+	
 	protected abstract void send(ByteBuffer buffer) throws IOException;
 }
\ No newline at end of file
@@ -19,10 +19,19 @@ public class OneFoundRioPacket implements RioPacket {
 	}
 	
 	public OneFoundRioPacket(double x, double y, double width, double height) {
+		this.set(x, y, width, height);
+	}
+	
+	/**
+	 * Change the bounding box that this packet holds, so it can be reused
+	 * @return self
+	 */
+	public OneFoundRioPacket set(double x, double y, double width, double height) {
 		this.x = x;
 		this.y = y;
 		this.width = width;
 		this.height = height;
+		return this;
 	}
 	
 	@Override
@@ -4,6 +4,8 @@ import java.io.Closeable;
 import java.io.IOException;
 
 import com.moe365.mopi.geom.PreciseRectangle;
+import com.moe365.mopi.geom.ResultFrame;
+import com.moe365.mopi.processing.TargetTracker;
 
 /**
  * UDP server to broadcast data at the RIO. <strong>Not</strong> thread safe.
@@ -43,6 +45,8 @@ import com.moe365.mopi.geom.PreciseRectangle;
  * <li>{@linkplain RioPacket#STATUS_NONE_FOUND NONE_FOUND}</li>
  * <li>{@linkplain RioPacket#STATUS_ONE_FOUND ONE_FOUND}</li>
  * <li>{@linkplain RioPacket#STATUS_TWO_FOUND TWO_FOUND}</li>
+ * <li>{@linkplain RioPacket#STATUS_TRACKED TRACKED}</li>
+ * <li>{@linkplain RioPacket#STATUS_ROTATED ROTATED}</li>
  * <li>{@linkplain RioPacket#STATUS_ERROR ERROR}</li>
  * </ol>
  * All other status codes are reserved for future use.
@@ -89,9 +93,10 @@ public interface RioClient extends Closeable {
 	public static final int RIO_PORT = 5801;
 	public static final boolean PREFER_IP6 = true;
 	/**
-	 * Size of the buffer.
+	 * Size of the buffer. Big enough for the largest packet (a
+	 * {@link RotatedRioPacket} with two targets).
 	 */
-	public static final int BUFFER_SIZE = 72;
+	public static final int BUFFER_SIZE = 256;
 	public static final int RESOLVE_RETRY_TIME = 5_000;
 	/**
 	 * mDNS address of the RoboRio.
@@ -126,6 +131,42 @@ public interface RioClient extends Closeable {
 		this.broadcast(new TwoFoundRioPacket(left1, top1, width1, height1, left2, top2, width2, height2));
 	}
 	
+	/**
+	 * Send the largest (up to two) rectangles found in a frame
+	 * @param result Rectangles found, sorted by area (largest first)
+	 * @throws IOException
+	 */
+	default void writeResult(ResultFrame result) throws IOException {
+		if (result.isEmpty())
+			this.writeNoneFound();
+		else if (result.size() == 1)
+			this.writeOneFound(result.getX(0), result.getY(0), result.getWidth(0), result.getHeight(0));
+		else
+			this.writeTwoFound(result.getX(0), result.getY(0), result.getWidth(0), result.getHeight(0),
+					result.getX(1), result.getY(1), result.getWidth(1), result.getHeight(1));
+	}
+	
+	/**
+	 * Send the measured and predicted positions of the tracker's largest
+	 * (up to two) targets
+	 * @param tracker Tracker, which has been updated with the latest frame
+	 * @param now Current time, in microseconds (to extrapolate to)
+	 * @throws IOException
+	 */
+	default void writeTracked(TargetTracker tracker, long now) throws IOException {
+		this.broadcast(new TrackedRioPacket().set(tracker, now));
+	}
+	
+	/**
+	 * Send the bounding boxes and fitted rotated rectangles of the largest
+	 * (up to two) rectangles found in a frame
+	 * @param result Rectangles found, sorted by area (largest first)
+	 * @throws IOException
+	 */
+	default void writeRotated(ResultFrame result) throws IOException {
+		this.broadcast(new RotatedRioPacket().set(result));
+	}
+	
 	default void writeError(String message) throws IOException {
 		broadcast(new ErrorRioPacket(message));
 	}
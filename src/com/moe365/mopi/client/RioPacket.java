@@ -29,6 +29,16 @@ public interface RioPacket {
 	 * be included in the packet.
 	 */
 	public static final short STATUS_TWO_FOUND = 3;
+	/**
+	 * Denotes a packet with the measured and predicted positions of up to two
+	 * targets. See {@link TrackedRioPacket}.
+	 */
+	public static final short STATUS_TRACKED = 4;
+	/**
+	 * Denotes a packet with the bounding boxes and fitted rotated rectangles
+	 * of up to two targets. See {@link RotatedRioPacket}.
+	 */
+	public static final short STATUS_ROTATED = 5;
 	// Statuses >= 0x8000 are special metadata things, and shouldn't be
 	// discarded, ever
 	/**
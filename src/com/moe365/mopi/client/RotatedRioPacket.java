@@ -0,0 +1,74 @@
+package com.moe365.mopi.client;
+
+import java.nio.ByteBuffer;
+
+import com.moe365.mopi.geom.HullFitter;
+import com.moe365.mopi.geom.ResultFrame;
+
+/**
+ * {@link RioPacket} with the bounding boxes of (up to) the two largest
+ * targets, and the corners of the minimum-area rotated rectangle fitted to
+ * each of them.
+ * <p>
+ * Targets seen at an angle have bounding boxes that are a lot bigger than
+ * they really are, so the corners can be used to find how the target is
+ * rotated/skewed. If the frame didn't have any rotated rectangles fitted,
+ * the corners of the bounding box are sent instead.
+ * </p>
+ * <pre>
+ * int    number of targets (0 to 2)
+ * for each target:
+ *   double left, top, width, height (bounding box)
+ *   double x0, y0, x1, y1, x2, y2, x3, y3 (corners, in order around the rectangle)
+ * </pre>
+ * @author mailmindlin
+ * @see HullFitter
+ */
+public class RotatedRioPacket implements RioPacket {
+	/**
+	 * Maximum number of targets sent
+	 */
+	public static final int MAX_TARGETS = 2;
+
+	int numTargets;
+	final double[] data = new double[MAX_TARGETS * 12];
+
+	/**
+	 * Fill this packet with the largest targets in a frame
+	 * @param result Rectangles found, sorted by area (largest first)
+	 * @return self
+	 */
+	public RotatedRioPacket set(ResultFrame result) {
+		this.numTargets = Math.min(result.size(), MAX_TARGETS);
+		for (int i = 0; i < this.numTargets; i++) {
+			final int j = i * 12;
+			data[j + 0] = result.getX(i);
+			data[j + 1] = result.getY(i);
+			data[j + 2] = result.getWidth(i);
+			data[j + 3] = result.getHeight(i);
+			for (int corner = 0; corner < 4; corner++) {
+				data[j + 4 + corner * 2] = result.getCornerX(i, corner);
+				data[j + 5 + corner * 2] = result.getCornerY(i, corner);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public int getStatus() {
+		return RioPacket.STATUS_ROTATED;
+	}
+
+	@Override
+	public int getLength() {
+		//1 int + 12 doubles per target
+		return Integer.BYTES + numTargets * 12 * Double.BYTES;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(this.numTargets);
+		for (int i = 0; i < this.numTargets * 12; i++)
+			buffer.putDouble(data[i]);
+	}
+}
@@ -0,0 +1,74 @@
+package com.moe365.mopi.client;
+
+import java.nio.ByteBuffer;
+
+import com.moe365.mopi.processing.TargetTracker;
+
+/**
+ * {@link RioPacket} with both the measured and predicted positions of (up to)
+ * the two largest targets.
+ * <p>
+ * The predicted positions are extrapolated (by a {@link TargetTracker}) from
+ * when the frame was captured to when the packet was built, so the Rio can
+ * act as if there was no processing latency.
+ * </p>
+ * <pre>
+ * int    latency (microseconds between capture and send; 0 if unknown)
+ * int    number of targets (0 to 2)
+ * for each target:
+ *   double measured left, measured top, width, height
+ *   double predicted left, predicted top
+ * </pre>
+ * @author mailmindlin
+ */
+public class TrackedRioPacket implements RioPacket {
+	/**
+	 * Maximum number of targets sent
+	 */
+	public static final int MAX_TARGETS = 2;
+	
+	int latency;
+	int numTargets;
+	final double[] data = new double[MAX_TARGETS * 6];
+	
+	/**
+	 * Fill this packet with the tracker's targets, extrapolated to the
+	 * current time
+	 * @param tracker Tracker
+	 * @param now Current time, in microseconds
+	 * @return self
+	 */
+	public TrackedRioPacket set(TargetTracker tracker, long now) {
+		this.latency = (int) tracker.getLatency(now);
+		this.numTargets = Math.min(tracker.getNumTargets(), MAX_TARGETS);
+		for (int i = 0; i < this.numTargets; i++) {
+			final int j = i * 6;
+			data[j + 0] = tracker.getMeasuredX(i);
+			data[j + 1] = tracker.getMeasuredY(i);
+			data[j + 2] = tracker.getWidth(i);
+			data[j + 3] = tracker.getHeight(i);
+			data[j + 4] = tracker.getPredictedX(i, now);
+			data[j + 5] = tracker.getPredictedY(i, now);
+		}
+		return this;
+	}
+	
+	@Override
+	public int getStatus() {
+		return RioPacket.STATUS_TRACKED;
+	}
+
+	@Override
+	public int getLength() {
+		//2 ints + 6 doubles per target
+		return 2 * Integer.BYTES + numTargets * 6 * Double.BYTES;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(this.latency);
+		buffer.putInt(this.numTargets);
+		for (int i = 0; i < this.numTargets * 6; i++)
+			buffer.putDouble(data[i]);
+	}
+}
@@ -5,15 +5,31 @@ import java.nio.ByteBuffer;
 import com.moe365.mopi.geom.PreciseRectangle;
 
 public class TwoFoundRioPacket implements RioPacket {
-	private final PreciseRectangle rect1, rect2;
+	double left1, top1, width1, height1;
+	double left2, top2, width2, height2;
 	
 	public TwoFoundRioPacket(double left1, double top1, double width1, double height1, double left2, double top2, double width2, double height2) {
-		this(new PreciseRectangle(left1, top1, width1, height1), new PreciseRectangle(left2, top2, width2, height2));
+		this.set(left1, top1, width1, height1, left2, top2, width2, height2);
 	}
 	
 	public TwoFoundRioPacket(PreciseRectangle rect1, PreciseRectangle rect2) {
-		this.rect1 = rect1;
-		this.rect2 = rect2;
+		this(rect1.getX(), rect1.getY(), rect1.getWidth(), rect1.getHeight(), rect2.getX(), rect2.getY(), rect2.getWidth(), rect2.getHeight());
+	}
+	
+	/**
+	 * Change the bounding boxes that this packet holds, so it can be reused
+	 * @return self
+	 */
+	public TwoFoundRioPacket set(double left1, double top1, double width1, double height1, double left2, double top2, double width2, double height2) {
+		this.left1 = left1;
+		this.top1 = top1;
+		this.width1 = width1;
+		this.height1 = height1;
+		this.left2 = left2;
+		this.top2 = top2;
+		this.width2 = width2;
+		this.height2 = height2;
+		return this;
 	}
 	
 	@Override
@@ -29,14 +45,14 @@ public class TwoFoundRioPacket implements RioPacket {
 
 	@Override
 	public void writeTo(ByteBuffer buffer) {
-		buffer.putDouble(this.rect1.getX());
-		buffer.putDouble(this.rect1.getY());
-		buffer.putDouble(this.rect1.getWidth());
-		buffer.putDouble(this.rect1.getHeight());
+		buffer.putDouble(this.left1);
+		buffer.putDouble(this.top1);
+		buffer.putDouble(this.width1);
+		buffer.putDouble(this.height1);
 		
-		buffer.putDouble(this.rect2.getX());
-		buffer.putDouble(this.rect2.getY());
-		buffer.putDouble(this.rect2.getWidth());
-		buffer.putDouble(this.rect2.getHeight());
+		buffer.putDouble(this.left2);
+		buffer.putDouble(this.top2);
+		buffer.putDouble(this.width2);
+		buffer.putDouble(this.height2);
 	}
 }
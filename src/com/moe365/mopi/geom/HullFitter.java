@@ -0,0 +1,352 @@
+package com.moe365.mopi.geom;
+
+import java.util.Arrays;
+
+/**
+ * Finds the convex hull of a set of points, and the smallest (by area)
+ * rectangle, at any angle, that contains them.
+ * <p>
+ * This is used to fit targets that are seen at an angle, which have a much
+ * larger axis-aligned bounding box than they really are (which throws off
+ * any filtering by aspect ratio). The hull is found with Andrew's
+ * <a href="https://en.wikibooks.org/wiki/Algorithm_Implementation/Geometry/Convex_hull/Monotone_chain">monotone
+ * chain</a> algorithm, and the rectangle with
+ * <a href="https://en.wikipedia.org/wiki/Rotating_calipers">rotating
+ * calipers</a> (the smallest rectangle always has a side that is collinear
+ * with an edge of the hull, and each edge's rectangle can be found by
+ * advancing three pointers around the hull, so it's linear in the size of
+ * the hull).
+ * </p>
+ * <p>
+ * Points are stored in parallel primitive arrays, which are reused (and only
+ * grow), so once the fitter is warmed up, fitting a blob doesn't allocate.
+ * Not thread safe.
+ * </p>
+ * @author mailmindlin
+ */
+public class HullFitter {
+	protected static final int INITIAL_CAPACITY = 64;
+	/*
+	 * Input points. Sorted (by x, then y) when the hull is computed.
+	 */
+	protected double[] xs = new double[INITIAL_CAPACITY];
+	protected double[] ys = new double[INITIAL_CAPACITY];
+	protected int numPoints = 0;
+	/*
+	 * Convex hull, counterclockwise (in a y-up coordinate system), with no
+	 * collinear points, starting with the lowest x
+	 */
+	protected double[] hullX = new double[INITIAL_CAPACITY * 2];
+	protected double[] hullY = new double[INITIAL_CAPACITY * 2];
+	protected int hullSize = -1;
+	/**
+	 * Corners of the last rectangle fitted, as <code>{x0, y0, x1, y1, ...}</code>
+	 */
+	protected final double[] corners = new double[8];
+	protected double rectWidth, rectHeight, rectAngle;
+
+	/**
+	 * Remove all points
+	 */
+	public void clear() {
+		this.numPoints = 0;
+		this.hullSize = -1;
+	}
+
+	/**
+	 * Add a point
+	 */
+	public void addPoint(double x, double y) {
+		if (this.numPoints == this.xs.length) {
+			this.xs = Arrays.copyOf(this.xs, this.numPoints * 2);
+			this.ys = Arrays.copyOf(this.ys, this.numPoints * 2);
+		}
+		this.xs[this.numPoints] = x;
+		this.ys[this.numPoints] = y;
+		this.numPoints++;
+		this.hullSize = -1;
+	}
+
+	/**
+	 * Add points from parallel arrays
+	 * @param xs x coordinates
+	 * @param ys y coordinates
+	 * @param offset index of first point to add
+	 * @param length number of points to add
+	 */
+	public void addPoints(double[] xs, double[] ys, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			addPoint(xs[i], ys[i]);
+	}
+
+	/**
+	 * Add every vertex of a polygon
+	 */
+	public void addPolygon(Polygon polygon) {
+		for (int i = 0; i < polygon.size(); i++)
+			addPoint(polygon.getX(i), polygon.getY(i));
+	}
+
+	/**
+	 * @return number of points added
+	 */
+	public int getNumPoints() {
+		return this.numPoints;
+	}
+
+	/**
+	 * Compute the convex hull of the points added (if it hasn't been
+	 * computed since the last point was added).
+	 * @return number of vertices in the hull
+	 */
+	public int computeHull() {
+		if (this.hullSize >= 0)
+			return this.hullSize;
+		final int n = this.numPoints;
+		final double[] xs = this.xs, ys = this.ys;
+		if (this.hullX.length < n + 1) {
+			this.hullX = new double[n * 2];
+			this.hullY = new double[n * 2];
+		}
+		final double[] hx = this.hullX, hy = this.hullY;
+		if (n < 3) {
+			System.arraycopy(xs, 0, hx, 0, n);
+			System.arraycopy(ys, 0, hy, 0, n);
+			return this.hullSize = n;
+		}
+		sortPoints();
+		int k = 0;
+		//Lower hull
+		for (int i = 0; i < n; i++) {
+			while (k >= 2 && cross(hx[k - 2], hy[k - 2], hx[k - 1], hy[k - 1], xs[i], ys[i]) <= 0)
+				k--;
+			hx[k] = xs[i];
+			hy[k] = ys[i];
+			k++;
+		}
+		//Upper hull
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			while (k >= lower && cross(hx[k - 2], hy[k - 2], hx[k - 1], hy[k - 1], xs[i], ys[i]) <= 0)
+				k--;
+			hx[k] = xs[i];
+			hy[k] = ys[i];
+			k++;
+		}
+		//The first point is repeated at the end
+		return this.hullSize = k - 1;
+	}
+
+	/**
+	 * Cross product of OA and OB (positive if O, A, B turn counterclockwise)
+	 */
+	protected static double cross(double ox, double oy, double ax, double ay, double bx, double by) {
+		return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+	}
+
+	/**
+	 * Sort the points by x, then y, in place (heapsort, so there's no
+	 * recursion or scratch space).
+	 */
+	protected void sortPoints() {
+		final int n = this.numPoints;
+		for (int i = n / 2 - 1; i >= 0; i--)
+			siftDown(i, n);
+		for (int end = n - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	protected void siftDown(int root, final int end) {
+		final double[] xs = this.xs, ys = this.ys;
+		while (true) {
+			int child = root * 2 + 1;
+			if (child >= end)
+				return;
+			if (child + 1 < end && (xs[child + 1] > xs[child] || (xs[child + 1] == xs[child] && ys[child + 1] > ys[child])))
+				child++;
+			if (xs[root] > xs[child] || (xs[root] == xs[child] && ys[root] >= ys[child]))
+				return;
+			swap(root, child);
+			root = child;
+		}
+	}
+
+	protected void swap(int i, int j) {
+		final double x = this.xs[i], y = this.ys[i];
+		this.xs[i] = this.xs[j];
+		this.ys[i] = this.ys[j];
+		this.xs[j] = x;
+		this.ys[j] = y;
+	}
+
+	public int getHullSize() {
+		return computeHull();
+	}
+
+	/**
+	 * @return x coordinate of vertex <var>i</var> of the hull
+	 */
+	public double getHullX(int i) {
+		return this.hullX[i];
+	}
+
+	/**
+	 * @return y coordinate of vertex <var>i</var> of the hull
+	 */
+	public double getHullY(int i) {
+		return this.hullY[i];
+	}
+
+	/**
+	 * Find the smallest rectangle that contains all of the points added.
+	 * Afterwards, its corners can be read with {@link #getCornerX(int)} and
+	 * {@link #getCornerY(int)}.
+	 * @return area of the rectangle
+	 */
+	public double fitMinAreaRectangle() {
+		final int h = computeHull();
+		final double[] hx = this.hullX, hy = this.hullY;
+		if (h == 0) {
+			Arrays.fill(this.corners, 0);
+			this.rectWidth = this.rectHeight = this.rectAngle = 0;
+			return 0;
+		}
+		if (h < 3) {
+			//A point or a line segment
+			final double dx = hx[h - 1] - hx[0], dy = hy[h - 1] - hy[0];
+			setRectangle(hx[0], hy[0], dx, dy, 0, Math.hypot(dx, dy), 0, 0);
+			return 0;
+		}
+		double bestArea = Double.POSITIVE_INFINITY;
+		//Extreme vertices: along the edge, behind the edge, and away from the edge
+		int right = 0, left = 0, far = 0;
+		for (int i = 0; i < h; i++) {
+			final int next = (i + 1 == h) ? 0 : i + 1;
+			double ux = hx[next] - hx[i], uy = hy[next] - hy[i];
+			final double length = Math.hypot(ux, uy);
+			ux /= length;
+			uy /= length;
+			//Normal, pointing into the hull
+			final double nx = -uy, ny = ux;
+			if (i == 0) {
+				for (int j = 1; j < h; j++) {
+					if (hx[j] * ux + hy[j] * uy > hx[right] * ux + hy[right] * uy)
+						right = j;
+					if (hx[j] * ux + hy[j] * uy < hx[left] * ux + hy[left] * uy)
+						left = j;
+					if (hx[j] * nx + hy[j] * ny > hx[far] * nx + hy[far] * ny)
+						far = j;
+				}
+			} else {
+				//Each extreme only moves forwards around the hull
+				for (int steps = 0; steps < h; steps++) {
+					final int r = (right + 1 == h) ? 0 : right + 1;
+					if (hx[r] * ux + hy[r] * uy < hx[right] * ux + hy[right] * uy)
+						break;
+					right = r;
+				}
+				for (int steps = 0; steps < h; steps++) {
+					final int f = (far + 1 == h) ? 0 : far + 1;
+					if (hx[f] * nx + hy[f] * ny < hx[far] * nx + hy[far] * ny)
+						break;
+					far = f;
+				}
+				for (int steps = 0; steps < h; steps++) {
+					final int l = (left + 1 == h) ? 0 : left + 1;
+					if (hx[l] * ux + hy[l] * uy > hx[left] * ux + hy[left] * uy)
+						break;
+					left = l;
+				}
+			}
+			final double minU = hx[left] * ux + hy[left] * uy, maxU = hx[right] * ux + hy[right] * uy;
+			final double minN = hx[i] * nx + hy[i] * ny, maxN = hx[far] * nx + hy[far] * ny;
+			final double area = (maxU - minU) * (maxN - minN);
+			if (area < bestArea) {
+				bestArea = area;
+				setRectangle(0, 0, ux, uy, minU, maxU, minN, maxN);
+			}
+		}
+		return bestArea;
+	}
+
+	/**
+	 * Set the corners of the rectangle with sides along <var>u</var> and its
+	 * normal, spanning [minU, maxU] along u, and [minN, maxN] along the
+	 * normal (relative to (ox, oy)).
+	 */
+	protected void setRectangle(double ox, double oy, double ux, double uy, double minU, double maxU, double minN, double maxN) {
+		final double length = Math.hypot(ux, uy);
+		if (length == 0) {
+			ux = 1;
+			uy = 0;
+		} else {
+			ux /= length;
+			uy /= length;
+		}
+		final double nx = -uy, ny = ux;
+		final double[] corners = this.corners;
+		corners[0] = ox + minU * ux + minN * nx;
+		corners[1] = oy + minU * uy + minN * ny;
+		corners[2] = ox + maxU * ux + minN * nx;
+		corners[3] = oy + maxU * uy + minN * ny;
+		corners[4] = ox + maxU * ux + maxN * nx;
+		corners[5] = oy + maxU * uy + maxN * ny;
+		corners[6] = ox + minU * ux + maxN * nx;
+		corners[7] = oy + minU * uy + maxN * ny;
+		//Report the long side as the width, at an angle in (-pi/2, pi/2]
+		double angle = Math.atan2(uy, ux);
+		double width = maxU - minU, height = maxN - minN;
+		if (height > width) {
+			final double tmp = width;
+			width = height;
+			height = tmp;
+			angle += Math.PI / 2;
+		}
+		while (angle > Math.PI / 2)
+			angle -= Math.PI;
+		while (angle <= -Math.PI / 2)
+			angle += Math.PI;
+		this.rectWidth = width;
+		this.rectHeight = height;
+		this.rectAngle = angle;
+	}
+
+	/**
+	 * @param i corner (0 to 3, in order around the rectangle)
+	 * @return x coordinate of a corner of the last rectangle fitted
+	 */
+	public double getCornerX(int i) {
+		return this.corners[i * 2];
+	}
+
+	/**
+	 * @param i corner (0 to 3, in order around the rectangle)
+	 * @return y coordinate of a corner of the last rectangle fitted
+	 */
+	public double getCornerY(int i) {
+		return this.corners[i * 2 + 1];
+	}
+
+	/**
+	 * @return length of the long side of the last rectangle fitted
+	 */
+	public double getRectangleWidth() {
+		return this.rectWidth;
+	}
+
+	/**
+	 * @return length of the short side of the last rectangle fitted
+	 */
+	public double getRectangleHeight() {
+		return this.rectHeight;
+	}
+
+	/**
+	 * @return angle of the long side of the last rectangle fitted, from the
+	 *         x axis, in radians (-pi/2 to pi/2)
+	 */
+	public double getRectangleAngle() {
+		return this.rectAngle;
+	}
+}
@@ -1,16 +1,38 @@
 package com.moe365.mopi.geom;
 
+import java.util.Arrays;
+
 /**
- * A set of points that create a polygon. The set of points (should) be
- * circularly- and doubly-linked.
- * 
+ * A polygon, stored as arrays of the x and y coordinates of its vertices, in
+ * order. The last vertex is connected back to the first.
+ * <p>
+ * Vertices are addressed by index, and can be added, inserted, moved, and
+ * removed without allocating (except when the arrays need to grow), and the
+ * whole polygon can be scaled or translated in place. The area and bounding
+ * box are cached until the polygon is next modified.
+ * </p>
+ * <p>
+ * Vertices are compared by index, not by value, so a polygon can visit the
+ * same point more than once (e.g., a contour around a line that is one pixel
+ * wide).
+ * </p>
+ *
  * @author mailmindlin
  */
 public class Polygon {
+	protected static final int INITIAL_CAPACITY = 8;
+	/**
+	 * x coordinates of the vertices. Only the first {@link #size} are valid.
+	 */
+	protected double[] xs;
 	/**
-	 * The starting point for this polygon.
+	 * y coordinates of the vertices. Only the first {@link #size} are valid.
 	 */
-	protected PointNode start;
+	protected double[] ys;
+	/**
+	 * Number of vertices
+	 */
+	protected int size = 0;
 	/**
 	 * Whether the points in this polygon have been modified since the area was
 	 * last calculated.
@@ -24,218 +46,39 @@ public class Polygon {
 	 * The last calculated bounding box. Null if not valid anymore.
 	 */
 	protected PreciseRectangle bounds;
-	
+
+	/**
+	 * Create an empty polygon
+	 */
+	public Polygon() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Create an empty polygon, with room for the given number of vertices
+	 * before it has to grow
+	 *
+	 * @param capacity
+	 *            initial capacity
+	 */
+	public Polygon(int capacity) {
+		this.xs = new double[Math.max(capacity, 1)];
+		this.ys = new double[Math.max(capacity, 1)];
+	}
+
 	/**
 	 * Create a polygon starting at the given coordinates
-	 * 
+	 *
 	 * @param x
 	 *            x-coordinate
 	 * @param y
 	 *            y-coordinate
 	 */
 	public Polygon(double x, double y) {
-		this.start = new PointNode(x, y);
-		this.start.next = start;
-		this.start.prev = start;
-	}
-	
-	/**
-	 * A doubly-linked point.
-	 * 
-	 * @author mailmindlin
-	 */
-	public class PointNode extends Point2D {
-		/**
-		 * The next node
-		 */
-		protected PointNode next;
-		/**
-		 * The previous node
-		 */
-		protected PointNode prev;
-		
-		/**
-		 * Create an empty node (for deserialization; do not use)
-		 */
-		public PointNode() {
-			
-		}
-		
-		/**
-		 * Create an orphaned node at the given coordinates.
-		 * 
-		 * @param x
-		 *            x-coordinate
-		 * @param y
-		 *            y-coordinate
-		 */
-		public PointNode(double x, double y) {
-			super(x, y);
-		}
-		
-		/**
-		 * Create a node at the given coordinates immediately after
-		 * <code>prev</code>
-		 * 
-		 * @param prev
-		 *            preceding node
-		 * @param x
-		 *            x-coordinate
-		 * @param y
-		 *            y-coordinate
-		 */
-		public PointNode(PointNode prev, double x, double y) {
-			this(x, y);
-			this.prev = prev;
-		}
-		
-		/**
-		 * Create a node.
-		 * 
-		 * @param prev
-		 *            preceding node
-		 * @param x
-		 *            x-coordinate
-		 * @param y
-		 *            y-coordinate
-		 * @param next
-		 *            next node
-		 */
-		public PointNode(PointNode prev, double x, double y, PointNode next) {
-			this(prev, x, y);
-			this.next = next;
-		}
-		
-		/**
-		 * Get the next node in the series.
-		 * @return next
-		 */
-		public PointNode next() {
-			return next;
-		}
-		
-		/**
-		 * Gets the next node, if it is not null.
-		 * @return next, or this
-		 */
-		public PointNode nextIfNotNull() {
-			if (next == null)
-				return this;
-			return next;
-		}
-		
-		/**
-		 * Insert a node with the given coordinates immediately after this node.
-		 * 
-		 * @param x
-		 *            x coordinate of the node to insert
-		 * @param y
-		 *            y coordinate of the node to insert
-		 * @return created node
-		 */
-		public PointNode insertNext(double x, double y) {
-			setModified();
-			PointNode node = new PointNode(this, x, y, this.next);
-			this.next.prev = node;
-			this.next = node;
-			return node;
-		}
-		
-		/**
-		 * Insert the given node immediately after this one.
-		 * 
-		 * @param node
-		 *            to insert
-		 * @return inserted node
-		 */
-		public PointNode insertNext(PointNode node) {
-			setModified();
-			this.next.prev = node;
-			node.next = this.next;
-			this.next = node;
-			node.prev = this;
-			return node;
-		}
-		
-		/**
-		 * Insert a node with the given coordinates immediately before this
-		 * node.
-		 * 
-		 * @param x
-		 *            x coordinate of the node to insert
-		 * @param y
-		 *            y coordinate of the node to insert
-		 * @return created node
-		 */
-		public PointNode insertBefore(double x, double y) {
-			setModified();
-			PointNode node = new PointNode(this.prev, x, y, this);
-			this.prev.next = node;
-			this.prev = node;
-			return node;
-		}
-		
-		/**
-		 * Insert the given node immediately before this one.
-		 * 
-		 * @param node
-		 *            to insert
-		 * @return inserted node
-		 */
-		public PointNode insertBefore(PointNode node) {
-			setModified();
-			this.prev.next = node;
-			node.prev = this.prev;
-			this.prev = node;
-			node.next = this;
-			return node;
-		}
-		
-		/**
-		 * Remove the next node by calling <code>this.next().remove()</code>.
-		 * 
-		 * @return self
-		 */
-		public PointNode removeNext() {
-			next.remove();
-			return this;
-		}
-		
-		/**
-		 * Remove this node from the chain.
-		 * 
-		 * @return the next node
-		 */
-		public PointNode remove() {
-			setModified();
-			this.prev.next = this.next;
-			this.next.prev = this.prev;
-			if (this == start)
-				start = this.next;
-			return this.next;
-		}
-		
-		/**
-		 * 'Set' the value of this node by removing it and inserting a new node
-		 * with the given coordinates.
-		 * 
-		 * @param x
-		 *            x coordinate of the new node
-		 * @param y
-		 *            y coordinate of the new node
-		 * @return the new node
-		 */
-		public PointNode set(double x, double y) {
-			setModified();
-			PointNode node = new PointNode(this.prev, x, y, this.next);
-			this.prev.next = node;
-			this.next.prev = node;
-			if (start == this)
-				start = node;
-			return node;
-		}
+		this();
+		addPoint(x, y);
 	}
-	
+
 	/**
 	 * Mark this polygon as having been modified, clearing previously calculated
 	 * values.
@@ -244,83 +87,262 @@ public class Polygon {
 		this.bounds = null;
 		this.modified = true;
 	}
-	
+
+	/**
+	 * Make sure that there's room for at least <var>capacity</var> vertices
+	 */
+	protected void ensureCapacity(int capacity) {
+		if (capacity > this.xs.length) {
+			capacity = Math.max(capacity, this.xs.length * 2);
+			this.xs = Arrays.copyOf(this.xs, capacity);
+			this.ys = Arrays.copyOf(this.ys, capacity);
+		}
+	}
+
+	/**
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Get the x coordinate of vertex <var>i</var>
+	 */
+	public double getX(int i) {
+		return this.xs[i];
+	}
+
+	/**
+	 * Get the y coordinate of vertex <var>i</var>
+	 */
+	public double getY(int i) {
+		return this.ys[i];
+	}
+
+	/**
+	 * Get vertex <var>i</var> as a point. This allocates, so prefer
+	 * {@link #getX(int)} and {@link #getY(int)}.
+	 */
+	public Point2D getPoint(int i) {
+		return new Point2D(this.xs[i], this.ys[i]);
+	}
+
+	/**
+	 * Get the index of the vertex after <var>i</var> (wrapping around to the
+	 * first vertex)
+	 */
+	public int next(int i) {
+		return (i + 1 == this.size) ? 0 : i + 1;
+	}
+
+	/**
+	 * Get the index of the vertex before <var>i</var> (wrapping around to the
+	 * last vertex)
+	 */
+	public int prev(int i) {
+		return (i == 0 ? this.size : i) - 1;
+	}
+
+	/**
+	 * Move vertex <var>i</var>
+	 *
+	 * @param i
+	 *            index of vertex
+	 * @param x
+	 *            new x coordinate
+	 * @param y
+	 *            new y coordinate
+	 */
+	public void set(int i, double x, double y) {
+		setModified();
+		this.xs[i] = x;
+		this.ys[i] = y;
+	}
+
 	/**
 	 * Add point to the end of the polygon chain.
-	 * @param x 
-	 * @param y 
+	 * @param x
+	 * @param y
 	 */
 	public void addPoint(double x, double y) {
-		start.insertBefore(x, y);
+		setModified();
+		ensureCapacity(this.size + 1);
+		this.xs[this.size] = x;
+		this.ys[this.size] = y;
+		this.size++;
+	}
+
+	/**
+	 * Insert a vertex, so it has index <var>i</var> (and the vertices after
+	 * it are shifted up by one).
+	 *
+	 * @param i
+	 *            index to insert the vertex at (0 to {@link #size()},
+	 *            inclusive)
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return <var>i</var>
+	 */
+	public int insert(int i, double x, double y) {
+		if (i < 0 || i > this.size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", size: " + this.size);
+		setModified();
+		ensureCapacity(this.size + 1);
+		System.arraycopy(this.xs, i, this.xs, i + 1, this.size - i);
+		System.arraycopy(this.ys, i, this.ys, i + 1, this.size - i);
+		this.xs[i] = x;
+		this.ys[i] = y;
+		this.size++;
+		return i;
+	}
+
+	/**
+	 * Remove vertex <var>i</var> (the vertices after it are shifted down by
+	 * one).
+	 *
+	 * @param i
+	 *            index of vertex to remove
+	 */
+	public void remove(int i) {
+		if (i < 0 || i >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", size: " + this.size);
+		setModified();
+		System.arraycopy(this.xs, i + 1, this.xs, i, this.size - i - 1);
+		System.arraycopy(this.ys, i + 1, this.ys, i, this.size - i - 1);
+		this.size--;
+	}
+
+	/**
+	 * Remove every vertex from index <var>size</var> onwards.
+	 *
+	 * @param size
+	 *            number of vertices to keep
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.size)
+			throw new IndexOutOfBoundsException("Size: " + size + ", current size: " + this.size);
+		setModified();
+		this.size = size;
+	}
+
+	/**
+	 * Remove all vertices. Doesn't shrink the arrays, so the polygon can be
+	 * refilled without allocating.
+	 */
+	public void clear() {
+		setModified();
+		this.size = 0;
+	}
+
+	/**
+	 * Scale every vertex (about the origin), in place
+	 *
+	 * @param xFactor
+	 *            factor to multiply x coordinates by
+	 * @param yFactor
+	 *            factor to multiply y coordinates by
+	 * @return self
+	 */
+	public Polygon scale(double xFactor, double yFactor) {
+		setModified();
+		for (int i = 0; i < this.size; i++) {
+			this.xs[i] *= xFactor;
+			this.ys[i] *= yFactor;
+		}
+		return this;
 	}
-	
+
 	/**
-	 * Calculate the area of the polygon. If this method is called multiple
-	 * times without changing any of the points between method calls, it will
-	 * return its previous value.
-	 * 
-	 * @return the area of this polygon
+	 * Move every vertex, in place
+	 *
+	 * @param dx
+	 *            offset to add to x coordinates
+	 * @param dy
+	 *            offset to add to y coordinates
+	 * @return self
+	 */
+	public Polygon translate(double dx, double dy) {
+		setModified();
+		for (int i = 0; i < this.size; i++) {
+			this.xs[i] += dx;
+			this.ys[i] += dy;
+		}
+		return this;
+	}
+
+	/**
+	 * Calculate the area of the polygon (with the shoelace formula). If this
+	 * method is called multiple times without changing any of the points
+	 * between method calls, it will return its previous value.
+	 *
+	 * @return the area of this polygon (always positive, whichever way it
+	 *         winds)
 	 */
 	public double getArea() {
 		if (modified) {
 			double sum = 0.0;
-			PointNode current = start;
-			PointNode next = current.next();
-			do
-				sum += (current.getX() * next.getX() - current.getY() * next.getY());
-			while ((current = next) != null && (next = next.nextIfNotNull()) != start);
-			this.area = sum * .5;
+			for (int i = 0, j = this.size - 1; i < this.size; j = i++)
+				sum += this.xs[j] * this.ys[i] - this.xs[i] * this.ys[j];
+			this.area = Math.abs(sum * .5);
 			modified = false;
 		}
 		return area;
 	}
-	
+
 	/**
 	 * Convert this rectangle to a bounding box. If this method is called
 	 * multiple times without changing any of the points between method calls,
 	 * it will return its previous value.
-	 * 
+	 *
 	 * @return bounding box
 	 */
 	public PreciseRectangle getBoundingBox() {
 		if (this.bounds == null) {
-			double minX = start.getX(), maxX = minX;
-			double minY = start.getY(), maxY = minY;
-			PointNode node = start;
-			while (!(node = node.next()).equals(start)) {
-				if (node.getX() < minX)
-					minX = node.getX();
-				else if (node.getX() > maxX)
-					maxX = node.getX();
-				
-				if (node.getY() < minY)
-					minY = node.getY();
-				else if (node.getY() > maxY)
-					maxY = node.getY();
+			if (this.size == 0)
+				return this.bounds = new PreciseRectangle(0, 0, 0, 0);
+			double minX = this.xs[0], maxX = minX;
+			double minY = this.ys[0], maxY = minY;
+			for (int i = 1; i < this.size; i++) {
+				final double x = this.xs[i], y = this.ys[i];
+				if (x < minX)
+					minX = x;
+				else if (x > maxX)
+					maxX = x;
+
+				if (y < minY)
+					minY = y;
+				else if (y > maxY)
+					maxY = y;
 			}
 			this.bounds = new PreciseRectangle(minX, minY, maxX - minX, maxY - minY);
 		}
 		return bounds;
 	}
-	
+
 	/**
-	 * Get the starting point
-	 * 
-	 * @return the starting point
-	 * @see #start
+	 * Append vertex <var>i</var>, formatted like {@link Point2D#toString()}
 	 */
-	public PointNode getStartingPoint() {
-		return start;
+	protected StringBuilder appendPoint(StringBuilder sb, int i) {
+		return sb.append("[x:").append(String.format("%.2f", this.xs[i])).append(",y:")
+				.append(String.format("%.2f", this.ys[i])).append(']');
 	}
-	
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("[");
-		PointNode node = start;
-		do
-			sb.append(node).append(',');
-		while ((node = node.next()) != start);
-		sb.append(node).append(']');
+		for (int i = 0; i < this.size; i++)
+			appendPoint(sb, i).append(',');
+		//Close the loop
+		if (this.size > 0)
+			appendPoint(sb, 0);
+		sb.append(']');
 		return sb.toString();
 	}
 }
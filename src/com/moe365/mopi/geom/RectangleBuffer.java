@@ -0,0 +1,131 @@
+package com.moe365.mopi.geom;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable list of integer rectangles, stored in parallel primitive arrays.
+ * <p>
+ * This is used so the blob search doesn't have to allocate a
+ * {@link PreciseRectangle} for every blob it finds every frame. The arrays
+ * only grow (and never shrink), so once it's warmed up, filling, sorting, and
+ * clearing the buffer doesn't create any garbage.
+ * </p>
+ * @author mailmindlin
+ */
+public class RectangleBuffer {
+	protected static final int INITIAL_CAPACITY = 16;
+	protected int[] x = new int[INITIAL_CAPACITY];
+	protected int[] y = new int[INITIAL_CAPACITY];
+	protected int[] width = new int[INITIAL_CAPACITY];
+	protected int[] height = new int[INITIAL_CAPACITY];
+	protected int size = 0;
+
+	/**
+	 * @return number of rectangles in the buffer
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Remove all rectangles (without releasing any memory)
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * Add a rectangle
+	 */
+	public void add(int x, int y, int width, int height) {
+		final int idx = this.size++;
+		if (idx >= this.x.length) {
+			int capacity = this.x.length * 2;
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.width = Arrays.copyOf(this.width, capacity);
+			this.height = Arrays.copyOf(this.height, capacity);
+		}
+		this.x[idx] = x;
+		this.y[idx] = y;
+		this.width[idx] = width;
+		this.height[idx] = height;
+	}
+
+	public int getX(int i) {
+		return this.x[i];
+	}
+
+	public int getY(int i) {
+		return this.y[i];
+	}
+
+	public int getWidth(int i) {
+		return this.width[i];
+	}
+
+	public int getHeight(int i) {
+		return this.height[i];
+	}
+
+	public long getArea(int i) {
+		return ((long) this.width[i]) * this.height[i];
+	}
+
+	/**
+	 * Sort the rectangles by area (largest first), in place. The sort is
+	 * stable, so rectangles with the same area stay in the order they were
+	 * added.
+	 * <p>
+	 * This is an insertion sort, because we usually only have a handful of
+	 * rectangles, and it doesn't need any scratch space.
+	 * </p>
+	 */
+	public void sortByAreaDescending() {
+		final int[] x = this.x, y = this.y, width = this.width, height = this.height;
+		for (int i = 1; i < this.size; i++) {
+			final int rx = x[i], ry = y[i], rw = width[i], rh = height[i];
+			final long area = ((long) rw) * rh;
+			int j = i - 1;
+			while (j >= 0 && ((long) width[j]) * height[j] < area) {
+				x[j + 1] = x[j];
+				y[j + 1] = y[j];
+				width[j + 1] = width[j];
+				height[j + 1] = height[j];
+				j--;
+			}
+			x[j + 1] = rx;
+			y[j + 1] = ry;
+			width[j + 1] = rw;
+			height[j + 1] = rh;
+		}
+	}
+
+	/**
+	 * Convert rectangle <var>i</var> to a PreciseRectangle, scaling it by the
+	 * given factors
+	 * @param i Index of rectangle
+	 * @param xFactor Factor to scale x and width by
+	 * @param yFactor Factor to scale y and height by
+	 * @return scaled rectangle
+	 */
+	public PreciseRectangle toPreciseRectangle(int i, double xFactor, double yFactor) {
+		return new PreciseRectangle(this.x[i] * xFactor, this.y[i] * yFactor, this.width[i] * xFactor, this.height[i] * yFactor);
+	}
+
+	/**
+	 * Convert the rectangles to PreciseRectangles, and add them to a list
+	 * @param result List to add to
+	 * @param xFactor Factor to scale x and width by
+	 * @param yFactor Factor to scale y and height by
+	 */
+	public void addTo(List<PreciseRectangle> result, double xFactor, double yFactor) {
+		for (int i = 0; i < this.size; i++)
+			result.add(toPreciseRectangle(i, xFactor, yFactor));
+	}
+}
@@ -0,0 +1,240 @@
+package com.moe365.mopi.geom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.moe365.mopi.util.FrameTimestamps;
+
+/**
+ * The rectangles found in a single frame, scaled to be in terms of the
+ * frame's width/height, and sorted by area (largest first).
+ * <p>
+ * A processor owns a single ResultFrame, which it refills every frame, so
+ * handing the results to the Rio client and the dashboard doesn't create any
+ * garbage. This means that the frame is only valid until the handler that it
+ * was passed to returns. If you need to keep the results around any longer,
+ * {@link #copyFrom(ResultFrame) copy} them, or convert them to a
+ * {@link #toList() list}.
+ * </p>
+ * @author mailmindlin
+ * @see RectangleBuffer
+ */
+public class ResultFrame {
+	protected static final int INITIAL_CAPACITY = 8;
+	protected double[] x = new double[INITIAL_CAPACITY];
+	protected double[] y = new double[INITIAL_CAPACITY];
+	protected double[] width = new double[INITIAL_CAPACITY];
+	protected double[] height = new double[INITIAL_CAPACITY];
+	protected int size = 0;
+	/**
+	 * Corners of the rotated rectangle fitted to each rectangle, stored as
+	 * <code>{x0, y0, x1, y1, x2, y2, x3, y3}</code> per rectangle. Only valid
+	 * if {@link #hasCorners}.
+	 */
+	protected double[] corners = new double[INITIAL_CAPACITY * 8];
+	/**
+	 * Whether rotated rectangles were fitted to this frame's rectangles
+	 */
+	protected boolean hasCorners = false;
+	/**
+	 * Number of the frame that these results are from. Increases by one for
+	 * every frame processed.
+	 */
+	protected long sequence = 0;
+	/**
+	 * Capture time of the frame that these results are from, in
+	 * microseconds, or 0 if unknown
+	 * @see com.moe365.mopi.processing.ImageFrame#getCaptureTime()
+	 */
+	protected long captureTime = 0;
+	/**
+	 * When the frame reached each stage of processing
+	 */
+	protected final FrameTimestamps timestamps = new FrameTimestamps();
+
+	/**
+	 * Clear the rectangles, and start a new frame
+	 * @param sequence Number of the new frame
+	 */
+	public void reset(long sequence) {
+		this.sequence = sequence;
+		this.captureTime = 0;
+		this.size = 0;
+		this.hasCorners = false;
+	}
+
+	/**
+	 * @return the number of the frame that these results are from
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @return capture time of the frame that these results are from, in microseconds, or 0 if unknown
+	 */
+	public long getCaptureTime() {
+		return this.captureTime;
+	}
+
+	public void setCaptureTime(long captureTime) {
+		this.captureTime = captureTime;
+	}
+
+	/**
+	 * @return when the frame reached each stage of processing (not cleared by {@link #reset(long)})
+	 */
+	public FrameTimestamps getTimestamps() {
+		return this.timestamps;
+	}
+
+	/**
+	 * @return number of rectangles found
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Add a rectangle
+	 */
+	public void add(double x, double y, double width, double height) {
+		final int idx = this.size++;
+		if (idx >= this.x.length) {
+			int capacity = this.x.length * 2;
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.width = Arrays.copyOf(this.width, capacity);
+			this.height = Arrays.copyOf(this.height, capacity);
+			this.corners = Arrays.copyOf(this.corners, capacity * 8);
+		}
+		this.x[idx] = x;
+		this.y[idx] = y;
+		this.width[idx] = width;
+		this.height[idx] = height;
+	}
+
+	/**
+	 * Replace this frame's contents with the (pixel) rectangles in a buffer,
+	 * scaling them by the given factors.
+	 * @param sequence Number of the frame
+	 * @param rectangles Rectangles to copy
+	 * @param xFactor Factor to scale x and width by
+	 * @param yFactor Factor to scale y and height by
+	 */
+	public void set(long sequence, RectangleBuffer rectangles, double xFactor, double yFactor) {
+		reset(sequence);
+		for (int i = 0; i < rectangles.size(); i++)
+			add(rectangles.getX(i) * xFactor, rectangles.getY(i) * yFactor, rectangles.getWidth(i) * xFactor, rectangles.getHeight(i) * yFactor);
+	}
+
+	/**
+	 * Replace this frame's contents with a copy of another's
+	 * @param other Frame to copy
+	 */
+	public void copyFrom(ResultFrame other) {
+		reset(other.sequence);
+		this.captureTime = other.captureTime;
+		this.timestamps.copyFrom(other.timestamps);
+		for (int i = 0; i < other.size; i++)
+			add(other.x[i], other.y[i], other.width[i], other.height[i]);
+		if (other.hasCorners) {
+			System.arraycopy(other.corners, 0, this.corners, 0, other.size * 8);
+			this.hasCorners = true;
+		}
+	}
+
+	/**
+	 * Store the corners of the rectangle last fitted by a fitter as the
+	 * rotated rectangle for rectangle <var>i</var>, scaling them by the given
+	 * factors.
+	 * @param i Index of rectangle
+	 * @param fitter Fitter to copy the corners from
+	 * @param xFactor Factor to scale x coordinates by
+	 * @param yFactor Factor to scale y coordinates by
+	 */
+	public void setCorners(int i, HullFitter fitter, double xFactor, double yFactor) {
+		for (int corner = 0; corner < 4; corner++) {
+			this.corners[i * 8 + corner * 2] = fitter.getCornerX(corner) * xFactor;
+			this.corners[i * 8 + corner * 2 + 1] = fitter.getCornerY(corner) * yFactor;
+		}
+		this.hasCorners = true;
+	}
+
+	/**
+	 * @return whether rotated rectangles were fitted to this frame's
+	 *         rectangles (if not, the corners are those of the bounding boxes)
+	 */
+	public boolean hasCorners() {
+		return this.hasCorners;
+	}
+
+	/**
+	 * Get the x coordinate of a corner of the rotated rectangle fitted to
+	 * rectangle <var>i</var>, or of its bounding box if none was fitted.
+	 * @param i Index of rectangle
+	 * @param corner Corner (0 to 3, in order around the rectangle)
+	 */
+	public double getCornerX(int i, int corner) {
+		if (this.hasCorners)
+			return this.corners[i * 8 + corner * 2];
+		return (corner == 1 || corner == 2) ? this.x[i] + this.width[i] : this.x[i];
+	}
+
+	/**
+	 * Get the y coordinate of a corner of the rotated rectangle fitted to
+	 * rectangle <var>i</var>, or of its bounding box if none was fitted.
+	 * @param i Index of rectangle
+	 * @param corner Corner (0 to 3, in order around the rectangle)
+	 */
+	public double getCornerY(int i, int corner) {
+		if (this.hasCorners)
+			return this.corners[i * 8 + corner * 2 + 1];
+		return (corner >= 2) ? this.y[i] + this.height[i] : this.y[i];
+	}
+
+	public double getX(int i) {
+		return this.x[i];
+	}
+
+	public double getY(int i) {
+		return this.y[i];
+	}
+
+	public double getWidth(int i) {
+		return this.width[i];
+	}
+
+	public double getHeight(int i) {
+		return this.height[i];
+	}
+
+	/**
+	 * Convert rectangle <var>i</var> to a PreciseRectangle
+	 */
+	public PreciseRectangle toPreciseRectangle(int i) {
+		return new PreciseRectangle(this.x[i], this.y[i], this.width[i], this.height[i]);
+	}
+
+	/**
+	 * Convert the rectangles to a list of PreciseRectangles. This allocates,
+	 * so don't call it every frame.
+	 * @return list of rectangles
+	 */
+	public List<PreciseRectangle> toList() {
+		List<PreciseRectangle> result = new ArrayList<>(this.size);
+		for (int i = 0; i < this.size; i++)
+			result.add(toPreciseRectangle(i));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "ResultFrame#" + this.sequence + toList();
+	}
+}
@@ -9,12 +9,15 @@ import org.eclipse.jetty.servlet.ServletHolder;
 
 import com.moe365.mopi.geom.Polygon;
 import com.moe365.mopi.geom.PreciseRectangle;
+import com.moe365.mopi.geom.ResultFrame;
 import com.moe365.mopi.net.impl.OverlayBroadcastChannel;
+import com.moe365.mopi.net.impl.MetricsBroadcastChannel;
+import com.moe365.mopi.net.impl.MetricsServlet;
 import com.moe365.mopi.net.impl.MjpegBroadcastChannel;
 import com.moe365.mopi.net.impl.RandomlyBroadcastingChannel;
 import com.moe365.mopi.net.impl.WsDataSource;
-
-import au.edu.jcu.v4l4j.VideoFrame;
+import com.moe365.mopi.processing.ImageFrame;
+import com.moe365.mopi.util.FrameMetrics;
 
 public class MPHttpServer {
 	protected final Server server;
@@ -22,6 +25,9 @@ public class MPHttpServer {
 	protected final WsDataSource source;
 	protected final MjpegBroadcastChannel videoChannel;
 	protected final OverlayBroadcastChannel overlayChannel;
+	protected final MetricsBroadcastChannel metricsChannel;
+	protected final MetricsServlet metricsServlet;
+	protected final Thread metricsThread;
 	
 	public MPHttpServer(int port, String staticDir, int width, int height) {
 		this.server = new Server(port);
@@ -39,6 +45,9 @@ public class MPHttpServer {
 		this.source = new WsDataSource();
 		context.addServlet(new ServletHolder(this.source), "/vdc.ws");
 		
+		this.metricsServlet = new MetricsServlet();
+		context.addServlet(new ServletHolder(this.metricsServlet), "/metrics");
+		
 //		DataChannel random = new RandomlyBroadcastingChannel(this.source, 1000, "random");
 //		this.source.registerChannel(random);
 		this.videoChannel = new MjpegBroadcastChannel(this.source, 365, "Main MJPEG video stream", width, height);
@@ -47,14 +56,20 @@ public class MPHttpServer {
 		this.overlayChannel = new OverlayBroadcastChannel(this.source, 366, videoChannel.getId(), "Main video overlay");
 		this.videoChannel.setMetadata("overlayChannelId", "" + this.overlayChannel.getId());
 		this.source.registerChannel(this.overlayChannel);
+		
+		this.metricsChannel = new MetricsBroadcastChannel(this.source, 367, "Frame latency metrics");
+		this.source.registerChannel(this.metricsChannel);
+		this.metricsThread = new Thread(this.metricsChannel, "MetricsBroadcast");
+		this.metricsThread.setDaemon(true);
 	}
 	
 	
 	public void start() throws Exception {
 		server.start();
+		metricsThread.start();
 	}
 	
-	public void offerFrame(VideoFrame frame) {
+	public void offerFrame(ImageFrame frame) {
 		this.videoChannel.offerFrame(frame);
 	}
 	
@@ -66,7 +81,21 @@ public class MPHttpServer {
 		this.overlayChannel.broadcastRectangles(rectangles);
 	}
 	
+	public void offerRectangles(ResultFrame rectangles) {
+		this.overlayChannel.broadcastRectangles(rectangles);
+	}
+	
+	/**
+	 * Set the metrics to serve at <kbd>/metrics</kbd> and on the metrics channel
+	 * @param metrics metrics
+	 */
+	public void setMetrics(FrameMetrics metrics) {
+		this.metricsServlet.setMetrics(metrics);
+		this.metricsChannel.setMetrics(metrics);
+	}
+	
 	public void shutdown() throws Exception {
+		this.metricsThread.interrupt();
 		this.server.stop();
 	}
 }
@@ -0,0 +1,72 @@
+package com.moe365.mopi.net.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.moe365.mopi.net.channel.DataChannelClient;
+import com.moe365.mopi.net.channel.DataChannelDirection;
+import com.moe365.mopi.net.channel.DataChannelMediaType;
+import com.moe365.mopi.net.packet.DataPacket;
+import com.moe365.mopi.net.packet.StreamFramePacket;
+import com.moe365.mopi.util.FrameMetrics;
+
+/**
+ * Channel that periodically sends the {@link FrameMetrics} (as JSON) to its
+ * subscribers.
+ * @author mailmindlin
+ * @see MetricsServlet
+ */
+public class MetricsBroadcastChannel extends AbstractWsDataChannel implements Runnable {
+	/**
+	 * Time between updates, in milliseconds
+	 */
+	public static final int INTERVAL = 1000;
+	
+	protected volatile FrameMetrics metrics;
+	
+	public MetricsBroadcastChannel(WsDataSource source, int id, String name) {
+		super(source, id, name);
+		this.subscribers = ConcurrentHashMap.newKeySet();
+		metadata.put("format", "JSON");
+		metadata.put("interval", Integer.toString(INTERVAL));
+	}
+	
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public void run() {
+		while (!Thread.interrupted()) {
+			final FrameMetrics metrics = this.metrics;
+			if (metrics != null && !this.subscribers.isEmpty())
+				this.broadcastPacket(StreamFramePacket.wrap(ByteBuffer.wrap(metrics.toJson().getBytes(StandardCharsets.UTF_8))));
+			try {
+				Thread.sleep(INTERVAL);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+	
+	@Override
+	public DataChannelMediaType getType() {
+		return DataChannelMediaType.OBJECT_STREAM;
+	}
+	
+	@Override
+	public DataChannelDirection getDirection() {
+		return DataChannelDirection.SERVER_TO_CLIENT;
+	}
+	
+	@Override
+	public DataPacket parseNext(ByteBuffer buf, int typeCode) {
+		return null;
+	}
+	
+	@Override
+	protected void onRecievePacket(DataPacket packet, DataChannelClient client) {
+		//Nothing to do
+	}
+}
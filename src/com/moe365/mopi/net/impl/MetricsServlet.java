@@ -0,0 +1,38 @@
+package com.moe365.mopi.net.impl;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.moe365.mopi.util.FrameMetrics;
+
+/**
+ * Serves the {@link FrameMetrics} as JSON (i.e., at <kbd>/metrics</kbd>), for
+ * tools that don't speak the WebSocket protocol.
+ * @author mailmindlin
+ * @see MetricsBroadcastChannel
+ */
+public class MetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	
+	protected transient volatile FrameMetrics metrics;
+	
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		final FrameMetrics metrics = this.metrics;
+		if (metrics == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "No metrics available");
+			return;
+		}
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("UTF-8");
+		resp.setHeader("Cache-Control", "no-cache");
+		resp.getWriter().write(metrics.toJson());
+	}
+}
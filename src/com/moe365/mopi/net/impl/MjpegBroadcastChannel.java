@@ -1,17 +1,22 @@
 package com.moe365.mopi.net.impl;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.imageio.ImageIO;
+
 import com.moe365.mopi.net.channel.DataChannelClient;
 import com.moe365.mopi.net.channel.DataChannelDirection;
 import com.moe365.mopi.net.channel.DataChannelMediaType;
 import com.moe365.mopi.net.packet.DataPacket;
 import com.moe365.mopi.net.packet.StreamFramePacket;
-
-import au.edu.jcu.v4l4j.VideoFrame;
+import com.moe365.mopi.processing.ImageFrame;
+import com.moe365.mopi.processing.YuyvImage;
 
 public class MjpegBroadcastChannel extends AbstractWsDataChannel implements Runnable {
 
@@ -19,12 +24,24 @@ public class MjpegBroadcastChannel extends AbstractWsDataChannel implements Runn
 	protected final int STATUS_FILLED = 1;
 	protected final int STATUS_READING = 2;
 	protected final int STATUS_WRITING = 3;
+	/**
+	 * A raw frame has been copied into {@link #rawBuffer}, and needs to be
+	 * encoded
+	 */
+	protected final int STATUS_RAW = 4;
 	
 	protected final AtomicInteger imageStatus = new AtomicInteger(0);
 	protected final AtomicInteger backlog = new AtomicInteger(0);
 	
 	protected final ByteBuffer imageBuffer = ByteBuffer.allocate(256 * 1024);
 	
+	/**
+	 * Copy of the last YUYV frame offered, waiting to be encoded by the
+	 * sender thread (so the capture thread doesn't have to). Grows as needed.
+	 */
+	protected byte[] rawBuffer = new byte[0];
+	protected int rawWidth, rawHeight;
+	
 	public MjpegBroadcastChannel(WsDataSource source, int id, String name, int width, int height) {
 		super(source, id, name);
 		this.subscribers = ConcurrentHashMap.newKeySet();
@@ -55,6 +72,8 @@ public class MjpegBroadcastChannel extends AbstractWsDataChannel implements Runn
 		System.out.println("Starting broadcast channel @ port " + this.getId());
 		DataPacket imagePacket = StreamFramePacket.wrapImage(imageBuffer);
 		while (!Thread.interrupted()) {
+			if (imageStatus.compareAndSet(STATUS_RAW, STATUS_WRITING))
+				encodeRaw();
 			if (imageStatus.compareAndSet(STATUS_FILLED, STATUS_READING)) {
 				backlog.incrementAndGet();
 				synchronized (imageBuffer) {
@@ -72,13 +91,23 @@ public class MjpegBroadcastChannel extends AbstractWsDataChannel implements Runn
 		System.err.println("Bye!");
 	}
 	
-	public void offerFrame(VideoFrame frame) {
+	public void offerFrame(ImageFrame frame) {
+		if (frame.getFormat() != ImageFrame.Format.JPEG && this.subscribers.isEmpty())
+			//Don't bother encoding frames that nobody will see
+			return;
 		if (backlog.get() > 10) {
 			//Backlog is too big; drop frame
 			System.out.println("Dropping frame (backlog = " + backlog.get() + ")");
 			return;
 		}
 		if (imageStatus.compareAndSet(STATUS_EMPTY, STATUS_WRITING)) {
+			if (frame.getFormat() != ImageFrame.Format.JPEG) {
+				//Just copy the frame, and let the sender thread encode it, so
+				//we don't hold up capture
+				copyRaw(frame.getYuyvImage());
+				imageStatus.set(STATUS_RAW);
+				return;
+			}
 			synchronized (imageBuffer) {
 				imageBuffer.clear();
 				try {
@@ -92,6 +121,67 @@ public class MjpegBroadcastChannel extends AbstractWsDataChannel implements Runn
 			imageStatus.set(STATUS_FILLED);
 		}
 	}
+	
+	/**
+	 * Copy a YUYV frame into {@link #rawBuffer}. Called on the capture thread.
+	 * @param img Frame to copy
+	 */
+	protected void copyRaw(YuyvImage img) {
+		final int rowLength = img.getWidth() * 2;
+		final int length = rowLength * img.getHeight();
+		if (this.rawBuffer.length < length)
+			this.rawBuffer = new byte[length];
+		for (int y = 0; y < img.getHeight(); y++)
+			System.arraycopy(img.getData(), img.getOffset() + y * img.getStride(), this.rawBuffer, y * rowLength, rowLength);
+		this.rawWidth = img.getWidth();
+		this.rawHeight = img.getHeight();
+	}
+	
+	/**
+	 * Encode the frame in {@link #rawBuffer} into {@link #imageBuffer}.
+	 * Called on the sender thread.
+	 */
+	protected void encodeRaw() {
+		synchronized (imageBuffer) {
+			imageBuffer.clear();
+			try {
+				encodeJpeg(new YuyvImage(this.rawBuffer, this.rawWidth, this.rawHeight).toBufferedImage());
+			} catch (BufferOverflowException e) {
+				System.err.println("Oversized frame: JPEG is over " + imageBuffer.position() + " bytes");
+				imageBuffer.clear();
+				imageStatus.set(STATUS_EMPTY);
+				return;
+			} catch (IOException e) {
+				//Drop the frame
+				e.printStackTrace();
+				imageBuffer.clear();
+				imageStatus.set(STATUS_EMPTY);
+				return;
+			}
+			imageBuffer.flip();
+		}
+		imageStatus.set(STATUS_FILLED);
+	}
+
+	/**
+	 * Encode a frame that isn't already a JPEG (i.e., a YUYV frame when
+	 * capturing raw frames) into {@link #imageBuffer}.
+	 * @param img Image to encode
+	 * @throws IOException
+	 */
+	protected void encodeJpeg(BufferedImage img) throws IOException {
+		ImageIO.write(img, "JPEG", new OutputStream() {
+			@Override
+			public void write(int b) {
+				imageBuffer.put((byte) b);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) {
+				imageBuffer.put(b, off, len);
+			}
+		});
+	}
 
 	@Override
 	protected void onRecievePacket(DataPacket packet, DataChannelClient client) {
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.moe365.mopi.geom.PreciseRectangle;
+import com.moe365.mopi.geom.ResultFrame;
 import com.moe365.mopi.net.channel.DataChannelClient;
 import com.moe365.mopi.net.channel.DataChannelDirection;
 import com.moe365.mopi.net.channel.DataChannelMediaType;
@@ -12,6 +13,11 @@ import com.moe365.mopi.net.packet.DataPacket;
 import com.moe365.mopi.net.packet.OverlayPacket;
 
 public class OverlayBroadcastChannel extends AbstractWsDataChannel implements Runnable {
+	/**
+	 * Packet reused for every frame
+	 * @see #broadcastRectangles(ResultFrame)
+	 */
+	protected final OverlayPacket overlayPacket = new OverlayPacket();
 
 	public OverlayBroadcastChannel(WsDataSource source, int id, int srcId, String name) {
 		super(source, id, name);
@@ -49,8 +55,22 @@ public class OverlayBroadcastChannel extends AbstractWsDataChannel implements Ru
 	}
 	
 	public void broadcastRectangles(List<PreciseRectangle> rectangles) {
-		System.out.println("Sending: " + rectangles);
 		this.broadcastPacket(new OverlayPacket(rectangles));
 	}
 	
+	/**
+	 * Send the rectangles found in a frame to all subscribers. The packet is
+	 * reused, and each client serializes it before this method returns, so
+	 * the frame can be reused afterwards.
+	 * @param rectangles Rectangles to send
+	 */
+	public void broadcastRectangles(ResultFrame rectangles) {
+		if (this.subscribers.isEmpty())
+			return;
+		synchronized (overlayPacket) {
+			this.broadcastPacket(overlayPacket.setRectangles(rectangles));
+			overlayPacket.setRectangles(null);
+		}
+	}
+	
 }
@@ -4,13 +4,31 @@ import java.nio.ByteBuffer;
 import java.util.List;
 
 import com.moe365.mopi.geom.PreciseRectangle;
+import com.moe365.mopi.geom.ResultFrame;
 
 public class OverlayPacket extends AbstractMutableDataPacket {
-	List<PreciseRectangle> rectangles;
+	ResultFrame rectangles;
 
+	public OverlayPacket() {
+		super.typeCode = PacketTypeCode.STREAM_FRAME;
+	}
+	
 	public OverlayPacket(List<PreciseRectangle> rectangles) {
+		this();
+		ResultFrame frame = new ResultFrame();
+		for (PreciseRectangle rect : rectangles)
+			frame.add(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+		this.rectangles = frame;
+	}
+	
+	/**
+	 * Set the rectangles to send. The frame isn't copied, so it has to stay
+	 * the same until this packet is written.
+	 * @return self
+	 */
+	public OverlayPacket setRectangles(ResultFrame rectangles) {
 		this.rectangles = rectangles;
-		super.typeCode = PacketTypeCode.STREAM_FRAME;
+		return this;
 	}
 	
 	@Override
@@ -21,12 +39,13 @@ public class OverlayPacket extends AbstractMutableDataPacket {
 	@Override
 	public ByteBuffer writeTo(ByteBuffer buf) {
 		super.writeTo(buf);
+		final ResultFrame rectangles = this.rectangles;
 		buf.putInt(rectangles.size());
-		for (PreciseRectangle rect : rectangles) {
-			buf.putDouble(rect.getX());
-			buf.putDouble(rect.getY());
-			buf.putDouble(rect.getWidth());
-			buf.putDouble(rect.getHeight());
+		for (int i = 0; i < rectangles.size(); i++) {
+			buf.putDouble(rectangles.getX(i));
+			buf.putDouble(rectangles.getY(i));
+			buf.putDouble(rectangles.getWidth(i));
+			buf.putDouble(rectangles.getHeight(i));
 		}
 		return buf;
 	}
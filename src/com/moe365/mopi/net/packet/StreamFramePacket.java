@@ -7,6 +7,13 @@ public class StreamFramePacket extends AbstractMutableDataPacket {
 		return new StreamFramePacket(false, imageData);
 	}
 	
+	/**
+	 * Wrap arbitrary data (i.e., serialized JSON) in a packet
+	 */
+	public static StreamFramePacket wrap(ByteBuffer data) {
+		return new StreamFramePacket(false, data);
+	}
+	
 	public static StreamFramePacket decodePacket(ByteBuffer packetData) {
 		return new StreamFramePacket(true, packetData);
 	}
@@ -1,10 +1,13 @@
 package com.moe365.mopi.processing;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
+import com.moe365.mopi.util.FrameTimestamps;
+import com.moe365.mopi.util.LatencyHistogram;
+
 import au.edu.jcu.v4l4j.VideoFrame;
 
 /**
@@ -14,7 +17,7 @@ import au.edu.jcu.v4l4j.VideoFrame;
  * @param <R> the result type generated by this processor
  * @since April 2016 (v0.2.0)
  */
-public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<VideoFrame, VideoFrame, R> {
+public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<ImageFrame, ImageFrame, R> {
 	/**
 	 * Saturate num to [0, 255]. Saturation allows us to convert an integer
 	 * to an unsigned byte. If num > 255, this method returns 255. If
@@ -51,19 +54,24 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	}
 	
 	/**
-	 * Whether the processor is currently processing images. If this lock
-	 * set to true, calls to {@link #offerFrame(VideoFrame, boolean)} should
-	 * do nothing and return false.
+	 * Frames waiting to be processed. Written by
+	 * {@link #offerFrame(ImageFrame, boolean)}, and read by the processor
+	 * thread.
+	 */
+	protected final FramePairRing frames = new FramePairRing();
+	/**
+	 * Pair currently being processed. Only used by the processor thread.
 	 */
-	protected final AtomicBoolean imageLock = new AtomicBoolean(false);
+	protected final FramePairRing.Pair currentPair = new FramePairRing.Pair();
 	/**
-	 * A frame where the flash is off.
+	 * Time from a pair being completed by {@link #offerFrame(ImageFrame, boolean)}
+	 * to {@link #apply(ImageFrame, ImageFrame)} being called on it
 	 */
-	protected final AtomicReference<VideoFrame> frameOff = new AtomicReference<>();
+	protected final LatencyHistogram queueLatency = new LatencyHistogram();
 	/**
-	 * A frame where the flash is on.
+	 * Timestamps of the pair being processed, when not pipelined
 	 */
-	protected final AtomicReference<VideoFrame> frameOn = new AtomicReference<>();
+	protected final FrameTimestamps timestamps = new FrameTimestamps();
 	/**
 	 * The minimum valid X coordinate
 	 */
@@ -76,6 +84,15 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	 * A method to do something with the results.
 	 */
 	protected Consumer<R> resultConsumer;
+	/**
+	 * Whether to run as a pipeline of stages, instead of on a single thread
+	 * @see #setPipelined(boolean)
+	 */
+	protected boolean pipelined = false;
+	/**
+	 * The pipeline that this processor runs on, if it was started pipelined
+	 */
+	protected ProcessingPipeline<R> pipeline;
 	protected AbstractImageProcessor(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, Consumer<R> output) {
 		this.frameMinX = frameMinX;
 		this.frameMaxX = frameMaxX;
@@ -96,7 +113,16 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	 * @return self
 	 */
 	public AbstractImageProcessor<R> start() {
-		thread.start();
+		if (this.pipelined) {
+			List<ProcessingPipeline.Stage<R>> stages = new ArrayList<>(createPipelineStages());
+			stages.add(new ProcessingPipeline.Stage<>("publish", frame -> {
+				if (this.resultConsumer != null)
+					this.resultConsumer.accept(frame.getResult());
+			}));
+			this.pipeline = new ProcessingPipeline<>(thread.getName(), frames, queueLatency, stages, ProcessingPipeline.DEFAULT_QUEUE_CAPACITY).start();
+		} else {
+			thread.start();
+		}
 		return this;
 	}
 	
@@ -105,23 +131,82 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	 */
 	@SuppressWarnings("deprecation")
 	public void stop() {
-		thread.stop();
+		if (this.pipeline != null)
+			this.pipeline.stop();
+		else
+			thread.stop();
+	}
+	
+	/**
+	 * Set whether this processor should run as a pipeline, with each stage
+	 * (i.e., decode, diff, extract, publish) on its own thread, instead of
+	 * running everything on a single thread. This increases throughput if
+	 * there are multiple cores. Must be called before the processor is started.
+	 * @param pipelined whether to pipeline
+	 * @return self
+	 * @see #createPipelineStages()
+	 */
+	public AbstractImageProcessor<R> setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+		return this;
 	}
+	
+	/**
+	 * Build the stages to run this processor as a pipeline. The last stage
+	 * should set each frame's result; a stage to hand the result to the
+	 * handler is added after it.
+	 * @return stages
+	 */
+	protected abstract List<ProcessingPipeline.Stage<R>> createPipelineStages();
 	/**
-	 * Offer a frame. Any VideoFrame passed into this method should be treated as if recycle() has been called on it.
+	 * Offer a JPEG frame from v4l4j.
 	 * @param frame VideoFrame offered
 	 * @param flash whether the flash was on when this frame was captured
 	 * @return whether the frame was used
+	 * @see #offerFrame(ImageFrame, boolean)
 	 */
 	public boolean offerFrame(VideoFrame frame, boolean flash) {
-		if (imageLock.get()) {
-			frame.recycle();
-			return false;
-		}
-		VideoFrame oldFrame = (flash ? frameOff : frameOn).getAndSet(frame);
-		if (oldFrame != null)
-			oldFrame.recycle();
-		return true;
+		return offerFrame(WrappedVideoFrame.jpeg(frame), flash);
+	}
+	/**
+	 * Offer a frame. Any frame passed into this method should be treated as if recycle() has been called on it.
+	 * Never blocks. Must only be called from one thread at a time.
+	 * @param frame frame offered
+	 * @param flash whether the flash was on when this frame was captured
+	 * @return whether the frame was used
+	 */
+	public boolean offerFrame(ImageFrame frame, boolean flash) {
+		//Frames offered with flash=true have always been used as the 'off'
+		//frame (Main passes the state that the LED is switching to), so
+		//keep that mapping
+		return frames.offer(frame, !flash);
+	}
+	
+	/**
+	 * Get the ring that frames are queued on, i.e., to read its drop
+	 * counters
+	 * @return frame ring
+	 */
+	public FramePairRing getFrameRing() {
+		return this.frames;
+	}
+	
+	/**
+	 * Get the histogram of how long pairs waited between being offered and
+	 * being processed
+	 * @return latency histogram
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return this.queueLatency;
+	}
+	
+	/**
+	 * Set which frame pairs get processed. Should be called before the
+	 * processor is started.
+	 * @param policy pairing policy
+	 */
+	public void setPairingPolicy(FramePairRing.PairingPolicy policy) {
+		this.frames.setPolicy(policy);
 	}
 	/**
 	 * Get the width of the valid region for this processor
@@ -138,37 +223,30 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	@Override
 	public void run() {
 		try {
+			final FramePairRing.Pair pair = this.currentPair;
 			while (!Thread.interrupted()) {
-				while (frameOff.get() == null || frameOn.get() == null) {
-					Thread.yield();//TODO test if this is correct
-					Thread.sleep(100);//TODO remove this if yield works?
-				}
+				//Sleep until the capture thread completes a pair
+				frames.take(pair);
+				queueLatency.record(System.nanoTime() - pair.getPublishTime());
+				timestamps.clear();
+				timestamps.setCaptureTime(pair.getCaptureTime());
+				timestamps.set(FrameTimestamps.CALLBACK, pair.getPublishTime());
+				timestamps.mark(FrameTimestamps.ADMITTED);
 				
-				//Attempt to lock image writes
-				if (!imageLock.compareAndSet(false, true))
-					throw new IllegalMonitorStateException("Did you start the thread multiple times?");
 				try {
-					//check again, just to be safe
-					if (frameOff.get() != null && frameOn.get() != null) {
-						R result;
-						try {
-							result = apply(frameOn.get(), frameOff.get());
-						} catch(ArrayIndexOutOfBoundsException | NullPointerException e) {
-							//These exceptions can probably be recovered from.
-							e.printStackTrace();
-							continue;
-						}
-						if (this.resultConsumer != null)
-							this.resultConsumer.accept(result);
-						
-						//release the processed frames
-						frameOff.getAndSet(null).recycle();
-						frameOn.getAndSet(null).recycle();
+					R result;
+					try {
+						result = apply(pair.getOn(), pair.getOff());
+					} catch(ArrayIndexOutOfBoundsException | NullPointerException e) {
+						//These exceptions can probably be recovered from.
+						e.printStackTrace();
+						continue;
 					}
+					if (this.resultConsumer != null)
+						this.resultConsumer.accept(result);
 				} finally {
-					//release the lock on images
-					if (!imageLock.compareAndSet(true, false))
-						throw new IllegalStateException();
+					//release the processed frames
+					pair.recycle();
 				}
 			}
 		} catch (InterruptedException e) {
@@ -187,5 +265,5 @@ public abstract class AbstractImageProcessor<R> implements Runnable, BiFunction<
 	 * @return generated data
 	 */
 	@Override
-	public abstract R apply(VideoFrame frameOn, VideoFrame frameOff);
+	public abstract R apply(ImageFrame frameOn, ImageFrame frameOff);
 }
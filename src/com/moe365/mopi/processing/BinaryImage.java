@@ -27,7 +27,7 @@ public interface BinaryImage {
 	 * <li>Be functionally equivalent to:
 	 * 
 	 * <pre>
-	 * for (int x = xMin; x < xMax; x++)
+	 * for (int x = xMin; x <= xMax; x++)
 	 * 	   if (text(x, y))
 	 * 		   return true;
 	 * return false;
@@ -46,27 +46,68 @@ public interface BinaryImage {
 	 * @return {@code true} iff <i>any</i> pixel in the specified range is true.
 	 */
 	default boolean testRow(int y, int xMin, int xMax) {
-		for (int x = xMin; x < xMax; x++)
+		for (int x = xMin; x <= xMax; x++)
 			if (test(x, y))
 				return true;
 		return false;
 	}
 	
 	/**
-	 * TODO document
+	 * Test if <i>any</i> pixel in the specified range of a column is set.
+	 * Same rules as {@link #testRow(int, int, int)}, just for columns.
 	 * @param x
+	 *            Column to test
 	 * @param yMin
+	 *            Topmost row of range to test (included in range)
 	 * @param yMax
-	 * @return
+	 *            Bottommost row of range to test (included in range)
+	 * @return {@code true} iff <i>any</i> pixel in the specified range is true.
 	 * @see #testRow(int, int, int)
 	 */
 	default boolean testCol(int x, int yMin, int yMax) {
-		for (int y = yMin; y < yMax; y++)
+		for (int y = yMin; y <= yMax; y++)
 			if (test(x, y))
 				return true;
 		return false;
 	}
 
+	/**
+	 * Count the number of pixels that are set in a rectangle. All bounds are
+	 * inclusive.
+	 * @param xMin Leftmost column of rectangle
+	 * @param yMin Topmost row of rectangle
+	 * @param xMax Rightmost column of rectangle
+	 * @param yMax Bottommost row of rectangle
+	 * @return number of pixels set
+	 * @see SummedAreaBinaryImage
+	 */
+	default int count(int xMin, int yMin, int xMax, int yMax) {
+		int result = 0;
+		for (int y = yMin; y <= yMax; y++)
+			for (int x = xMin; x <= xMax; x++)
+				if (test(x, y))
+					result++;
+		return result;
+	}
+	
+	/**
+	 * Test if <i>any</i> pixel in a rectangle is set. All bounds are
+	 * inclusive. Same rules as {@link #testRow(int, int, int)}.
+	 * @param xMin Leftmost column of rectangle
+	 * @param yMin Topmost row of rectangle
+	 * @param xMax Rightmost column of rectangle
+	 * @param yMax Bottommost row of rectangle
+	 * @return {@code true} iff <i>any</i> pixel in the rectangle is true.
+	 */
+	default boolean anyIn(int xMin, int yMin, int xMax, int yMax) {
+		if (xMin == xMax)
+			return testCol(xMin, yMin, yMax);
+		for (int y = yMin; y <= yMax; y++)
+			if (testRow(y, xMin, xMax))
+				return true;
+		return false;
+	}
+	
 	/**
 	 * Test the coordinate (x, y) by rounding the doubles.
 	 * @param x x coordinate of pixel to test
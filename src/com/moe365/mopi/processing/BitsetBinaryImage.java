@@ -0,0 +1,241 @@
+package com.moe365.mopi.processing;
+
+import java.util.Arrays;
+
+/**
+ * A BinaryImage backed by a row-major bitset, where each long stores 64
+ * horizontally adjacent pixels.
+ * <p>
+ * Compared to {@link LazyDiffGenerator.TiledBinaryImage TiledBinaryImage}
+ * (where each long is an 8x8 tile), this gives up a bit of speed on
+ * {@link #testCol(int, int, int)} to make {@link #testRow(int, int, int)}
+ * much faster: testing a row is a masked OR over a handful of words (10 for a
+ * 640px wide frame), instead of 8 pixels per word. Because
+ * {@link com.moe365.mopi.ImageProcessor ImageProcessor} spends most of its
+ * time splitting rows, that's a pretty good tradeoff.
+ * </p>
+ * <p>
+ * Bit <code>x % 64</code> of word <code>y * wordsPerRow + x / 64</code>
+ * stores the value of pixel (x, y). Bits past the right edge of the image
+ * are always 0.
+ * </p>
+ * <p>
+ * Like the other BinaryImages, the behavior of this class is undefined when
+ * testing pixels outside of the image.
+ * </p>
+ * @author mailmindlin
+ */
+public class BitsetBinaryImage implements BinaryImage {
+	protected final int width;
+	protected final int height;
+	/**
+	 * Number of longs used to store each row
+	 */
+	protected final int wordsPerRow;
+	protected final long[] words;
+
+	public BitsetBinaryImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long[wordsPerRow * height];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of words used to store each row
+	 */
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/**
+	 * Get the backing array. Row <var>y</var> is stored in the words
+	 * <code>[y * wordsPerRow, (y + 1) * wordsPerRow)</code>.
+	 * @return backing array
+	 */
+	public long[] getWords() {
+		return words;
+	}
+
+	/**
+	 * Set the pixel at (x, y) to true
+	 * @param x x coordinate of pixel
+	 * @param y y coordinate of pixel
+	 */
+	public void set(int x, int y) {
+		words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+	}
+
+	/**
+	 * Set the pixel at (x, y) to false
+	 * @param x x coordinate of pixel
+	 * @param y y coordinate of pixel
+	 */
+	public void clear(int x, int y) {
+		words[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+	}
+
+	/**
+	 * Set all pixels in the image to false
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Set all pixels in a rectangle (bounds inclusive) to false
+	 */
+	public void clear(int xMin, int yMin, int xMax, int yMax) {
+		if (xMax < xMin)
+			return;
+		final int wMin = xMin >>> 6;
+		final int wMax = xMax >>> 6;
+		final long maskMin = -1L << xMin;
+		final long maskMax = -1L >>> (63 - (xMax & 63));
+		for (int y = yMin; y <= yMax; y++) {
+			final int base = y * wordsPerRow;
+			if (wMin == wMax) {
+				words[base + wMin] &= ~(maskMin & maskMax);
+				continue;
+			}
+			words[base + wMin] &= ~maskMin;
+			Arrays.fill(words, base + wMin + 1, base + wMax, 0L);
+			words[base + wMax] &= ~maskMax;
+		}
+	}
+
+	@Override
+	public boolean test(int x, int y) {
+		return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Test if any pixel in the row <var>y</var> between <var>xMin</var> and
+	 * <var>xMax</var> (both inclusive) is set. This is a masked OR over the
+	 * words that the range covers.
+	 */
+	@Override
+	public boolean testRow(int y, int xMin, int xMax) {
+		if (xMax < xMin)
+			return false;
+		final int base = y * wordsPerRow;
+		final int wMin = xMin >>> 6;
+		final int wMax = xMax >>> 6;
+		//Note that shifts are mod 64
+		final long maskMin = -1L << xMin;
+		final long maskMax = -1L >>> (63 - (xMax & 63));
+		if (wMin == wMax)
+			return (words[base + wMin] & maskMin & maskMax) != 0;
+		if ((words[base + wMin] & maskMin) != 0)
+			return true;
+		for (int w = wMin + 1; w < wMax; w++)
+			if (words[base + w] != 0)
+				return true;
+		return (words[base + wMax] & maskMax) != 0;
+	}
+
+	/**
+	 * Test if any pixel in the column <var>x</var> between <var>yMin</var>
+	 * and <var>yMax</var> (both inclusive) is set.
+	 */
+	@Override
+	public boolean testCol(int x, int yMin, int yMax) {
+		final long mask = 1L << x;
+		final int w = x >>> 6;
+		for (int idx = yMin * wordsPerRow + w, end = yMax * wordsPerRow + w; idx <= end; idx += wordsPerRow)
+			if ((words[idx] & mask) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Count the pixels set in a rectangle (bounds inclusive), with a popcount
+	 * over each word.
+	 */
+	@Override
+	public int count(int xMin, int yMin, int xMax, int yMax) {
+		if (xMax < xMin)
+			return 0;
+		final int wMin = xMin >>> 6;
+		final int wMax = xMax >>> 6;
+		final long maskMin = -1L << xMin;
+		final long maskMax = -1L >>> (63 - (xMax & 63));
+		int result = 0;
+		for (int y = yMin; y <= yMax; y++) {
+			final int base = y * wordsPerRow;
+			if (wMin == wMax) {
+				result += Long.bitCount(words[base + wMin] & maskMin & maskMax);
+				continue;
+			}
+			result += Long.bitCount(words[base + wMin] & maskMin);
+			for (int w = wMin + 1; w < wMax; w++)
+				result += Long.bitCount(words[base + w]);
+			result += Long.bitCount(words[base + wMax] & maskMax);
+		}
+		return result;
+	}
+
+	/**
+	 * Find the first set pixel on row <var>y</var> at or after <var>fromX</var>.
+	 * @param y Row to search
+	 * @param fromX Column to start searching at (inclusive)
+	 * @return x coordinate of the first set pixel, or -1 if there is none
+	 */
+	public int nextSetBit(int y, int fromX) {
+		if (fromX >= width)
+			return -1;
+		final int base = y * wordsPerRow;
+		int w = fromX >>> 6;
+		long word = words[base + w] & (-1L << fromX);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w >= wordsPerRow)
+				return -1;
+			word = words[base + w];
+		}
+	}
+
+	/**
+	 * Find the first unset pixel on row <var>y</var> at or after <var>fromX</var>.
+	 * @param y Row to search
+	 * @param fromX Column to start searching at (inclusive)
+	 * @return x coordinate of the first unset pixel, or {@link #getWidth()}
+	 *         if every pixel from <var>fromX</var> to the end of the row is set
+	 */
+	public int nextClearBit(int y, int fromX) {
+		if (fromX >= width)
+			return width;
+		final int base = y * wordsPerRow;
+		int w = fromX >>> 6;
+		long word = ~words[base + w] & (-1L << fromX);
+		while (true) {
+			if (word != 0)
+				return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(word));
+			if (++w >= wordsPerRow)
+				return width;
+			word = ~words[base + w];
+		}
+	}
+
+	/**
+	 * Find the first set pixel on row <var>y</var> in the range
+	 * [<var>xMin</var>, <var>xMax</var>].
+	 * @param y Row to search
+	 * @param xMin Left bound of range (inclusive)
+	 * @param xMax Right bound of range (inclusive)
+	 * @return x coordinate of the first set pixel in the range, or -1 if there is none
+	 */
+	public int firstSetInRow(int y, int xMin, int xMax) {
+		int x = nextSetBit(y, xMin);
+		return (x > xMax) ? -1 : x;
+	}
+}
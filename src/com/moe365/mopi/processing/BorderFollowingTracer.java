@@ -0,0 +1,319 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.moe365.mopi.geom.Polygon;
+
+/**
+ * An image processor that extracts the exact outer contour of every blob in
+ * a single raster scan, by border following
+ * (<a href="https://doi.org/10.1016/0734-189X(85)90016-7">Suzuki &amp; Abe, 1985</a>).
+ * <p>
+ * Unlike {@link ContourTracer}, which seeds on a sparse grid and refines each
+ * polygon by stepping along its edges, this diffs the whole frame into a
+ * {@link BitsetBinaryImage}, then scans it a word at a time, only stopping at
+ * pixels where a row of set pixels starts or ends. When the start of a row
+ * belongs to a blob that hasn't been seen yet, its border is followed (with
+ * 8-connectivity) back to where it started. Holes' borders are followed too
+ * (so that the pixels on their right side aren't mistaken for new blobs),
+ * but aren't output. Every pixel is looked at once by the scan, and each
+ * border pixel a couple more times by the follower, so this doesn't miss thin
+ * blobs, and doesn't depend on any step size.
+ * </p>
+ * <p>
+ * Which border pixels have been visited is stored in two more bitsets (the
+ * paper's labels, minus the border numbers, which are only needed to build
+ * the hierarchy of holes). Those, and the buffer that the contour is
+ * followed into, are reused between frames.
+ * </p>
+ * <p>
+ * Polygons are in pixel coordinates, go counterclockwise (as drawn, with y
+ * pointing down), and only have vertices where the contour changes
+ * direction (so a rectangle has 4 of them). A contour goes around both sides
+ * of any part of a blob that is one pixel wide, so it can visit the same
+ * pixel more than once.
+ * </p>
+ * @author mailmindlin
+ * @see ContourTracer
+ */
+public class BorderFollowingTracer extends AbstractImageProcessor<List<Polygon>> {
+	/**
+	 * Blobs narrower or shorter than this (in pixels) are assumed to be noise
+	 */
+	public static final int DEFAULT_MIN_BLOB_SIZE = 3;
+	/**
+	 * Offsets of the 8 neighbors of a pixel, in clockwise order (y is down),
+	 * starting with the one to the right.
+	 */
+	protected static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+	protected static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+	protected static final int EAST = 0, WEST = 4;
+
+	protected int minBlobWidth = DEFAULT_MIN_BLOB_SIZE;
+	protected int minBlobHeight = DEFAULT_MIN_BLOB_SIZE;
+	protected final int wordsPerRow;
+	/**
+	 * Mask for the frame being processed (when not pipelined)
+	 */
+	protected final BitsetBinaryImage mask;
+	/**
+	 * Bit set iff the pixel is on a border that has been followed
+	 */
+	protected final long[] visited;
+	/**
+	 * Bit set iff the pixel is on a border that has been followed, and the
+	 * pixel to its right isn't set (i.e., it's the end of a row)
+	 */
+	protected final long[] rightEdge;
+	/**
+	 * Coordinates of the border being followed, packed as <code>y * stride + x</code>
+	 */
+	protected int[] contour = new int[1024];
+	protected int contourLength;
+	protected int minX, minY, maxX, maxY;
+
+	public BorderFollowingTracer(int width, int height, Consumer<List<Polygon>> handler) {
+		this(0, 0, width, height, handler);
+	}
+
+	public BorderFollowingTracer(ContourTracer.ContourTracerParams params, Consumer<List<Polygon>> handler) {
+		this(params.getFrameMinX(), params.getFrameMinY(), params.getFrameMaxX(), params.getFrameMaxY(), handler);
+		this.minBlobWidth = params.getMinBlobWidth();
+		this.minBlobHeight = params.getMinBlobHeight();
+	}
+
+	protected BorderFollowingTracer(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, Consumer<List<Polygon>> handler) {
+		super(frameMinX, frameMinY, frameMaxX, frameMaxY, handler);
+		this.mask = new BitsetBinaryImage(frameMaxX, frameMaxY);
+		this.wordsPerRow = mask.getWordsPerRow();
+		this.visited = new long[wordsPerRow * frameMaxY];
+		this.rightEdge = new long[wordsPerRow * frameMaxY];
+	}
+
+	/**
+	 * Set the smallest blob that will be output. Blobs whose bounding box is
+	 * smaller (in either dimension) are dropped.
+	 * @param minBlobWidth Minimum width, in pixels
+	 * @param minBlobHeight Minimum height, in pixels
+	 * @return self
+	 */
+	public BorderFollowingTracer setMinBlobSize(int minBlobWidth, int minBlobHeight) {
+		this.minBlobWidth = minBlobWidth;
+		this.minBlobHeight = minBlobHeight;
+		return this;
+	}
+
+	@Override
+	public List<Polygon> apply(ImageFrame frameOn, ImageFrame frameOff) {
+		mask.clear();
+		diff(frameOn.getBufferedImage(), frameOff.getBufferedImage(), mask);
+		return trace(mask);
+	}
+
+	/**
+	 * Diff the images into a mask, with the same predicate as
+	 * {@link ContourTracer}. The mask is in frame coordinates (not offset by
+	 * frameMinX/frameMinY).
+	 * @param onImg Image with the flash on
+	 * @param offImg Image with the flash off
+	 * @param result Mask to set the pixels that differ in. Must be cleared.
+	 * @return result
+	 */
+	protected BitsetBinaryImage diff(BufferedImage onImg, BufferedImage offImg, BitsetBinaryImage result) {
+		final ImageRaster imgOn = ImageRaster.wrap(onImg);
+		final ImageRaster imgOff = ImageRaster.wrap(offImg);
+		for (int y = frameMinY; y < frameMaxY; y++) {
+			for (int x = frameMinX; x < frameMaxX; x++) {
+				final int rgbOn = imgOn.getRGB(x, y), rgbOff = imgOff.getRGB(x, y);
+				final int dG = ((rgbOn >>> 8) & 0xFF) - ((rgbOff >>> 8) & 0xFF);
+				final int dR = ((rgbOn >>> 16) & 0xFF) - ((rgbOff >>> 16) & 0xFF);
+				if (dG > ContourTracer.minGreenTolerance && dR < ContourTracer.maxRedTolerance)
+					result.set(x, y);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Shares the decode stage with {@link com.moe365.mopi.ImageProcessor ImageProcessor}.
+	 * Each pipeline frame keeps its own mask (because the diff and trace
+	 * stages work on different frames at the same time), which is reused
+	 * whenever that frame comes around again. The trace stage reuses
+	 * everything else.
+	 * </p>
+	 */
+	@Override
+	protected List<ProcessingPipeline.Stage<List<Polygon>>> createPipelineStages() {
+		return Arrays.asList(
+				ProcessingPipeline.decodeStage(false),
+				ProcessingPipeline.diffStage(frameMaxX, frameMaxY, this::diff),
+				new ProcessingPipeline.Stage<>("trace", frame -> frame.setResult(trace((BitsetBinaryImage) frame.getMask()))));
+	}
+
+	/**
+	 * Find the outer contours of every blob in a mask
+	 * @param mask Mask to search (in frame coordinates). Pixels outside of the frame must not be set.
+	 * @return outer contours, in the order that they were found (top to bottom)
+	 */
+	public List<Polygon> trace(BitsetBinaryImage mask) {
+		Arrays.fill(this.visited, 0L);
+		Arrays.fill(this.rightEdge, 0L);
+		final long[] words = mask.getWords();
+		final List<Polygon> result = new ArrayList<>();
+		final int wMin = frameMinX >>> 6, wMax = (frameMaxX - 1) >>> 6;
+		for (int y = frameMinY; y < frameMaxY; y++) {
+			final int base = y * wordsPerRow;
+			long prev = 0;
+			for (int w = wMin; w <= wMax; w++) {
+				final long word = words[base + w];
+				if (word == 0) {
+					prev = 0;
+					continue;
+				}
+				final long next = (w + 1 < wordsPerRow) ? words[base + w + 1] : 0;
+				//Pixels whose left/right neighbor isn't set
+				final long starts = word & ~((word << 1) | (prev >>> 63));
+				final long ends = word & ~((word >>> 1) | (next << 63));
+				long candidates = starts | ends;
+				while (candidates != 0) {
+					final long bit = Long.lowestOneBit(candidates);
+					candidates ^= bit;
+					final int idx = base + w;
+					final int x = (w << 6) + Long.numberOfTrailingZeros(bit);
+					if ((starts & bit) != 0 && (visited[idx] & bit) == 0) {
+						//Outer border of a new blob
+						follow(mask, x, y, WEST, true);
+						if (maxX - minX + 1 >= minBlobWidth && maxY - minY + 1 >= minBlobHeight)
+							result.add(toPolygon());
+					} else if ((ends & bit) != 0 && (rightEdge[idx] & bit) == 0) {
+						//Border of a hole
+						follow(mask, x, y, EAST, false);
+					}
+				}
+				prev = word;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test a pixel, treating everything outside of the frame as unset
+	 */
+	protected boolean get(BitsetBinaryImage mask, int x, int y) {
+		return x >= frameMinX && y >= frameMinY && x < frameMaxX && y < frameMaxY && mask.test(x, y);
+	}
+
+	/**
+	 * Mark a pixel as being on a followed border
+	 * @param rightClear Whether the pixel to its right was examined, and isn't set
+	 */
+	protected void mark(int x, int y, boolean rightClear) {
+		final int idx = y * wordsPerRow + (x >>> 6);
+		final long bit = 1L << x;
+		visited[idx] |= bit;
+		if (rightClear)
+			rightEdge[idx] |= bit;
+	}
+
+	/**
+	 * Follow a border, starting at (x0, y0), and marking every pixel on it.
+	 * @param x0 x coordinate of first pixel
+	 * @param y0 y coordinate of first pixel
+	 * @param fromDir Direction of an unset neighbor of the first pixel, that
+	 *            is on the other side of the border
+	 * @param record Whether to record the border (and its bounds) in {@link #contour}
+	 */
+	protected void follow(BitsetBinaryImage mask, final int x0, final int y0, final int fromDir, final boolean record) {
+		contourLength = 0;
+		minX = maxX = x0;
+		minY = maxY = y0;
+		//Find the first neighbor, clockwise from fromDir
+		int dir1 = -1;
+		for (int k = 0; k < 8; k++) {
+			final int d = (fromDir + k) & 7;
+			if (get(mask, x0 + DX[d], y0 + DY[d])) {
+				dir1 = d;
+				break;
+			}
+		}
+		if (dir1 < 0) {
+			//Isolated pixel
+			mark(x0, y0, true);
+			if (record)
+				push(x0, y0);
+			return;
+		}
+		final int x1 = x0 + DX[dir1], y1 = y0 + DY[dir1];
+		int x = x0, y = y0;
+		//Direction from the current pixel to the previous one
+		int back = dir1;
+		while (true) {
+			//Find the next pixel, counterclockwise from the previous one
+			boolean rightClear = false;
+			int d = back;
+			for (int k = 0; k < 8; k++) {
+				d = (d - 1) & 7;
+				if (get(mask, x + DX[d], y + DY[d]))
+					break;
+				if (d == EAST)
+					rightClear = true;
+			}
+			if (rightClear || (visited[y * wordsPerRow + (x >>> 6)] & (1L << x)) == 0)
+				mark(x, y, rightClear);
+			if (record) {
+				push(x, y);
+				if (x < minX)
+					minX = x;
+				else if (x > maxX)
+					maxX = x;
+				if (y < minY)
+					minY = y;
+				else if (y > maxY)
+					maxY = y;
+			}
+			final int nx = x + DX[d], ny = y + DY[d];
+			if (nx == x0 && ny == y0 && x == x1 && y == y1)
+				break;
+			back = (d + 4) & 7;
+			x = nx;
+			y = ny;
+		}
+	}
+
+	protected void push(int x, int y) {
+		if (contourLength == contour.length)
+			contour = Arrays.copyOf(contour, contourLength * 2);
+		contour[contourLength++] = y * frameMaxX + x;
+	}
+
+	/**
+	 * Convert the last border recorded to a polygon, with only the pixels
+	 * where it changes direction.
+	 * <p>
+	 * The follower ends on the pixel before the first one, so the border
+	 * is already closed.
+	 * </p>
+	 */
+	protected Polygon toPolygon() {
+		final int[] contour = this.contour;
+		final int n = this.contourLength;
+		final int stride = frameMaxX;
+		final Polygon result = new Polygon();
+		int last = contour[n - 1];
+		for (int i = 0; i < n; i++) {
+			final int current = contour[i];
+			final int next = contour[(i + 1) % n];
+			//Offsets in a stride-packed array are the same for the same direction
+			if (current - last != next - current || n <= 2)
+				result.addPoint(current % stride, current / stride);
+			last = current;
+		}
+		return result;
+	}
+}
@@ -6,16 +6,16 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import com.moe365.mopi.geom.Polygon;
-import com.moe365.mopi.geom.Polygon.PointNode;
 import com.moe365.mopi.geom.PreciseRectangle;
-
-import au.edu.jcu.v4l4j.VideoFrame;
+import com.moe365.mopi.util.NumberUtils;
 
 /**
  * An image processor that finds blobs in images by tracing their contours.
@@ -26,6 +26,11 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 	protected int minBlobHeight = 10;
 	protected double maxSegmentLength = 10.0;
 	protected double stepSize = 4.0;
+	/**
+	 * Maximum distance (in pixels) that pass 3 can move the outline of a
+	 * polygon by when removing vertices. 0 disables simplification.
+	 */
+	protected double simplifyTolerance = 1.0;
 	public static final int minGreenTolerance = 70;
 	public static final int maxRedTolerance = 70;
 	public ContourTracer(int width, int height) throws IllegalArgumentException {
@@ -33,6 +38,7 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 	}
 	public ContourTracer(int width, int height, Consumer<List<Polygon>> handler) {
 		super(0, 0, width, height, handler);
+		this.lazyDiff = new MemoizedDiff(width, height);
 		System.out.println("W: " + width + "\tH: " + height);
 	}
 	
@@ -42,26 +48,136 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 		this.minBlobHeight = params.getMinBlobHeight();
 		this.maxSegmentLength = params.getMaxSegmentLength();
 		this.stepSize = params.getStepSize();
+		this.simplifyTolerance = params.getSimplifyTolerance();
+		this.lazyDiff = new MemoizedDiff(params.getFrameMaxX(), params.getFrameMaxY());
 	}
+	/**
+	 * Mask that lazily diffs the frames being processed. Reused for every
+	 * frame (when not pipelined).
+	 */
+	protected final MemoizedDiff lazyDiff;
+	/**
+	 * Number of vertices that came out of pass 2, and that were left after
+	 * pass 3
+	 */
+	protected final AtomicLong verticesTraced = new AtomicLong(0), verticesKept = new AtomicLong(0);
+	/*
+	 * Scratch space for pass 3. Only used by the thread that traces.
+	 */
+	/**
+	 * Whether each vertex is kept
+	 */
+	protected boolean[] keep = new boolean[64];
+	/**
+	 * Stack of (first, last) vertex indices of the ranges left to simplify
+	 */
+	protected int[] ranges = new int[128];
+	
 	@Override
-	public List<Polygon> apply(VideoFrame frameOn, VideoFrame frameOff) {
-		BufferedImage imgOn = frameOn.getBufferedImage();
-		BufferedImage imgOff = frameOff.getBufferedImage();
-		final boolean[][] processed = new boolean[getFrameHeight()][getFrameWidth()];
-		final boolean[][] cache = new boolean[getFrameHeight()][getFrameWidth()];
+	public List<Polygon> apply(ImageFrame frameOn, ImageFrame frameOff) {
+		lazyDiff.reset(ImageRaster.wrap(frameOn.getBufferedImage()), ImageRaster.wrap(frameOff.getBufferedImage()));
 		System.out.println("Starting pass1");
-		List<Polygon> result = tracePass1((x, y) -> {
-			if (processed[y][x])
-				return cache[y][x];
-			processed[y][x] = true;
-			int pxOn  = imgOn.getRGB(x, y);
-			int pxOff = imgOff.getRGB(x, y);
-			return cache[y][x] = ((pxOn >> 8) & 0xFF) - ((pxOff >> 8) & 0xFF) > minGreenTolerance && ((pxOn >> 16) & 0xFF) - ((pxOff >> 16) & 0xFF) < maxRedTolerance;
-		});
+		List<Polygon> result = tracePass1(lazyDiff);
 		System.out.println("(done)");
 		return result;
 	}
 	
+	/**
+	 * A mask that diffs each pixel the first time that it's tested, and
+	 * remembers the result.
+	 * <p>
+	 * The tracer only looks at a small fraction of the frame, so it's a lot
+	 * cheaper to diff lazily than to diff the whole frame up front. Whether
+	 * each pixel has been diffed, and its value, are stored in two row-major
+	 * bitsets (laid out like {@link BitsetBinaryImage}), which are cleared
+	 * and reused for every frame, so nothing is allocated per frame.
+	 * </p>
+	 */
+	protected static class MemoizedDiff implements BinaryImage {
+		protected final int wordsPerRow;
+		/**
+		 * Bit set iff the pixel has been diffed
+		 */
+		protected final long[] evaluated;
+		/**
+		 * Bit set iff the pixel has been diffed, and is set
+		 */
+		protected final long[] values;
+		protected ImageRaster on, off;
+		
+		/**
+		 * @param width Width of the frames (including any offset)
+		 * @param height Height of the frames (including any offset)
+		 */
+		public MemoizedDiff(int width, int height) {
+			this.wordsPerRow = (width + 63) >>> 6;
+			this.evaluated = new long[wordsPerRow * height];
+			this.values = new long[wordsPerRow * height];
+		}
+		
+		/**
+		 * Forget everything, and start diffing a new pair of frames
+		 */
+		public void reset(ImageRaster on, ImageRaster off) {
+			Arrays.fill(this.evaluated, 0L);
+			Arrays.fill(this.values, 0L);
+			this.on = on;
+			this.off = off;
+		}
+		
+		@Override
+		public boolean test(int x, int y) {
+			final int idx = y * wordsPerRow + (x >>> 6);
+			final long bit = 1L << x;
+			if ((evaluated[idx] & bit) != 0)
+				return (values[idx] & bit) != 0;
+			evaluated[idx] |= bit;
+			final int rgbOn = on.getRGB(x, y), rgbOff = off.getRGB(x, y);
+			final int dG = ((rgbOn >>> 8) & 0xFF) - ((rgbOff >>> 8) & 0xFF);
+			final int dR = ((rgbOn >>> 16) & 0xFF) - ((rgbOff >>> 16) & 0xFF);
+			if (dG > minGreenTolerance && dR < maxRedTolerance) {
+				values[idx] |= bit;
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Diff the images eagerly, with the same predicate as
+	 * {@link #apply(ImageFrame, ImageFrame)}. The mask is in frame
+	 * coordinates (not offset by frameMinX/frameMinY), because that's what
+	 * {@link #tracePass1(BinaryImage)} expects.
+	 * @param onImg Image with the flash on
+	 * @param offImg Image with the flash off
+	 * @param result Mask to set the pixels that differ in. Must be cleared.
+	 * @return result
+	 */
+	protected BitsetBinaryImage diff(BufferedImage onImg, BufferedImage offImg, BitsetBinaryImage result) {
+		final ImageRaster imgOn = ImageRaster.wrap(onImg);
+		final ImageRaster imgOff = ImageRaster.wrap(offImg);
+		for (int y = frameMinY; y < frameMaxY; y++)
+			for (int x = frameMinX; x < frameMaxX; x++)
+				if (imgOn.getGreen(x, y) - imgOff.getGreen(x, y) > minGreenTolerance && imgOn.getRed(x, y) - imgOff.getRed(x, y) < maxRedTolerance)
+					result.set(x, y);
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Shares the decode and diff stages with {@link com.moe365.mopi.ImageProcessor ImageProcessor},
+	 * and traces the contours in a third stage.
+	 * </p>
+	 */
+	@Override
+	protected List<ProcessingPipeline.Stage<List<Polygon>>> createPipelineStages() {
+		return Arrays.asList(
+				ProcessingPipeline.decodeStage(false),
+				ProcessingPipeline.diffStage(frameMaxX, frameMaxY, this::diff),
+				new ProcessingPipeline.Stage<>("trace", frame -> frame.setResult(tracePass1(frame.getMask()))));
+	}
+	
 	protected List<Polygon> tracePass1(BinaryImage image) {
 		List<Polygon> blobs = new LinkedList<Polygon>();
 		List<PreciseRectangle> bounds = new LinkedList<>();
@@ -115,20 +231,25 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 	 */
 	protected void tracePass2(BinaryImage image, Polygon blob) {
 		System.out.println("Pass2: " + blob);
-		final PointNode startingPoint = blob.getStartingPoint();
-		PointNode pointA = startingPoint, pointB = pointA.next();
-		while (true) {
+		int a = 0;
+		while (blob.size() > 1) {
+			final int b = blob.next(a);
+			final double ax = blob.getX(a), ay = blob.getY(a);
+			final double bx = blob.getX(b), by = blob.getY(b);
 			// Use distance^2, because x^2 < r^2 if x < r, and x^2 > r^2 if x > r, and it's faster, because no sqrt operations.
-			if (pointA.equals(pointB)) {
-				pointA.removeNext();
-			} else if (pointA.getDistanceSquared(pointB) > maxSegmentLength * maxSegmentLength) {
+			if (NumberUtils.sortaEqual(ax, bx) && NumberUtils.sortaEqual(ay, by)) {
+				blob.remove(b);
+				//Removing the first point shifts point A down
+				if (b < a)
+					a--;
+			} else if ((bx - ax) * (bx - ax) + (by - ay) * (by - ay) > maxSegmentLength * maxSegmentLength) {
 				// point A and B are >r px apart
 				
-				double midpointOffsetX = .5 * (pointB.getX() - pointA.getX());
-				double midpointOffsetY = .5 * (pointB.getY() - pointA.getY());
+				double midpointOffsetX = .5 * (bx - ax);
+				double midpointOffsetY = .5 * (by - ay);
 				
-				double midpointX = pointA.getX() + midpointOffsetX;
-				double midpointY = pointA.getY() + midpointOffsetY;
+				double midpointX = ax + midpointOffsetX;
+				double midpointY = ay + midpointOffsetY;
 				boolean midpointValue = image.test(midpointX, midpointY);
 				if (midpointOffsetY == 0) {
 					if ((midpointOffsetX > 0) == midpointValue) {
@@ -168,27 +289,117 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 					midpointX -= stepX;
 					midpointY -= stepY;
 				}
-				pointB = pointA.insertNext(midpointX, midpointY);
-			} else {
-				if ((pointA = pointA.next()).equals(startingPoint))
-					break;
-			}
-			if ((pointB = pointA.next()) == null)
+				blob.insert(a + 1, midpointX, midpointY);
+			} else if (++a == blob.size()) {
+				//Back to the starting point
 				break;
+			}
 		}
 		System.out.println("(done pass2): " + blob);
 	}
 	/**
-	 * Pass3 smoothes straight edges.
+	 * Pass3 smoothes straight edges, by removing the vertices (mostly
+	 * midpoints that pass 2 inserted) that are within
+	 * {@link #simplifyTolerance} of the line between their neighbors, with
+	 * the <a href="https://en.wikipedia.org/wiki/Ramer%E2%80%93Douglas%E2%80%93Peucker_algorithm">Ramer-Douglas-Peucker algorithm</a>.
+	 * <p>
+	 * The polygon is split into two chains at its first vertex and the vertex
+	 * farthest from it, which are always kept. Then, for each chain, the
+	 * vertex farthest from the line between its ends is kept if it's farther
+	 * than the tolerance, and the chain is split there. The chains left to
+	 * split are kept on a stack (instead of recursing), and the vertices that
+	 * are kept are compacted in place, so this doesn't allocate once the
+	 * scratch arrays are big enough.
+	 * </p>
 	 * @param blob polygon to smooth
 	 */
 	protected void tracePass3(Polygon blob) {
-		//TODO finish
-//		PointNode pointA = blob.getStartingPoint(), pointB, pointC;
-//		while ((pointB = pointA.next()) != null && (pointC = pointB.next()) != null) {
-//			
-//		}
+		final int n = blob.size();
+		this.verticesTraced.addAndGet(n);
+		if (this.simplifyTolerance <= 0 || n <= 3) {
+			this.verticesKept.addAndGet(n);
+			return;
+		}
+		if (this.keep.length < n) {
+			this.keep = new boolean[n * 2];
+			this.ranges = new int[n * 4];
+		}
+		final boolean[] keep = this.keep;
+		final int[] ranges = this.ranges;
+		Arrays.fill(keep, 0, n, false);
+		final double tolerance2 = this.simplifyTolerance * this.simplifyTolerance;
+		
+		//Split at the vertex farthest from the first one
+		final double x0 = blob.getX(0), y0 = blob.getY(0);
+		int far = 0;
+		double farDist2 = 0;
+		for (int i = 1; i < n; i++) {
+			final double dx = blob.getX(i) - x0, dy = blob.getY(i) - y0;
+			final double dist2 = dx * dx + dy * dy;
+			if (dist2 > farDist2) {
+				far = i;
+				farDist2 = dist2;
+			}
+		}
+		keep[0] = keep[far] = true;
+		int top = 0;
+		if (far > 0) {
+			ranges[top++] = 0;
+			ranges[top++] = far;
+			//Index n is vertex 0 again
+			ranges[top++] = far;
+			ranges[top++] = n;
+		}
+		while (top > 0) {
+			final int last = ranges[--top], first = ranges[--top];
+			final double ax = blob.getX(first), ay = blob.getY(first);
+			final double bx = blob.getX(last % n), by = blob.getY(last % n);
+			final double abx = bx - ax, aby = by - ay;
+			final double length2 = abx * abx + aby * aby;
+			int farthest = -1;
+			double maxError = 0;
+			for (int i = first + 1; i < last; i++) {
+				final double px = blob.getX(i) - ax, py = blob.getY(i) - ay;
+				//Squared distance from the line AB, scaled by |AB|^2
+				final double cross = abx * py - aby * px;
+				final double error = length2 > 0 ? cross * cross : (px * px + py * py);
+				if (error > maxError) {
+					farthest = i;
+					maxError = error;
+				}
+			}
+			if (farthest >= 0 && maxError > tolerance2 * (length2 > 0 ? length2 : 1)) {
+				keep[farthest] = true;
+				ranges[top++] = first;
+				ranges[top++] = farthest;
+				ranges[top++] = farthest;
+				ranges[top++] = last;
+			}
+		}
+		
+		//Compact
+		int kept = 0;
+		for (int i = 0; i < n; i++)
+			if (keep[i])
+				blob.set(kept++, blob.getX(i), blob.getY(i));
+		blob.truncate(kept);
+		this.verticesKept.addAndGet(kept);
 	}
+	
+	/**
+	 * @return the number of vertices in the polygons that came out of pass 2
+	 */
+	public long getVerticesTraced() {
+		return this.verticesTraced.get();
+	}
+	
+	/**
+	 * @return the number of vertices left in the polygons after pass 3
+	 */
+	public long getVerticesKept() {
+		return this.verticesKept.get();
+	}
+	
 	/**
 	 * Parameters for the ContourTracer, so you can use getter/setters instead of really long constructors.
 	 * @author mailmindlin
@@ -202,6 +413,26 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 		protected int minBlobHeight = 10;
 		protected double maxSegmentLength = 10.0;
 		protected double stepSize = 4.0;
+		protected double simplifyTolerance = 1.0;
+
+		/**
+		 * @return the maximum distance (in pixels) that simplification can move the outline of a polygon by
+		 */
+		public double getSimplifyTolerance() {
+			return simplifyTolerance;
+		}
+
+		/**
+		 * Set how far (in pixels) the simplification pass can move the
+		 * outline of a polygon by, when removing vertices. Higher values
+		 * leave fewer vertices.
+		 * @param simplifyTolerance tolerance, or 0 to disable simplification
+		 * @return self
+		 */
+		public ContourTracerParams setSimplifyTolerance(double simplifyTolerance) {
+			this.simplifyTolerance = simplifyTolerance;
+			return this;
+		}
 
 		/**
 		 * @return the step size
@@ -317,6 +548,7 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 			out.writeInt(this.getMinBlobHeight());
 			out.writeDouble(this.getMaxSegmentLength());
 			out.writeDouble(this.getStepSize());
+			out.writeDouble(this.getSimplifyTolerance());
 		}
 
 		@Override
@@ -329,6 +561,7 @@ public class ContourTracer extends AbstractImageProcessor<List<Polygon>> {
 			this.setMinBlobHeight(in.readInt());
 			this.setMaxSegmentLength(in.readDouble());
 			this.setStepSize(in.readDouble());
+			this.setSimplifyTolerance(in.readDouble());
 		}
 		
 	}
@@ -29,6 +29,8 @@ public class DebuggingDiffGenerator extends DiffGenerator {
 		System.out.println("Calculating...");
 		System.out.println("CM: " + onImg.getColorModel());
 		System.out.println("CMCL: " + onImg.getColorModel().getClass());
+		final ImageRaster on = ImageRaster.wrap(onImg);
+		final ImageRaster off = ImageRaster.wrap(offImg);
 		int[] pxOn = new int[3], pxOff = new int[3];
 		for (int y = frameMinY; y < frameMaxY; y++) {
 			//Y index into result array
@@ -37,8 +39,8 @@ public class DebuggingDiffGenerator extends DiffGenerator {
 				//X index into result array
 				final int idxX = x - frameMinX;
 				
-				AbstractImageProcessor.splitRGB(onImg.getRGB(x, y), pxOn);
-				AbstractImageProcessor.splitRGB(offImg.getRGB(x, y), pxOff);
+				AbstractImageProcessor.splitRGB(on.getRGB(x, y), pxOn);
+				AbstractImageProcessor.splitRGB(off.getRGB(x, y), pxOff);
 				int dR = pxOn[0] - pxOff[0];
 				int dG =  pxOn[1] - pxOff[1];
 				int dB =  pxOn[2] - pxOff[2];
@@ -51,6 +53,30 @@ public class DebuggingDiffGenerator extends DiffGenerator {
 				imgB.setRGB(x, y, AbstractImageProcessor.saturateByte(dB));
 			}
 		}
+		saveImages(onImg, offImg, imgR, imgG, imgB, imgFlt);
+		
+		return new RichBinaryImage(result, imgFlt);
+	}
+	
+	/**
+	 * Always creates a new mask, because the images are saved with it
+	 */
+	@Override
+	public RichBinaryImage apply(BufferedImage onImg, BufferedImage offImg, BinaryImage reuse) {
+		return apply(onImg, offImg);
+	}
+	
+	/**
+	 * Write the images for a frame to the <kbd>img</kbd> directory. Override
+	 * to stub out the disk writes (i.e., when benchmarking).
+	 * @param onImg Frame taken with the flash on
+	 * @param offImg Frame taken with the flash off
+	 * @param imgR Red delta
+	 * @param imgG Green delta
+	 * @param imgB Blue delta
+	 * @param imgFlt Pixels that passed the filter
+	 */
+	protected void saveImages(BufferedImage onImg, BufferedImage offImg, BufferedImage imgR, BufferedImage imgG, BufferedImage imgB, BufferedImage imgFlt) {
 		try {
 			File imgDir = new File("img");
 			if (!(imgDir.exists() && imgDir.isDirectory()))
@@ -67,8 +93,6 @@ public class DebuggingDiffGenerator extends DiffGenerator {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		
-		return new RichBinaryImage(result, imgFlt);
 	}
 	
 	public static class RichBinaryImage implements BinaryImage {
@@ -1,20 +1,22 @@
 package com.moe365.mopi.processing;
 
 import java.awt.image.BufferedImage;
-import java.util.function.BiFunction;
 
 /**
  * Calculates the difference between two frames.
  * <p>
  * This algorithm isn't the most efficient implementation to do this, yet is the most streightforward.
+ * Pixels are read through an {@link ImageRaster}, so we don't have to go through the images' ColorModels,
+ * and the result is written to a {@link BitsetBinaryImage}.
  * For every pixel in the two images provided, the differences of the R, G, and B components are calculated,
  * and a heuristic is applied to them to determine if there is a real difference between the points.
  * </p>
  * @author mailmindlin
  * @see DebuggingDiffGenerator
  * @see LazyDiffGenerator
+ * @see ImageRaster
  */
-public class DiffGenerator implements BiFunction<BufferedImage, BufferedImage, BinaryImage> {
+public class DiffGenerator implements RegionDiffGenerator<BitsetBinaryImage> {
 	protected final int frameMinX, frameMaxX, frameMinY, frameMaxY;
 	protected final int tolerance;//70
 	
@@ -27,37 +29,49 @@ public class DiffGenerator implements BiFunction<BufferedImage, BufferedImage, B
 	}
 	
 	@Override
-	public BinaryImage apply(BufferedImage onImg, BufferedImage offImg) {
-		// boolean array of the results. A cell @ result[y][x] is only
-		boolean[][] result = new boolean[this.frameMaxY - this.frameMinY][this.frameMaxX - this.frameMinX];
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+	
+	@Override
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+	
+	@Override
+	public BitsetBinaryImage createMask() {
+		// Bitmap of the results. A pixel @ (x, y) is only set if (x + frameMinX, y + frameMinY) changed
+		return new BitsetBinaryImage(getFrameWidth(), getFrameHeight());
+	}
+	
+	@Override
+	public void clearRegion(BitsetBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
+		mask.clear(xMin, yMin, xMax - 1, yMax - 1);
+	}
+	
+	@Override
+	public BinaryImage apply(BufferedImage onImg, BufferedImage offImg, BinaryImage reuse) {
 		System.out.println("Calculating...");
-		int[] pxOn = new int[3], pxOff = new int[3];
-		for (int y = frameMinY; y < frameMaxY; y++) {
-			//Y index into result array
-			final int idxY = y - frameMinY;
-			for (int x = frameMinX; x < frameMaxX; x++) {
-				//X index into result array
-				final int idxX = x - frameMinX;
+		return RegionDiffGenerator.super.apply(onImg, offImg, reuse);
+	}
+	
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, BitsetBinaryImage result, int xMin, int yMin, int xMax, int yMax) {
+		for (int idxY = yMin; idxY < yMax; idxY++) {
+			final int y = idxY + frameMinY;
+			for (int idxX = xMin; idxX < xMax; idxX++) {
+				final int x = idxX + frameMinX;
 				
 				//Calculate deltas
-				AbstractImageProcessor.splitRGB(onImg.getRGB(x, y), pxOn);
-				AbstractImageProcessor.splitRGB(offImg.getRGB(x, y), pxOff);
-				int dR = pxOn[0] - pxOff[0];
-				int dG =  pxOn[1] - pxOff[1];
-				//int dB =  pxOn[2] - pxOff[2];
+				int dR = on.getRed(x, y) - off.getRed(x, y);
+				int dG = on.getGreen(x, y) - off.getGreen(x, y);
+				//int dB = on.getBlue(x, y) - off.getBlue(x, y);
 				
 				//Decide whether the pixel is on. This predicate is kinda magic-y, but
 				//basically, it requires green to increase by a lot, but red not much.
 				if (dG > tolerance && (dR < dG - 10 || dR < tolerance))//TODO fix
-					result[idxY][idxX] = true;
+					result.set(idxX, idxY);
 			}
 		}
-		
-		return new BinaryImage() {
-			@Override
-			public boolean test(int x, int y) {
-				return result[y][x];
-			}
-		};
 	}
-}
\ No newline at end of file
+}
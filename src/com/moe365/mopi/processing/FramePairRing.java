@@ -0,0 +1,374 @@
+package com.moe365.mopi.processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer/single-consumer ring of (on, off) frame pairs, used to
+ * hand frames from the capture callback to the processor thread.
+ * <p>
+ * Frames are paired as they are {@link #offer(ImageFrame, boolean) offered}:
+ * a pair is two consecutively offered frames with opposite flash states. If
+ * two frames with the same flash state are offered in a row, the older one
+ * can't be paired with anything, so it's recycled. Completed pairs are
+ * published to the ring, and taken off of it by {@link #poll(Pair)} (or
+ * {@link #take(Pair)}, which parks the consumer until a pair is published),
+ * according to the ring's {@link PairingPolicy}.
+ * </p>
+ * <p>
+ * The producer never takes a lock or blocks. With
+ * {@link PairingPolicy#NEWEST_PAIR NEWEST_PAIR}, only one pair is ever kept
+ * waiting: when a new one is published, the producer takes the old one back
+ * off of the ring and recycles it, so the newest pair always survives. With
+ * {@link PairingPolicy#CONSECUTIVE CONSECUTIVE}, if the ring is full, the new
+ * pair is dropped (and recycled) instead. Every dropped frame or pair is
+ * counted, so you can tell where frames are being lost.
+ * </p>
+ * <p>
+ * Frames that are held by the ring can't be reused by the camera, and v4l4j
+ * only has a few buffers (4 by default, set by the
+ * <kbd>v4l4j.num_driver_buffers</kbd> property). On top of the pair that the
+ * consumer is working on, the ring holds at most one pending frame plus one
+ * pair ({@link PairingPolicy#NEWEST_PAIR NEWEST_PAIR}), or
+ * {@link #getCapacity() capacity} pairs
+ * ({@link PairingPolicy#CONSECUTIVE CONSECUTIVE}); see
+ * {@link #getMaxHeldFrames()}.
+ * </p>
+ * <p>
+ * {@link #offer(ImageFrame, boolean) offer} must only be called from one
+ * thread at a time, as must {@link #poll(Pair) poll} and {@link #take(Pair) take}.
+ * </p>
+ * @author mailmindlin
+ */
+public class FramePairRing {
+	public static final int DEFAULT_CAPACITY = 2;
+
+	/**
+	 * Rules for which pairs the consumer gets
+	 */
+	public static enum PairingPolicy {
+		/**
+		 * Always process the newest complete pair. Older pairs that haven't
+		 * been processed yet are dropped (by the producer, as soon as a newer
+		 * pair is published). This has the lowest latency.
+		 */
+		NEWEST_PAIR,
+		/**
+		 * Process every pair, in the order that they were captured. Pairs are
+		 * only dropped if the ring fills up.
+		 */
+		CONSECUTIVE;
+	}
+
+	/**
+	 * A pair of frames taken off of the ring. Reused by the consumer.
+	 */
+	public static class Pair {
+		protected ImageFrame on;
+		protected ImageFrame off;
+		protected long captureTime;
+		protected long sequence;
+		protected long publishTime;
+
+		/**
+		 * @return the frame that was taken with the flash on
+		 */
+		public ImageFrame getOn() {
+			return on;
+		}
+
+		/**
+		 * @return the frame that was taken with the flash off
+		 */
+		public ImageFrame getOff() {
+			return off;
+		}
+
+		/**
+		 * @return the capture time (in microseconds) of the newer frame of the pair
+		 */
+		public long getCaptureTime() {
+			return captureTime;
+		}
+
+		/**
+		 * @return the sequence number of the newer frame of the pair (the
+		 * number of frames offered to the ring before it)
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return the time that the pair was published to the ring, from {@link System#nanoTime()}
+		 */
+		public long getPublishTime() {
+			return publishTime;
+		}
+
+		/**
+		 * Recycle both frames
+		 */
+		public void recycle() {
+			if (on != null)
+				on.recycle();
+			if (off != null)
+				off.recycle();
+			on = off = null;
+		}
+	}
+
+	protected final int mask;
+	protected final ImageFrame[] onFrames;
+	protected final ImageFrame[] offFrames;
+	protected final long[] captureTimes;
+	protected final long[] sequences;
+	protected final long[] publishTimes;
+
+	/**
+	 * Index of the next slot to write to. Only written by the producer.
+	 */
+	protected final AtomicLong tail = new AtomicLong(0);
+	/**
+	 * Index of the next slot to read from. Advanced by the consumer when it
+	 * takes a pair, and by the producer when it drops a stale one (with
+	 * {@link PairingPolicy#NEWEST_PAIR NEWEST_PAIR}). Whoever advances it
+	 * (with a CAS) owns the frames in the slot.
+	 */
+	protected final AtomicLong head = new AtomicLong(0);
+
+	protected volatile PairingPolicy policy;
+
+	/**
+	 * Thread blocked in {@link #take(Pair)}
+	 */
+	protected volatile Thread consumer;
+	/**
+	 * Whether the consumer is (about to be) parked, waiting for a pair
+	 */
+	protected volatile boolean consumerWaiting = false;
+
+	/*
+	 * Producer state
+	 */
+	/**
+	 * Frame waiting for its other half, or null
+	 */
+	protected ImageFrame pending;
+	protected boolean pendingFlash;
+	/**
+	 * Number of frames offered so far
+	 */
+	protected long frameSequence = 0;
+
+	/*
+	 * Counters
+	 */
+	protected final AtomicLong pairsPublished = new AtomicLong(0);
+	protected final AtomicLong unpairedDrops = new AtomicLong(0);
+	protected final AtomicLong overflowDrops = new AtomicLong(0);
+	protected final AtomicLong staleDrops = new AtomicLong(0);
+
+	public FramePairRing() {
+		this(DEFAULT_CAPACITY, PairingPolicy.NEWEST_PAIR);
+	}
+
+	/**
+	 * Create a ring
+	 * @param capacity Maximum number of pairs waiting to be processed. Must be a power of 2.
+	 * @param policy Which pairs the consumer should get
+	 */
+	public FramePairRing(int capacity, PairingPolicy policy) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of 2 (was " + capacity + ")");
+		this.mask = capacity - 1;
+		this.onFrames = new ImageFrame[capacity];
+		this.offFrames = new ImageFrame[capacity];
+		this.captureTimes = new long[capacity];
+		this.sequences = new long[capacity];
+		this.publishTimes = new long[capacity];
+		this.policy = policy;
+	}
+
+	public int getCapacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * @return the most frames that the ring can hold at once with the current
+	 *         policy (not counting the pair held by the consumer)
+	 */
+	public int getMaxHeldFrames() {
+		return 2 * (this.policy == PairingPolicy.NEWEST_PAIR ? 1 : getCapacity()) + 1;
+	}
+
+	public PairingPolicy getPolicy() {
+		return this.policy;
+	}
+
+	/**
+	 * Change the pairing policy. Pairs already in the ring aren't affected.
+	 */
+	public void setPolicy(PairingPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Offer a frame. Called by the producer. Ownership of the frame is
+	 * transferred to the ring, which will recycle it if it's dropped.
+	 * @param frame Frame
+	 * @param flash Whether the flash was on when the frame was captured
+	 * @return false if the frame (or the pair that it completed) was dropped
+	 */
+	public boolean offer(ImageFrame frame, boolean flash) {
+		final long sequence = this.frameSequence++;
+		final ImageFrame pending = this.pending;
+		if (pending == null || this.pendingFlash == flash) {
+			//Wait for the other half
+			if (pending != null) {
+				pending.recycle();
+				this.unpairedDrops.incrementAndGet();
+			}
+			this.pending = frame;
+			this.pendingFlash = flash;
+			return true;
+		}
+		this.pending = null;
+
+		final long t = this.tail.get();
+		if (this.policy == PairingPolicy.NEWEST_PAIR) {
+			//Drop the pairs that haven't been taken yet, so only this one is left
+			long h;
+			while ((h = this.head.get()) < t) {
+				final int idx = (int) (h & this.mask);
+				final ImageFrame on = this.onFrames[idx], off = this.offFrames[idx];
+				//If the consumer advanced the head first, the slot is its
+				if (this.head.compareAndSet(h, h + 1)) {
+					on.recycle();
+					off.recycle();
+					this.staleDrops.incrementAndGet();
+				}
+			}
+		} else if (t - this.head.get() > this.mask) {
+			//Full
+			pending.recycle();
+			frame.recycle();
+			this.overflowDrops.incrementAndGet();
+			return false;
+		}
+		final int idx = (int) (t & this.mask);
+		this.onFrames[idx] = flash ? frame : pending;
+		this.offFrames[idx] = flash ? pending : frame;
+		this.captureTimes[idx] = frame.getCaptureTime();
+		this.sequences[idx] = sequence;
+		this.publishTimes[idx] = System.nanoTime();
+		//Publish the slot. This has to be a full volatile write, so that we
+		//can't miss the consumer going to sleep.
+		this.tail.set(t + 1);
+		this.pairsPublished.incrementAndGet();
+		if (this.consumerWaiting)
+			LockSupport.unpark(this.consumer);
+		return true;
+	}
+
+	/**
+	 * Take the next pair off of the ring, according to the
+	 * {@link #getPolicy() policy}. Called by the consumer.
+	 * @param result Pair to write to. Any frames it held are overwritten
+	 * (not recycled).
+	 * @return whether a pair was available
+	 */
+	public boolean poll(Pair result) {
+		while (true) {
+			final long h = this.head.get();
+			final long t = this.tail.get();
+			if (h == t)
+				return false;
+			final int idx = (int) (h & this.mask);
+			final ImageFrame on = this.onFrames[idx], off = this.offFrames[idx];
+			final long captureTime = this.captureTimes[idx], sequence = this.sequences[idx], publishTime = this.publishTimes[idx];
+			//Claim (and release) the slot. If the producer got to it first, it
+			//recycled the frames, and may have already reused the slot, so try
+			//the next one. The slot isn't cleared, because it might not be ours
+			//anymore by the time we could.
+			if (!this.head.compareAndSet(h, h + 1))
+				continue;
+			if (this.policy != PairingPolicy.NEWEST_PAIR || h == t - 1) {
+				result.on = on;
+				result.off = off;
+				result.captureTime = captureTime;
+				result.sequence = sequence;
+				result.publishTime = publishTime;
+				return true;
+			}
+			//Left over from when the policy was changed; drop everything but the newest pair
+			on.recycle();
+			off.recycle();
+			this.staleDrops.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Take the next pair off of the ring, parking the current thread until
+	 * one is published. Called by the consumer.
+	 * @param result Pair to write to
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @see #poll(Pair)
+	 */
+	public void take(Pair result) throws InterruptedException {
+		this.consumer = Thread.currentThread();
+		while (!poll(result)) {
+			this.consumerWaiting = true;
+			//Check again, in case a pair was published before the producer
+			//could see that we were waiting
+			if (isEmpty())
+				LockSupport.park(this);
+			this.consumerWaiting = false;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * @return whether there is a pair waiting to be polled
+	 */
+	public boolean isEmpty() {
+		return this.head.get() == this.tail.get();
+	}
+
+	/**
+	 * @return the number of pairs that have been published to the ring
+	 */
+	public long getPairsPublished() {
+		return this.pairsPublished.get();
+	}
+
+	/**
+	 * @return the number of frames that were dropped because the next frame
+	 * had the same flash state
+	 */
+	public long getUnpairedDrops() {
+		return this.unpairedDrops.get();
+	}
+
+	/**
+	 * @return the number of pairs that were dropped because the ring was full
+	 */
+	public long getOverflowDrops() {
+		return this.overflowDrops.get();
+	}
+
+	/**
+	 * @return the number of pairs that were dropped because a newer pair was
+	 * available (only with {@link PairingPolicy#NEWEST_PAIR NEWEST_PAIR})
+	 */
+	public long getStaleDrops() {
+		return this.staleDrops.get();
+	}
+
+	@Override
+	public String toString() {
+		return "FramePairRing [policy=" + policy + ", published=" + getPairsPublished() + ", unpaired=" + getUnpairedDrops()
+				+ ", overflow=" + getOverflowDrops() + ", stale=" + getStaleDrops() + "]";
+	}
+}
@@ -0,0 +1,75 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * A single frame from some source (a camera, a file, etc.) that can be handed
+ * to an {@link AbstractImageProcessor}.
+ * <p>
+ * This lets the processors accept frames that aren't JPEG-encoded
+ * {@link au.edu.jcu.v4l4j.VideoFrame VideoFrame}s. Processors that can work
+ * directly on the raw bytes of the frame (i.e., YUYV planes) should check
+ * {@link #getFormat()} and call {@link #getYuyvImage()}; everything else can
+ * just call {@link #getBufferedImage()}, which will decode/convert the frame
+ * if needed.
+ * </p>
+ * @author mailmindlin
+ * @see WrappedVideoFrame
+ * @see RawImageFrame
+ */
+public interface ImageFrame {
+	/**
+	 * The format of the bytes returned by {@link ImageFrame#getBuffer()}
+	 */
+	public static enum Format {
+		/**
+		 * A JPEG-encoded image
+		 */
+		JPEG,
+		/**
+		 * Packed YUV 4:2:2, in the order Y0 U Y1 V
+		 */
+		YUYV;
+	}
+
+	/**
+	 * @return the format of this frame's data
+	 */
+	Format getFormat();
+
+	/**
+	 * Get the raw data of this frame, in the format returned by
+	 * {@link #getFormat()}. The returned buffer is only valid until
+	 * {@link #recycle()} is called.
+	 * @return buffer with this frame's data
+	 */
+	ByteBuffer getBuffer();
+
+	/**
+	 * Get this frame as a BufferedImage, decoding or converting it if
+	 * required.
+	 * @return image
+	 */
+	BufferedImage getBufferedImage();
+
+	/**
+	 * Get a view of this frame's YUYV data.
+	 * @return view of this frame's data
+	 * @throws UnsupportedOperationException if this frame is not in the YUYV format
+	 */
+	YuyvImage getYuyvImage() throws UnsupportedOperationException;
+
+	/**
+	 * Get the time at which this frame was captured, in microseconds.
+	 * @return capture time
+	 * @see au.edu.jcu.v4l4j.VideoFrame#getCaptureTime()
+	 */
+	long getCaptureTime();
+
+	/**
+	 * Release any resources held by this frame. The frame should not be used
+	 * after this method is called.
+	 */
+	void recycle();
+}
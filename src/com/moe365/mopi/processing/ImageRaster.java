@@ -0,0 +1,271 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Direct access to the pixels of a {@link BufferedImage}.
+ * <p>
+ * {@link BufferedImage#getRGB(int, int)} goes through the image's ColorModel
+ * for every single pixel, which is really slow when we have to call it a few
+ * hundred thousand times per frame. For the image types that we actually see
+ * (TYPE_3BYTE_BGR from the JPEG decoder, and TYPE_INT_RGB/TYPE_INT_ARGB from
+ * ImageIO & friends), we can read the backing {@link DataBufferByte} or
+ * {@link DataBufferInt} as a flat array instead, using the stride and offset
+ * of the raster's SampleModel. Every other image type falls back to
+ * {@link BufferedImage#getRGB(int, int)}.
+ * </p>
+ * <p>
+ * Note that grabbing the backing array of an image will disable hardware
+ * acceleration for that image. We don't draw the images that we process, so
+ * that doesn't really matter.
+ * </p>
+ * @author mailmindlin
+ * @see #wrap(BufferedImage)
+ */
+public abstract class ImageRaster {
+	/**
+	 * Get a raster to read the pixels of the given image, picking the fastest
+	 * implementation available for the image's type.
+	 * @param img Image to read
+	 * @return Raster for image
+	 */
+	public static ImageRaster wrap(BufferedImage img) {
+		Raster raster = img.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer db = raster.getDataBuffer();
+		if (db.getNumBanks() == 1) {
+			switch (img.getType()) {
+				case BufferedImage.TYPE_3BYTE_BGR:
+					if (db instanceof DataBufferByte && sm instanceof ComponentSampleModel)
+						return new ByteBgrRaster(img, (DataBufferByte) db, (ComponentSampleModel) sm);
+					break;
+				case BufferedImage.TYPE_INT_RGB:
+				case BufferedImage.TYPE_INT_ARGB:
+					if (db instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel)
+						return new IntRgbRaster(img, (DataBufferInt) db, (SinglePixelPackedSampleModel) sm);
+					break;
+				default:
+					break;
+			}
+		}
+		return new FallbackRaster(img);
+	}
+
+	protected final int width, height;
+
+	protected ImageRaster(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return the width of the image
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * @return the height of the image
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Get the RGB value of the pixel at (x, y), in the format {@code 0x00RRGGBB}.
+	 * Unlike {@link BufferedImage#getRGB(int, int)}, the alpha channel is
+	 * always 0.
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return RGB value
+	 */
+	public abstract int getRGB(int x, int y);
+
+	/**
+	 * Get the red component of the pixel at (x, y)
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return red component, in the range [0, 255]
+	 */
+	public int getRed(int x, int y) {
+		return (getRGB(x, y) >>> 16) & 0xFF;
+	}
+
+	/**
+	 * Get the green component of the pixel at (x, y)
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return green component, in the range [0, 255]
+	 */
+	public int getGreen(int x, int y) {
+		return (getRGB(x, y) >>> 8) & 0xFF;
+	}
+
+	/**
+	 * Get the blue component of the pixel at (x, y)
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return blue component, in the range [0, 255]
+	 */
+	public int getBlue(int x, int y) {
+		return getRGB(x, y) & 0xFF;
+	}
+
+	/**
+	 * Bulk version of {@link #getRGB(int, int)}. Has the same semantics as
+	 * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}, except
+	 * that the alpha channel is always 0.
+	 * @param startX Left bound of region to read
+	 * @param startY Top bound of region to read
+	 * @param w Width of region
+	 * @param h Height of region
+	 * @param rgbArray Array to write pixels to
+	 * @param offset Offset into rgbArray
+	 * @param scansize Scanline stride for rgbArray
+	 */
+	public void getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+		for (int y = 0; y < h; y++) {
+			int idx = offset + y * scansize;
+			for (int x = 0; x < w; x++)
+				rgbArray[idx++] = getRGB(startX + x, startY + y);
+		}
+	}
+
+	/**
+	 * Raster backed by a {@link DataBufferByte} with (at least) three bytes per pixel.
+	 * This is what TYPE_3BYTE_BGR images look like.
+	 */
+	public static final class ByteBgrRaster extends ImageRaster {
+		protected final byte[] data;
+		/**
+		 * Index of pixel (0, 0) in the data array
+		 */
+		protected final int offset;
+		protected final int scanlineStride;
+		protected final int pixelStride;
+		protected final int redOffset, greenOffset, blueOffset;
+
+		protected ByteBgrRaster(BufferedImage img, DataBufferByte db, ComponentSampleModel sm) {
+			super(img.getWidth(), img.getHeight());
+			this.data = db.getData();
+			this.scanlineStride = sm.getScanlineStride();
+			this.pixelStride = sm.getPixelStride();
+			Raster raster = img.getRaster();
+			this.offset = db.getOffset()
+					- raster.getSampleModelTranslateY() * this.scanlineStride
+					- raster.getSampleModelTranslateX() * this.pixelStride;
+			int[] bandOffsets = sm.getBandOffsets();
+			this.redOffset = bandOffsets[0];
+			this.greenOffset = bandOffsets[1];
+			this.blueOffset = bandOffsets[2];
+		}
+
+		@Override
+		public int getRGB(int x, int y) {
+			final int idx = offset + y * scanlineStride + x * pixelStride;
+			return ((data[idx + redOffset] & 0xFF) << 16)
+					| ((data[idx + greenOffset] & 0xFF) << 8)
+					| (data[idx + blueOffset] & 0xFF);
+		}
+
+		@Override
+		public int getRed(int x, int y) {
+			return data[offset + y * scanlineStride + x * pixelStride + redOffset] & 0xFF;
+		}
+
+		@Override
+		public int getGreen(int x, int y) {
+			return data[offset + y * scanlineStride + x * pixelStride + greenOffset] & 0xFF;
+		}
+
+		@Override
+		public int getBlue(int x, int y) {
+			return data[offset + y * scanlineStride + x * pixelStride + blueOffset] & 0xFF;
+		}
+
+		@Override
+		public void getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+			for (int y = 0; y < h; y++) {
+				int dst = offset + y * scansize;
+				int src = this.offset + (startY + y) * scanlineStride + startX * pixelStride;
+				for (int x = 0; x < w; x++, src += pixelStride)
+					rgbArray[dst++] = ((data[src + redOffset] & 0xFF) << 16)
+							| ((data[src + greenOffset] & 0xFF) << 8)
+							| (data[src + blueOffset] & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Raster backed by a {@link DataBufferInt} with one int per pixel, in the
+	 * format 0xAARRGGBB (TYPE_INT_ARGB) or 0x00RRGGBB (TYPE_INT_RGB).
+	 */
+	public static final class IntRgbRaster extends ImageRaster {
+		protected final int[] data;
+		/**
+		 * Index of pixel (0, 0) in the data array
+		 */
+		protected final int offset;
+		protected final int scanlineStride;
+
+		protected IntRgbRaster(BufferedImage img, DataBufferInt db, SinglePixelPackedSampleModel sm) {
+			super(img.getWidth(), img.getHeight());
+			this.data = db.getData();
+			this.scanlineStride = sm.getScanlineStride();
+			Raster raster = img.getRaster();
+			this.offset = db.getOffset()
+					- raster.getSampleModelTranslateY() * this.scanlineStride
+					- raster.getSampleModelTranslateX();
+		}
+
+		@Override
+		public int getRGB(int x, int y) {
+			return data[offset + y * scanlineStride + x] & 0x00FF_FFFF;
+		}
+
+		@Override
+		public void getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+			for (int y = 0; y < h; y++) {
+				int dst = offset + y * scansize;
+				int src = this.offset + (startY + y) * scanlineStride + startX;
+				for (int x = 0; x < w; x++)
+					rgbArray[dst++] = data[src++] & 0x00FF_FFFF;
+			}
+		}
+	}
+
+	/**
+	 * Raster for image types that we don't know how to read directly. Goes
+	 * through {@link BufferedImage#getRGB(int, int)}, so it's slow.
+	 */
+	public static final class FallbackRaster extends ImageRaster {
+		protected final BufferedImage img;
+
+		protected FallbackRaster(BufferedImage img) {
+			super(img.getWidth(), img.getHeight());
+			this.img = img;
+		}
+
+		@Override
+		public int getRGB(int x, int y) {
+			return img.getRGB(x, y) & 0x00FF_FFFF;
+		}
+
+		@Override
+		public void getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+			img.getRGB(startX, startY, w, h, rgbArray, offset, scansize);
+			//Strip the alpha channel
+			for (int y = 0; y < h; y++)
+				for (int i = offset + y * scansize, end = i + w; i < end; i++)
+					rgbArray[i] &= 0x00FF_FFFF;
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package com.moe365.mopi.processing;
 
-import java.awt.image.BufferedImage;
-import java.util.function.BiFunction;
+import java.util.Arrays;
 
 /**
  * Another implementation of the algorithm used in {@link DiffGenerator}, except that it's implemented a bit more efficiently here.
@@ -28,9 +27,13 @@ import java.util.function.BiFunction;
  * @author mailmindlin
  * @see DiffGenerator
  */
-public class LazyDiffGenerator implements BiFunction<BufferedImage, BufferedImage, BinaryImage> {
+public class LazyDiffGenerator implements RegionDiffGenerator<LazyDiffGenerator.TiledBinaryImage> {
 	//Left-shift by column
-	private static final long COL_MASK = dup(0b1000_0000);
+	/**
+	 * Mask of the leftmost column of a tile. Pixel (x, y) of a tile is bit
+	 * <code>y * 8 + x</code>.
+	 */
+	private static final long COL_MASK = dup(0b0000_0001);
 	
 	/**
 	 * Utility method to duplicate a byte to all bytes of a long.
@@ -96,7 +99,48 @@ public class LazyDiffGenerator implements BiFunction<BufferedImage, BufferedImag
 	}
 	
 	@Override
-	public BinaryImage apply(BufferedImage onImg, BufferedImage offImg) {
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+	
+	@Override
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+	
+	/**
+	 * Tiles are 8 rows tall, so regions that are diffed concurrently have to
+	 * start on a tile boundary.
+	 */
+	@Override
+	public int getRowAlignment() {
+		return 8;
+	}
+	
+	@Override
+	public TiledBinaryImage createMask() {
+		//Round up (if not multiple of 8)
+		final int xTiles = (getFrameWidth() + 7) / 8;
+		final int yTiles = (getFrameHeight() + 7) / 8;
+		return new TiledBinaryImage(new long[yTiles][xTiles]);
+	}
+	
+	/**
+	 * Clear every tile that overlaps the given region
+	 */
+	@Override
+	public void clearRegion(TiledBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
+		final int uMin = xMin / 8, uMax = (xMax + 7) / 8;
+		for (int v = yMin / 8; v < (yMax + 7) / 8; v++)
+			Arrays.fill(mask.tiles[v], uMin, uMax, 0L);
+	}
+	
+	/**
+	 * Diff every tile that overlaps the given region. The region is rounded
+	 * out to the nearest tile boundaries.
+	 */
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, TiledBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
 		/*
 		 * Each long contains 64 pixels.
 		 * Stored in format:
@@ -105,56 +149,33 @@ public class LazyDiffGenerator implements BiFunction<BufferedImage, BufferedImag
 		 * 22222222
 		 * (etc.)
 		 */
-		final int width = (this.frameMaxX - this.frameMinX);
-		final int height = (this.frameMaxY - this.frameMinY);
-		//Round up (if not multiple of 8)
-		final int xTiles = (width + 7) / 8;
-		final int yTiles= (height + 7) / 8;
-		final long[][] tiles = new long[yTiles][xTiles];
+		final int width = getFrameWidth();
+		final int height = getFrameHeight();
+		final long[][] tiles = mask.tiles;
+		final int uMin = xMin / 8, uMax = (xMax + 7) / 8;
+		final int vMin = yMin / 8, vMax = (yMax + 7) / 8;
 		
 		//Arrays to store the RGB pixels used to calculate each chunk. Their values change every iteration,
 		//but we don't have to allocate them every time this way.
 		int[] onPixels = new int[64];
 		int[] offPixels = new int[64];
 		
-		for (int v = 0; v < height / 8; v++) {
-			long[] tilesRow = tiles[v];
-			for (int u = 0; u < width / 8; u++) {
+		for (int v = vMin; v < vMax; v++) {
+			final long[] tilesRow = tiles[v];
+			final int tileHeight = Math.min(8, height - v * 8);
+			for (int u = uMin; u < uMax; u++) {
+				final int tileWidth = Math.min(8, width - u * 8);
+				if (tileWidth < 8 || tileHeight < 8) {
+					//Pixels past the edge of the image aren't overwritten, so make sure they don't differ
+					Arrays.fill(onPixels, 0);
+					Arrays.fill(offPixels, 0);
+				}
 				//Grab 2 8x8 squares
-				onImg.getRGB(u * 8, v * 8, 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, 8, 8, offPixels, 0, 8);
-				tilesRow[u] = evalTile(onPixels, offPixels);
-			}
-			
-			if (width % 8 != 0) {
-				int u = width / 8;
-				//Rightmost tile column isn't complete
-				onImg.getRGB(u * 8, v * 8, width - u, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, width - u, 8, offPixels, 0, 8);
+				on.getRGB(frameMinX + u * 8, frameMinY + v * 8, tileWidth, tileHeight, onPixels, 0, 8);
+				off.getRGB(frameMinX + u * 8, frameMinY + v * 8, tileWidth, tileHeight, offPixels, 0, 8);
 				tilesRow[u] = evalTile(onPixels, offPixels);
 			}
 		}
-		if (height % 8 != 0) {
-			//Complete bottom tile row
-			int v = height / 8;
-			long[] tilesRow = tiles[v];
-			for (int u = 0; u < width / 8; u++) {
-				//Get chunk
-				onImg.getRGB(u * 8, v * 8, 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, 8, 8, offPixels, 0, 8);
-				tilesRow[u] = evalTile(onPixels, offPixels);
-			}
-			
-			if (width % 8 != 0) {
-				int u = width / 8;
-				//Rightmost tile column isn't complete
-				onImg.getRGB(u * 8, v * 8, width - u * 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, width - u * 8, 8, offPixels, 0, 8);
-				tilesRow[u] = evalTile(onPixels, offPixels);
-			}
-		}
-		
-		return new TiledBinaryImage(tiles);
 	}
 	
 	/**
@@ -295,9 +316,8 @@ public class LazyDiffGenerator implements BiFunction<BufferedImage, BufferedImag
 			//We can test rows and cols faster
 			final long mask = 0xFFL << (8 * (y % 8));
 			//Mask the columns that are out of range on the first and last tiles
-			final long maskI = dup(0xFF >> (xMin & 8));
-			//TODO could do with Integer.reverseBytes, but not sure if actually faster
-			final long maskF = dup(0xFF & (0xFF << xMax));
+			final long maskI = dup(0xFF & (0xFF << (xMin % 8)));
+			final long maskF = dup(0xFF >>> (7 - xMax % 8));
 			
 			final int v = y / 8;
 			final int uMin = xMin / 8;
@@ -336,14 +356,14 @@ public class LazyDiffGenerator implements BiFunction<BufferedImage, BufferedImag
 		@Override
 		public boolean testCol(int x, int yMin, int yMax) {
 			//Mask that only selects bits in our column
-			final long mask = COL_MASK >>> (x % 8);
+			final long mask = COL_MASK << (x % 8);
 			//More masks for the first and last tiles, because we might not be using all of them
 			//Basically, we're cutting off the top or the bottom rows that we won't be using.
 			//Note that -1L is the identity mask (all bits are on)
 			//TODO move into loop, because we might not use these masks every time this method is called,
 			//so let's not calculate them if we don't have to (the cost of calculating these isn't much, but it's nonzero).
 			final long maskI = (-1L) << ((yMin % 8) * 8);
-			final long maskF = (-1L) >>> ((yMax % 8) * 8);
+			final long maskF = (-1L) >>> ((7 - yMax % 8) * 8);
 			
 			final int u = x / 8;
 			final int vMin = yMin / 8;
@@ -0,0 +1,152 @@
+package com.moe365.mopi.processing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a frame into horizontal bands, and diffs them in parallel on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * The actual diffing is done by another {@link RegionDiffGenerator}, so the
+ * output is bit-for-bit identical to calling it on its own. Bands are
+ * aligned to the delegate's {@link RegionDiffGenerator#getRowAlignment() row alignment},
+ * so no two threads ever write to the same part of the mask.
+ * </p>
+ * @author mailmindlin
+ * @param <M> the type of mask generated
+ */
+public class ParallelDiffGenerator<M extends BinaryImage> implements RegionDiffGenerator<M>, AutoCloseable {
+	/**
+	 * Number of bands to try to give each thread. Having a few more bands
+	 * than threads lets the pool balance the load if one band takes longer
+	 * than the others.
+	 */
+	protected static final int BANDS_PER_THREAD = 4;
+
+	protected final RegionDiffGenerator<M> delegate;
+	protected final ForkJoinPool pool;
+	/**
+	 * Whether {@link #pool} was created by (and should be shut down with)
+	 * this generator
+	 */
+	protected final boolean ownsPool;
+	/**
+	 * Bands at most this tall are diffed without splitting them any more
+	 */
+	protected final int minBandHeight;
+
+	/**
+	 * Create a generator with a new pool with the given number of threads
+	 * @param delegate Generator to do the actual diffing
+	 * @param threads Number of threads to use
+	 */
+	public ParallelDiffGenerator(RegionDiffGenerator<M> delegate, int threads) {
+		this(delegate, new ForkJoinPool(threads), true);
+	}
+
+	/**
+	 * Create a generator that diffs on a shared pool, which isn't shut down
+	 * when this generator is closed
+	 * @param delegate Generator to do the actual diffing
+	 * @param pool Pool to diff on
+	 */
+	public ParallelDiffGenerator(RegionDiffGenerator<M> delegate, ForkJoinPool pool) {
+		this(delegate, pool, false);
+	}
+
+	protected ParallelDiffGenerator(RegionDiffGenerator<M> delegate, ForkJoinPool pool, boolean ownsPool) {
+		this.delegate = delegate;
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		final int alignment = delegate.getRowAlignment();
+		int bandHeight = delegate.getFrameHeight() / (pool.getParallelism() * BANDS_PER_THREAD);
+		//Round up to the alignment
+		bandHeight = (bandHeight + alignment - 1) / alignment * alignment;
+		this.minBandHeight = Math.max(alignment, bandHeight);
+	}
+
+	/**
+	 * @return the pool that bands are diffed on
+	 */
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Shut down the pool, if this generator created it
+	 */
+	@Override
+	public void close() {
+		if (this.ownsPool)
+			this.pool.shutdown();
+	}
+
+	@Override
+	public int getFrameWidth() {
+		return delegate.getFrameWidth();
+	}
+
+	@Override
+	public int getFrameHeight() {
+		return delegate.getFrameHeight();
+	}
+
+	@Override
+	public int getRowAlignment() {
+		return delegate.getRowAlignment();
+	}
+
+	@Override
+	public M createMask() {
+		return delegate.createMask();
+	}
+
+	@Override
+	public void clearRegion(M mask, int xMin, int yMin, int xMax, int yMax) {
+		delegate.clearRegion(mask, xMin, yMin, xMax, yMax);
+	}
+
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, M mask, int xMin, int yMin, int xMax, int yMax) {
+		if (yMax - yMin <= minBandHeight)
+			//Not worth splitting
+			delegate.diffRegion(on, off, mask, xMin, yMin, xMax, yMax);
+		else
+			pool.invoke(new BandTask(on, off, mask, xMin, yMin, xMax, yMax));
+	}
+
+	/**
+	 * Diffs a band of the frame, splitting it in half (on an aligned row)
+	 * until it's small enough.
+	 * @author mailmindlin
+	 */
+	protected class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = -3907516237186330522L;
+		protected final ImageRaster on, off;
+		protected final M mask;
+		protected final int xMin, yMin, xMax, yMax;
+
+		protected BandTask(ImageRaster on, ImageRaster off, M mask, int xMin, int yMin, int xMax, int yMax) {
+			this.on = on;
+			this.off = off;
+			this.mask = mask;
+			this.xMin = xMin;
+			this.yMin = yMin;
+			this.xMax = xMax;
+			this.yMax = yMax;
+		}
+
+		@Override
+		protected void compute() {
+			final int alignment = delegate.getRowAlignment();
+			//Split on an aligned row near the middle
+			int split = (yMin + yMax) / 2 / alignment * alignment;
+			if (yMax - yMin <= minBandHeight || split <= yMin) {
+				delegate.diffRegion(on, off, mask, xMin, yMin, xMax, yMax);
+				return;
+			}
+			invokeAll(new BandTask(on, off, mask, xMin, yMin, xMax, split),
+					new BandTask(on, off, mask, xMin, split, xMax, yMax));
+		}
+	}
+}
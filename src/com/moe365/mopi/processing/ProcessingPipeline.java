@@ -0,0 +1,344 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import com.moe365.mopi.util.FrameTimestamps;
+import com.moe365.mopi.util.LatencyHistogram;
+
+/**
+ * Runs an image processor as a pipeline of stages (i.e., decode, diff,
+ * extract, publish), each on its own thread, so frame N+1 can be decoded and
+ * diffed while frame N's blobs are being extracted and sent.
+ * <p>
+ * Work is passed between stages as {@link Frame}s, through bounded queues.
+ * There are a fixed number of frames, which are reused, so if every frame is
+ * in use (i.e., the last stage is slow), the first stage stops taking pairs
+ * off of the {@link FramePairRing}, which then drops them according to its
+ * policy. Each stage only ever sees frames in the order that they were
+ * captured.
+ * </p>
+ * <p>
+ * The decode and diff stages ({@link #decodeStage(boolean)} and
+ * {@link #diffStage(BiFunction, BiFunction)}) don't depend on what is done
+ * with the mask, so they can be shared between processors.
+ * </p>
+ * @author mailmindlin
+ * @param <R> the result type generated by the pipeline
+ * @see AbstractImageProcessor#setPipelined(boolean)
+ */
+public class ProcessingPipeline<R> {
+	/**
+	 * Default capacity of the queue in front of each stage
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1;
+
+	/**
+	 * A frame pair, and everything the stages have calculated from it so
+	 * far. Reused.
+	 * @param <R> the result type
+	 */
+	public static class Frame<R> {
+		protected final FramePairRing.Pair pair = new FramePairRing.Pair();
+		protected BufferedImage onImage, offImage;
+		protected YuyvImage onYuyv, offYuyv;
+		protected BinaryImage mask;
+		/**
+		 * Mask from the last time this frame was diffed, which is kept after
+		 * the frame is cleared so it can be reused
+		 */
+		protected BinaryImage lastMask;
+		protected final FrameTimestamps timestamps = new FrameTimestamps();
+		/**
+		 * Result, which is reused between frames, if the stage that generates
+		 * it wants to.
+		 */
+		protected R result;
+
+		public FramePairRing.Pair getPair() {
+			return pair;
+		}
+
+		public BufferedImage getOnImage() {
+			return onImage;
+		}
+
+		public BufferedImage getOffImage() {
+			return offImage;
+		}
+
+		/**
+		 * @return the decoded YUYV image taken with the flash on, or null if it was converted to RGB
+		 */
+		public YuyvImage getOnYuyv() {
+			return onYuyv;
+		}
+
+		public YuyvImage getOffYuyv() {
+			return offYuyv;
+		}
+
+		/**
+		 * @return when this frame reached each stage
+		 */
+		public FrameTimestamps getTimestamps() {
+			return timestamps;
+		}
+
+		public BinaryImage getMask() {
+			return mask;
+		}
+
+		public void setMask(BinaryImage mask) {
+			this.mask = mask;
+		}
+
+		public R getResult() {
+			return result;
+		}
+
+		public void setResult(R result) {
+			this.result = result;
+		}
+
+		/**
+		 * Recycle the frames and drop the decoded images, once they aren't
+		 * needed anymore (i.e., after diffing), so the camera can reuse the
+		 * buffers as soon as possible.
+		 */
+		public void releaseFrames() {
+			this.pair.recycle();
+			this.onImage = this.offImage = null;
+			this.onYuyv = this.offYuyv = null;
+		}
+
+		/**
+		 * @return the mask from the last time this frame was diffed, if it's
+		 *         a bitset of the given size, or null
+		 */
+		protected BitsetBinaryImage lastBitsetMask(int width, int height) {
+			if (!(this.lastMask instanceof BitsetBinaryImage))
+				return null;
+			final BitsetBinaryImage mask = (BitsetBinaryImage) this.lastMask;
+			return mask.getWidth() == width && mask.getHeight() == height ? mask : null;
+		}
+
+		/**
+		 * Reset this frame so it can be reused. Doesn't clear the result.
+		 */
+		protected void clear() {
+			releaseFrames();
+			this.mask = null;
+		}
+	}
+
+	/**
+	 * A stage of the pipeline
+	 * @param <R> the result type
+	 */
+	public static class Stage<R> {
+		protected final String name;
+		protected final Consumer<Frame<R>> action;
+
+		/**
+		 * @param name Name of the stage (used to name its thread)
+		 * @param action Work to do on each frame. If it throws an exception,
+		 *            the frame is dropped.
+		 */
+		public Stage(String name, Consumer<Frame<R>> action) {
+			this.name = name;
+			this.action = action;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Build a stage that decodes both frames of the pair.
+	 * @param yuyv Whether YUYV frames should be kept as YUYV (instead of being converted to RGB)
+	 * @return decode stage
+	 */
+	public static <R> Stage<R> decodeStage(boolean yuyv) {
+		return new Stage<>("decode", frame -> {
+			final ImageFrame on = frame.pair.getOn(), off = frame.pair.getOff();
+			if (yuyv && on.getFormat() == ImageFrame.Format.YUYV && off.getFormat() == ImageFrame.Format.YUYV) {
+				frame.onYuyv = on.getYuyvImage();
+				frame.offYuyv = off.getYuyvImage();
+			} else {
+				frame.onImage = on.getBufferedImage();
+				frame.offImage = off.getBufferedImage();
+			}
+			frame.timestamps.mark(FrameTimestamps.DECODED);
+		});
+	}
+
+	/**
+	 * Diffs a pair of RGB images into a bitset mask, without allocating it
+	 */
+	@FunctionalInterface
+	public static interface BitsetDiff {
+		/**
+		 * @param onImg Image with the flash on
+		 * @param offImg Image with the flash off
+		 * @param mask Mask to set the pixels that differ in. Already cleared.
+		 */
+		void diff(BufferedImage onImg, BufferedImage offImg, BitsetBinaryImage mask);
+	}
+
+	/**
+	 * Build a stage that diffs the decoded RGB images into a bitset mask,
+	 * then releases the frames. Each frame keeps its mask, which is cleared
+	 * and diffed into again the next time the frame is used.
+	 * @param width Width of the masks
+	 * @param height Height of the masks
+	 * @param diff Function to diff the images
+	 * @return diff stage
+	 */
+	public static <R> Stage<R> diffStage(int width, int height, BitsetDiff diff) {
+		return new Stage<>("diff", frame -> {
+			BitsetBinaryImage mask = frame.lastBitsetMask(width, height);
+			if (mask == null)
+				mask = new BitsetBinaryImage(width, height);
+			else
+				mask.clear();
+			diff.diff(frame.onImage, frame.offImage, mask);
+			frame.mask = frame.lastMask = mask;
+			frame.timestamps.mark(FrameTimestamps.DIFFED);
+			frame.releaseFrames();
+		});
+	}
+
+	/**
+	 * Build a stage that diffs the decoded images, then releases the frames.
+	 * @param diff Diff generator for RGB images
+	 * @param yuvDiff Diff generator for YUYV images, or null if they're always converted to RGB
+	 * @return diff stage
+	 */
+	public static <R> Stage<R> diffStage(BiFunction<BufferedImage, BufferedImage, BinaryImage> diff, BiFunction<YuyvImage, YuyvImage, BinaryImage> yuvDiff) {
+		return new Stage<>("diff", frame -> {
+			if (frame.onYuyv != null && yuvDiff instanceof YuvDiffGenerator) {
+				final YuvDiffGenerator generator = (YuvDiffGenerator) yuvDiff;
+				final BitsetBinaryImage reuse = frame.lastBitsetMask(generator.getFrameWidth(), generator.getFrameHeight());
+				frame.mask = frame.lastMask = generator.apply(frame.onYuyv, frame.offYuyv, reuse);
+			} else if (frame.onYuyv != null)
+				frame.mask = yuvDiff.apply(frame.onYuyv, frame.offYuyv);
+			else if (diff instanceof RegionDiffGenerator)
+				//Each frame is only in one stage at a time, so nothing else is using its last mask
+				frame.mask = frame.lastMask = ((RegionDiffGenerator<?>) diff).apply(frame.onImage, frame.offImage, frame.lastMask);
+			else
+				frame.mask = diff.apply(frame.onImage, frame.offImage);
+			frame.timestamps.mark(FrameTimestamps.DIFFED);
+			frame.releaseFrames();
+		});
+	}
+
+	protected final FramePairRing source;
+	protected final LatencyHistogram queueLatency;
+	protected final Stage<R>[] stages;
+	/**
+	 * Queue in front of each stage. <code>queues[0]</code> holds the frames
+	 * that aren't being used.
+	 */
+	protected final BlockingQueue<Frame<R>>[] queues;
+	protected final Thread[] threads;
+
+	/**
+	 * Create a pipeline
+	 * @param name Prefix for the names of the threads
+	 * @param source Ring to take frame pairs from
+	 * @param queueLatency Histogram to record how long pairs wait on the ring in
+	 * @param stages Stages to run each frame through
+	 * @param queueCapacity Number of frames that can wait in front of each stage
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ProcessingPipeline(String name, FramePairRing source, LatencyHistogram queueLatency, List<Stage<R>> stages, int queueCapacity) {
+		if (stages.isEmpty())
+			throw new IllegalArgumentException("Pipeline needs at least one stage");
+		this.source = source;
+		this.queueLatency = queueLatency;
+		this.stages = stages.toArray(new Stage[stages.size()]);
+		final int numStages = this.stages.length;
+		//Enough frames for one to be in each stage, and each queue to be full
+		final int numFrames = numStages + (numStages - 1) * queueCapacity;
+		this.queues = new BlockingQueue[numStages];
+		this.queues[0] = new ArrayBlockingQueue<>(numFrames);
+		for (int i = 0; i < numFrames; i++)
+			this.queues[0].add(new Frame<>());
+		for (int i = 1; i < numStages; i++)
+			this.queues[i] = new ArrayBlockingQueue<>(queueCapacity);
+		this.threads = new Thread[numStages];
+		for (int i = 0; i < numStages; i++) {
+			final int stage = i;
+			this.threads[i] = new Thread(() -> runStage(stage));
+			this.threads[i].setName(name + "-" + this.stages[i].getName());
+		}
+	}
+
+	public ProcessingPipeline<R> start() {
+		for (Thread thread : threads)
+			thread.start();
+		return this;
+	}
+
+	public void stop() {
+		for (Thread thread : threads)
+			thread.interrupt();
+	}
+
+	/**
+	 * @return number of stages
+	 */
+	public int getNumStages() {
+		return this.stages.length;
+	}
+
+	/**
+	 * Run a stage until the thread is interrupted
+	 * @param stage index of stage
+	 */
+	protected void runStage(final int stage) {
+		final Consumer<Frame<R>> action = this.stages[stage].action;
+		final BlockingQueue<Frame<R>> input = this.queues[stage];
+		final BlockingQueue<Frame<R>> output = this.queues[(stage + 1) % this.queues.length];
+		final boolean last = stage == this.stages.length - 1;
+		try {
+			while (!Thread.interrupted()) {
+				final Frame<R> frame = input.take();
+				if (stage == 0) {
+					//Wait for the capture thread to complete a pair
+					try {
+						source.take(frame.pair);
+					} catch (InterruptedException e) {
+						input.put(frame);
+						throw e;
+					}
+					queueLatency.record(System.nanoTime() - frame.pair.getPublishTime());
+					frame.timestamps.clear();
+					frame.timestamps.setCaptureTime(frame.pair.getCaptureTime());
+					frame.timestamps.set(FrameTimestamps.CALLBACK, frame.pair.getPublishTime());
+					frame.timestamps.mark(FrameTimestamps.ADMITTED);
+				}
+				try {
+					action.accept(frame);
+				} catch (Exception e) {
+					//Drop the frame
+					e.printStackTrace();
+					frame.clear();
+					this.queues[0].put(frame);
+					continue;
+				}
+				if (last)
+					frame.clear();
+				output.put(frame);
+			}
+		} catch (InterruptedException e) {
+			return;
+		}
+	}
+}
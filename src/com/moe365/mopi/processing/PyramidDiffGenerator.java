@@ -0,0 +1,160 @@
+package com.moe365.mopi.processing;
+
+/**
+ * A coarse-to-fine version of {@link DiffGenerator}.
+ * <p>
+ * The frame is split into blocks of <var>coarseFactor</var> x
+ * <var>coarseFactor</var> pixels, and the center pixel of each block is
+ * tested with a looser tolerance (only green has to increase by
+ * <var>coarseTolerance</var>). Then the full-resolution diff is only
+ * calculated for blocks where that sample (or a sample of one of its 8
+ * neighbors) hit. Because the targets usually cover well under 5% of the
+ * frame, most of the image is never diffed at full resolution.
+ * </p>
+ * <p>
+ * The neighbors are included so we don't cut off the edges of blobs, where
+ * the sampled pixel of a block might just miss the target. Blobs that are
+ * smaller than a block might not be found at all, so <var>coarseFactor</var>
+ * should be a good bit smaller than the smallest target.
+ * </p>
+ * <p>
+ * Blocks are aligned to the frame (not to the region being diffed), so the
+ * output for a region doesn't depend on how the frame is split up (i.e., by
+ * {@link ParallelDiffGenerator}).
+ * </p>
+ * @author mailmindlin
+ * @see DiffGenerator
+ */
+public class PyramidDiffGenerator implements RegionDiffGenerator<BitsetBinaryImage> {
+	public static final int DEFAULT_COARSE_FACTOR = 4;
+	protected final int frameMinX, frameMaxX, frameMinY, frameMaxY;
+	protected final int tolerance;
+	/**
+	 * Tolerance used when testing the coarse samples
+	 */
+	protected final int coarseTolerance;
+	/**
+	 * Width/height of each block, in pixels
+	 */
+	protected final int coarseFactor;
+	/**
+	 * Results of the coarse pass, one per block of the frame. Reused between
+	 * calls; every block that a call reads is sampled (and overwritten) by
+	 * that same call first, so it never has to be cleared. Regions diffed at
+	 * the same time (by {@link ParallelDiffGenerator}) may both sample the
+	 * blocks on their shared border, but they write the same value.
+	 */
+	protected final boolean[] hits;
+	/**
+	 * Number of blocks in each row of {@link #hits}
+	 */
+	protected final int hitsStride;
+
+	/**
+	 * Create a generator, with a coarse tolerance of half of <var>tolerance</var>.
+	 */
+	public PyramidDiffGenerator(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, int tolerance, int coarseFactor) {
+		this(frameMinX, frameMinY, frameMaxX, frameMaxY, tolerance, coarseFactor, tolerance / 2);
+	}
+
+	public PyramidDiffGenerator(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, int tolerance, int coarseFactor, int coarseTolerance) {
+		if (coarseFactor < 1)
+			throw new IllegalArgumentException("Illegal coarse factor: " + coarseFactor);
+		this.frameMinX = frameMinX;
+		this.frameMinY = frameMinY;
+		this.frameMaxX = frameMaxX;
+		this.frameMaxY = frameMaxY;
+		this.tolerance = tolerance;
+		this.coarseFactor = coarseFactor;
+		this.coarseTolerance = coarseTolerance;
+		this.hitsStride = (getFrameWidth() + coarseFactor - 1) / coarseFactor;
+		this.hits = new boolean[this.hitsStride * ((getFrameHeight() + coarseFactor - 1) / coarseFactor)];
+	}
+
+	@Override
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+
+	@Override
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+
+	@Override
+	public BitsetBinaryImage createMask() {
+		return new BitsetBinaryImage(getFrameWidth(), getFrameHeight());
+	}
+
+	@Override
+	public void clearRegion(BitsetBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
+		mask.clear(xMin, yMin, xMax - 1, yMax - 1);
+	}
+
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, BitsetBinaryImage result, int xMin, int yMin, int xMax, int yMax) {
+		if (xMax <= xMin || yMax <= yMin)
+			return;
+		final int factor = this.coarseFactor;
+		final int width = getFrameWidth(), height = getFrameHeight();
+		//Blocks that overlap the region
+		final int uMin = xMin / factor, uMax = (xMax + factor - 1) / factor;
+		final int vMin = yMin / factor, vMax = (yMax + factor - 1) / factor;
+		//Sample a 1-block border around the region too, so we can look at the neighbors of the edge blocks
+		final int sUMin = Math.max(0, uMin - 1), sUMax = Math.min((width + factor - 1) / factor, uMax + 1);
+		final int sVMin = Math.max(0, vMin - 1), sVMax = Math.min((height + factor - 1) / factor, vMax + 1);
+		final boolean[] hits = this.hits;
+		final int stride = this.hitsStride;
+
+		//Coarse pass
+		boolean anyHits = false;
+		for (int v = sVMin; v < sVMax; v++) {
+			//Sample the center of each block (clamped for the partial blocks on the edges)
+			final int y = Math.min(v * factor + factor / 2, height - 1) + frameMinY;
+			for (int u = sUMin; u < sUMax; u++) {
+				final int x = Math.min(u * factor + factor / 2, width - 1) + frameMinX;
+				int dG = on.getGreen(x, y) - off.getGreen(x, y);
+				final boolean hit = dG > coarseTolerance;
+				hits[v * stride + u] = hit;
+				anyHits |= hit;
+			}
+		}
+		if (!anyHits)
+			return;
+
+		//Fine pass
+		for (int v = vMin; v < vMax; v++) {
+			final int bYMin = Math.max(yMin, v * factor), bYMax = Math.min(yMax, (v + 1) * factor);
+			for (int u = uMin; u < uMax; u++) {
+				if (!isNeighborhoodHit(hits, stride, u, v, sUMin, sVMin, sUMax, sVMax))
+					continue;
+				final int bXMin = Math.max(xMin, u * factor), bXMax = Math.min(xMax, (u + 1) * factor);
+				for (int idxY = bYMin; idxY < bYMax; idxY++) {
+					final int y = idxY + frameMinY;
+					for (int idxX = bXMin; idxX < bXMax; idxX++) {
+						final int x = idxX + frameMinX;
+						int dR = on.getRed(x, y) - off.getRed(x, y);
+						int dG = on.getGreen(x, y) - off.getGreen(x, y);
+						//Same predicate as DiffGenerator
+						if (dG > tolerance && (dR < dG - 10 || dR < tolerance))
+							result.set(idxX, idxY);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test if the block at (u, v) or any of its neighbors inside the sampled
+	 * area [sUMin, sUMax) x [sVMin, sVMax) was hit in the coarse pass.
+	 */
+	private static boolean isNeighborhoodHit(boolean[] hits, int stride, int u, int v, int sUMin, int sVMin, int sUMax, int sVMax) {
+		final int nUMin = Math.max(sUMin, u - 1), nUMax = Math.min(sUMax - 1, u + 1);
+		final int nVMin = Math.max(sVMin, v - 1), nVMax = Math.min(sVMax - 1, v + 1);
+		for (int nv = nVMin; nv <= nVMax; nv++)
+			for (int nu = nUMin; nu <= nUMax; nu++)
+				if (hits[nv * stride + nu])
+					return true;
+		return false;
+	}
+}
@@ -0,0 +1,91 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+/**
+ * An {@link ImageFrame} backed by a byte array. Used for frames that don't
+ * come from v4l4j, such as frames recorded to a file.
+ * @author mailmindlin
+ */
+public class RawImageFrame implements ImageFrame {
+	/**
+	 * Read a recorded YUYV frame (i.e., the output of
+	 * <kbd>v4l2-ctl --stream-mmap --stream-count=1 --stream-to=on0.yuv</kbd>)
+	 * from a file.
+	 * @param file File to read
+	 * @param width Width of the frame
+	 * @param height Height of the frame
+	 * @return frame
+	 * @throws IOException if the file couldn't be read
+	 */
+	public static RawImageFrame readYuyv(File file, int width, int height) throws IOException {
+		return new RawImageFrame(Format.YUYV, Files.readAllBytes(file.toPath()), width, height, file.lastModified() * 1000);
+	}
+
+	protected final Format format;
+	protected final byte[] data;
+	protected final int width, height;
+	protected final long captureTime;
+
+	/**
+	 * Create a frame
+	 * @param format Format of the data
+	 * @param data Frame data
+	 * @param width Width of the frame (ignored for JPEG frames)
+	 * @param height Height of the frame (ignored for JPEG frames)
+	 * @param captureTime Capture time of the frame, in microseconds
+	 */
+	public RawImageFrame(Format format, byte[] data, int width, int height, long captureTime) {
+		this.format = format;
+		this.data = data;
+		this.width = width;
+		this.height = height;
+		this.captureTime = captureTime;
+	}
+
+	@Override
+	public Format getFormat() {
+		return this.format;
+	}
+
+	@Override
+	public ByteBuffer getBuffer() {
+		return ByteBuffer.wrap(this.data);
+	}
+
+	@Override
+	public BufferedImage getBufferedImage() {
+		if (this.format == Format.YUYV)
+			return getYuyvImage().toBufferedImage();
+		try {
+			return ImageIO.read(new ByteArrayInputStream(this.data));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public YuyvImage getYuyvImage() {
+		if (this.format != Format.YUYV)
+			throw new UnsupportedOperationException("Frame is not YUYV (format: " + this.format + ")");
+		return new YuyvImage(this.data, this.width, this.height);
+	}
+
+	@Override
+	public long getCaptureTime() {
+		return this.captureTime;
+	}
+
+	@Override
+	public void recycle() {
+		//Nothing to release
+	}
+}
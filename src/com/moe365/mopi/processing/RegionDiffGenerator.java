@@ -0,0 +1,108 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.util.function.BiFunction;
+
+/**
+ * A diff generator that can calculate the difference between two frames one
+ * region at a time, writing into a mask that it creates.
+ * <p>
+ * This lets us do stuff like split a frame into bands and diff them in
+ * parallel (see {@link ParallelDiffGenerator}), without each implementation
+ * having to know about it.
+ * </p>
+ * <p>
+ * All coordinates passed to {@link #diffRegion(ImageRaster, ImageRaster, BinaryImage, int, int, int, int) diffRegion}
+ * are in terms of the mask, so (0, 0) is the pixel at (frameMinX, frameMinY)
+ * in the images.
+ * </p>
+ * @author mailmindlin
+ * @param <M> the type of mask generated
+ */
+public interface RegionDiffGenerator<M extends BinaryImage> extends BiFunction<BufferedImage, BufferedImage, BinaryImage> {
+	/**
+	 * @return the width of the masks generated
+	 */
+	int getFrameWidth();
+
+	/**
+	 * @return the height of the masks generated
+	 */
+	int getFrameHeight();
+
+	/**
+	 * Create an empty mask that covers the entire frame
+	 * @return new mask
+	 */
+	M createMask();
+
+	/**
+	 * Row granularity of the mask. Regions that are diffed concurrently must
+	 * start on a row that is a multiple of this value, so that no two threads
+	 * write to the same part of the mask. For example, an 8x8 tiled mask will
+	 * return 8.
+	 * @return row alignment
+	 */
+	default int getRowAlignment() {
+		return 1;
+	}
+
+	/**
+	 * Diff the pixels in the region [xMin, xMax) x [yMin, yMax), writing the
+	 * result into <var>mask</var>. Implementations may calculate a slightly
+	 * larger region (i.e., rounded out to the nearest tile), but MUST NOT
+	 * write to rows outside of the region after it is rounded to
+	 * {@link #getRowAlignment()}.
+	 * @param on Raster of the image with the flash on
+	 * @param off Raster of the image with the flash off
+	 * @param mask Mask to write to
+	 * @param xMin Left bound of region (inclusive)
+	 * @param yMin Top bound of region (inclusive)
+	 * @param xMax Right bound of region (exclusive)
+	 * @param yMax Bottom bound of region (exclusive)
+	 */
+	void diffRegion(ImageRaster on, ImageRaster off, M mask, int xMin, int yMin, int xMax, int yMax);
+
+	/**
+	 * Clear the region [xMin, xMax) x [yMin, yMax) of a mask, so it can be
+	 * diffed into again without allocating a new one. Like
+	 * {@link #diffRegion(ImageRaster, ImageRaster, BinaryImage, int, int, int, int) diffRegion},
+	 * implementations may clear a slightly larger region (i.e., rounded out to
+	 * the nearest tile, or to whole rows), so clear every region that is
+	 * going to be reused before diffing any of them.
+	 * @param mask Mask to clear, created by {@link #createMask()}
+	 * @param xMin Left bound of region (inclusive)
+	 * @param yMin Top bound of region (inclusive)
+	 * @param xMax Right bound of region (exclusive)
+	 * @param yMax Bottom bound of region (exclusive)
+	 */
+	void clearRegion(M mask, int xMin, int yMin, int xMax, int yMax);
+
+	@Override
+	default BinaryImage apply(BufferedImage onImg, BufferedImage offImg) {
+		return apply(onImg, offImg, null);
+	}
+
+	/**
+	 * Diff the entire frame, reusing a mask from an earlier frame instead of
+	 * allocating a new one.
+	 * @param onImg Image with the flash on
+	 * @param offImg Image with the flash off
+	 * @param reuse Mask returned by an earlier call to this method, which
+	 *            isn't being used anymore, or null to create a new one
+	 * @return the mask
+	 */
+	@SuppressWarnings("unchecked")
+	default BinaryImage apply(BufferedImage onImg, BufferedImage offImg, BinaryImage reuse) {
+		final int width = getFrameWidth(), height = getFrameHeight();
+		M mask;
+		if (reuse == null) {
+			mask = createMask();
+		} else {
+			mask = (M) reuse;
+			clearRegion(mask, 0, 0, width, height);
+		}
+		diffRegion(ImageRaster.wrap(onImg), ImageRaster.wrap(offImg), mask, 0, 0, width, height);
+		return mask;
+	}
+}
@@ -0,0 +1,175 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Replays recorded frame pairs through a processor's
+ * {@link AbstractImageProcessor#offerFrame(ImageFrame, boolean) offerFrame},
+ * like the capture callback would, so the whole pipeline (pairing, queueing,
+ * threading, and whatever the processor's handler does) can be run without
+ * a camera.
+ * <p>
+ * Pairs are read from <kbd>on#.yuv</kbd>/<kbd>off#.yuv</kbd> (raw YUYV, like
+ * <kbd>--test raw</kbd>), or <kbd>on#.png</kbd>/<kbd>off#.png</kbd> (as saved
+ * by <kbd>--save-diff</kbd>). Images are JPEG-encoded when they're loaded, so
+ * the processor has to decode each frame, like it would with a camera.
+ * </p>
+ * <p>
+ * Frames are offered at the camera's frame rate, times the replay speed (so
+ * 1 is real time, and 2 is twice as fast), or as fast as the processor can
+ * take them if the speed is 0 (each pair waits for the previous one to be
+ * taken off of the {@link FramePairRing ring}, so none are dropped). Each
+ * frame is stamped with the time that it was offered.
+ * </p>
+ * @author mailmindlin
+ */
+public class ReplayFrameSource implements Runnable {
+	/**
+	 * How often to check if the processor has taken the last pair, when
+	 * replaying as fast as possible, in nanoseconds
+	 */
+	protected static final long POLL_INTERVAL = 50_000;
+	
+	protected final List<ImageFrame.Format> formats = new ArrayList<>();
+	protected final List<byte[]> onData = new ArrayList<>();
+	protected final List<byte[]> offData = new ArrayList<>();
+	protected final int width, height;
+	protected final AbstractImageProcessor<?> processor;
+	/**
+	 * Called with every flash-on frame (i.e., to stream it), or null
+	 */
+	protected final Consumer<ImageFrame> preview;
+	protected final double fps;
+	protected final double speed;
+	protected final int loops;
+	
+	protected long framesOffered = 0;
+	protected long elapsed = 0;
+	
+	/**
+	 * Create a replay source
+	 * @param dir Directory to load pairs from
+	 * @param width Width of YUYV frames
+	 * @param height Height of YUYV frames
+	 * @param processor Processor to offer frames to
+	 * @param preview Called with every flash-on frame (i.e., to stream it), or null
+	 * @param fps Frame rate of the camera being replayed
+	 * @param speed Replay speed, as a multiple of real time, or 0 to replay as fast as possible
+	 * @param loops Number of times to replay every pair
+	 * @throws IOException if the pairs couldn't be read, or there weren't any
+	 */
+	public ReplayFrameSource(File dir, int width, int height, AbstractImageProcessor<?> processor, Consumer<ImageFrame> preview, double fps, double speed, int loops) throws IOException {
+		if (fps <= 0 || speed < 0)
+			throw new IllegalArgumentException("Invalid replay rate (fps=" + fps + ", speed=" + speed + ")");
+		this.width = width;
+		this.height = height;
+		this.processor = processor;
+		this.preview = preview;
+		this.fps = fps;
+		this.speed = speed;
+		this.loops = loops;
+		for (int i = 0; ; i++) {
+			File onYuv = new File(dir, "on" + i + ".yuv"), offYuv = new File(dir, "off" + i + ".yuv");
+			File onPng = new File(dir, "on" + i + ".png"), offPng = new File(dir, "off" + i + ".png");
+			if (onYuv.exists() && offYuv.exists()) {
+				formats.add(ImageFrame.Format.YUYV);
+				onData.add(Files.readAllBytes(onYuv.toPath()));
+				offData.add(Files.readAllBytes(offYuv.toPath()));
+			} else if (onPng.exists() && offPng.exists()) {
+				formats.add(ImageFrame.Format.JPEG);
+				onData.add(toJpeg(onPng));
+				offData.add(toJpeg(offPng));
+			} else {
+				break;
+			}
+		}
+		if (formats.isEmpty())
+			throw new FileNotFoundException("No frame pairs found in " + dir);
+	}
+	
+	protected static byte[] toJpeg(File file) throws IOException {
+		BufferedImage img = ImageIO.read(file);
+		//The JPEG writer doesn't like alpha channels
+		if (img.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+			BufferedImage converted = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+			converted.getGraphics().drawImage(img, 0, 0, null);
+			img = converted;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(img, "JPEG", out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @return number of pairs loaded
+	 */
+	public int getNumPairs() {
+		return formats.size();
+	}
+	
+	/**
+	 * @return number of frames offered by the last run
+	 */
+	public long getFramesOffered() {
+		return framesOffered;
+	}
+	
+	/**
+	 * @return how long the last run took, in nanoseconds
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+	
+	/**
+	 * Offer every pair (<var>loops</var> times), then return.
+	 */
+	@Override
+	public void run() {
+		final long period = speed > 0 ? (long) (1e9 / (fps * speed)) : 0;
+		final long start = System.nanoTime();
+		long n = 0;
+		for (int loop = 0; loop < loops; loop++) {
+			for (int i = 0; i < formats.size(); i++) {
+				for (int j = 0; j < 2; j++) {
+					final boolean on = j == 0;
+					if (period > 0) {
+						final long deadline = start + n * period;
+						long wait;
+						while ((wait = deadline - System.nanoTime()) > 0)
+							LockSupport.parkNanos(wait);
+					} else if (!on) {
+						//Wait for the processor to take the last pair
+						final FramePairRing ring = processor.getFrameRing();
+						while (!ring.isEmpty() && !Thread.currentThread().isInterrupted())
+							LockSupport.parkNanos(POLL_INTERVAL);
+					}
+					if (Thread.interrupted()) {
+						this.framesOffered = n;
+						this.elapsed = System.nanoTime() - start;
+						return;
+					}
+					ImageFrame frame = new RawImageFrame(formats.get(i), (on ? onData : offData).get(i), width, height, System.nanoTime() / 1000);
+					if (on && preview != null)
+						preview.accept(frame);
+					//Like Main, pass the state that the LED would be switching to
+					processor.offerFrame(frame, !on);
+					n++;
+				}
+			}
+		}
+		this.framesOffered = n;
+		this.elapsed = System.nanoTime() - start;
+	}
+}
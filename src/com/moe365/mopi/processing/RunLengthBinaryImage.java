@@ -0,0 +1,200 @@
+package com.moe365.mopi.processing;
+
+import java.util.Arrays;
+
+/**
+ * A sparse BinaryImage, where each row is stored as a sorted list of runs of
+ * set pixels.
+ * <p>
+ * Diff masks are almost entirely empty, so this takes up a lot less memory
+ * than a <code>boolean[][]</code> or a full tile grid: empty rows don't
+ * have any storage at all, and each run only takes 2 ints. Tests become
+ * binary searches over the runs, and stuff like blob extraction (see
+ * {@link RunLengthLabeler}) can just iterate over the runs without touching
+ * any of the empty pixels.
+ * </p>
+ * <p>
+ * Row <var>y</var> is stored in <code>rows[y]</code> as
+ * <code>{start0, end0, start1, end1, ...}</code>, where starts are inclusive
+ * and ends are exclusive. Runs on a row are sorted, and never touch or
+ * overlap (adjacent runs are merged).
+ * </p>
+ * <p>
+ * Different rows can be written from different threads at the same time,
+ * but a single row can't.
+ * </p>
+ * @author mailmindlin
+ * @see RunLengthDiffGenerator
+ */
+public class RunLengthBinaryImage implements BinaryImage {
+	protected static final int INITIAL_ROW_CAPACITY = 8;
+	protected final int width;
+	protected final int height;
+	/**
+	 * Runs on each row, or null if the row is empty
+	 */
+	protected final int[][] rows;
+	/**
+	 * Number of ints used in each row (2x the number of runs)
+	 */
+	protected final int[] rowLengths;
+
+	public RunLengthBinaryImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.rows = new int[height][];
+		this.rowLengths = new int[height];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Add a run of set pixels on row <var>y</var>. If the run touches or
+	 * overlaps existing runs, they are merged. Appending a run to the right of
+	 * every other run on the row (like when scanning left to right) is cheap;
+	 * anything else has to shift the runs to the right of it.
+	 * @param y Row to add run to
+	 * @param start First x coordinate of the run (inclusive)
+	 * @param end Last x coordinate of the run (exclusive)
+	 */
+	public void addRun(int y, int start, int end) {
+		if (end <= start)
+			return;
+		int[] row = rows[y];
+		int length = rowLengths[y];
+		if (row == null)
+			row = rows[y] = new int[INITIAL_ROW_CAPACITY];
+		//Fast path: append to the end of the row
+		if (length == 0 || row[length - 1] < start) {
+			if (length + 2 > row.length)
+				row = rows[y] = Arrays.copyOf(row, row.length * 2);
+			row[length] = start;
+			row[length + 1] = end;
+			rowLengths[y] = length + 2;
+			return;
+		}
+		if (row[length - 1] == start && row[length - 2] <= start) {
+			//Extend the last run
+			row[length - 1] = Math.max(row[length - 1], end);
+			return;
+		}
+		//Find all runs that touch [start, end], and replace them with their union
+		int first = findRun(row, length, start);//First run with end >= start
+		int last = first;
+		while (last < length && row[last] <= end)
+			last += 2;
+		//Runs [first, last) touch the new run
+		if (first < last) {
+			start = Math.min(start, row[first]);
+			end = Math.max(end, row[last - 1]);
+		}
+		int newLength = length - (last - first) + 2;
+		if (newLength > row.length)
+			row = rows[y] = Arrays.copyOf(row, Math.max(row.length * 2, newLength));
+		System.arraycopy(row, last, row, first + 2, length - last);
+		row[first] = start;
+		row[first + 1] = end;
+		rowLengths[y] = newLength;
+	}
+
+	/**
+	 * Set the pixel at (x, y)
+	 */
+	public void set(int x, int y) {
+		addRun(y, x, x + 1);
+	}
+
+	/**
+	 * Binary search for the index of the first run on a row that ends at or
+	 * after <var>x</var>
+	 * @return index of run (in ints), or <var>length</var> if none
+	 */
+	protected static int findRun(int[] row, int length, int x) {
+		int lo = 0, hi = length / 2;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (row[mid * 2 + 1] < x)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo * 2;
+	}
+
+	@Override
+	public boolean test(int x, int y) {
+		final int length = rowLengths[y];
+		if (length == 0)
+			return false;
+		final int[] row = rows[y];
+		//First run that ends after x
+		int idx = findRun(row, length, x + 1);
+		return idx < length && row[idx] <= x;
+	}
+
+	@Override
+	public boolean testRow(int y, int xMin, int xMax) {
+		final int length = rowLengths[y];
+		if (length == 0 || xMax < xMin)
+			return false;
+		final int[] row = rows[y];
+		int idx = findRun(row, length, xMin + 1);
+		return idx < length && row[idx] <= xMax;
+	}
+
+	@Override
+	public boolean testCol(int x, int yMin, int yMax) {
+		for (int y = yMin; y <= yMax; y++)
+			if (test(x, y))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param y Row
+	 * @return number of runs on the row
+	 */
+	public int getRunCount(int y) {
+		return rowLengths[y] / 2;
+	}
+
+	/**
+	 * Get the runs on a row. Only the first <code>2 * {@link #getRunCount(int) getRunCount(y)}</code>
+	 * values are valid. Do not modify.
+	 * @param y Row
+	 * @return runs, as <code>{start0, end0, start1, end1, ...}</code> (ends exclusive), or null if the row is empty
+	 */
+	public int[] getRuns(int y) {
+		return rows[y];
+	}
+
+	/**
+	 * @return the total number of runs in the image
+	 */
+	public int getTotalRunCount() {
+		int result = 0;
+		for (int length : rowLengths)
+			result += length;
+		return result / 2;
+	}
+
+	/**
+	 * Remove all runs, but keep the allocated rows
+	 */
+	public void clear() {
+		Arrays.fill(rowLengths, 0);
+	}
+
+	/**
+	 * Remove all runs on rows [yMin, yMax), but keep the allocated rows
+	 */
+	public void clearRows(int yMin, int yMax) {
+		Arrays.fill(rowLengths, yMin, yMax, 0);
+	}
+}
@@ -0,0 +1,69 @@
+package com.moe365.mopi.processing;
+
+/**
+ * The same algorithm as {@link DiffGenerator}, except that it builds a
+ * {@link RunLengthBinaryImage} directly while scanning each row, instead of
+ * setting each pixel in a dense mask.
+ * @author mailmindlin
+ * @see DiffGenerator
+ * @see RunLengthBinaryImage
+ */
+public class RunLengthDiffGenerator implements RegionDiffGenerator<RunLengthBinaryImage> {
+	protected final int frameMinX, frameMaxX, frameMinY, frameMaxY;
+	protected final int tolerance;
+
+	public RunLengthDiffGenerator(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, int tolerance) {
+		this.frameMinX = frameMinX;
+		this.frameMinY = frameMinY;
+		this.frameMaxX = frameMaxX;
+		this.frameMaxY = frameMaxY;
+		this.tolerance = tolerance;
+	}
+
+	@Override
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+
+	@Override
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+
+	@Override
+	public RunLengthBinaryImage createMask() {
+		return new RunLengthBinaryImage(getFrameWidth(), getFrameHeight());
+	}
+
+	/**
+	 * Clears every row that overlaps the region (runs aren't split).
+	 */
+	@Override
+	public void clearRegion(RunLengthBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
+		mask.clearRows(yMin, yMax);
+	}
+
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, RunLengthBinaryImage result, int xMin, int yMin, int xMax, int yMax) {
+		for (int idxY = yMin; idxY < yMax; idxY++) {
+			final int y = idxY + frameMinY;
+			//Start of the current run, or -1 if we're not in one
+			int runStart = -1;
+			for (int idxX = xMin; idxX < xMax; idxX++) {
+				final int x = idxX + frameMinX;
+				int dR = on.getRed(x, y) - off.getRed(x, y);
+				int dG = on.getGreen(x, y) - off.getGreen(x, y);
+				//Same predicate as DiffGenerator
+				if (dG > tolerance && (dR < dG - 10 || dR < tolerance)) {
+					if (runStart < 0)
+						runStart = idxX;
+				} else if (runStart >= 0) {
+					result.addRun(idxY, runStart, idxX);
+					runStart = -1;
+				}
+			}
+			if (runStart >= 0)
+				result.addRun(idxY, runStart, xMax);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package com.moe365.mopi.processing;
+
+import java.util.Arrays;
+
+/**
+ * Finds the connected components (blobs) of a BinaryImage in a single pass.
+ * <p>
+ * Each row of the image is split into runs of set pixels. Every run is
+ * merged (with union-find) with the runs on the row above it that it touches
+ * (8-connected, so diagonals count), and then the stats for each blob are
+ * accumulated from its runs. Unlike
+ * {@link com.moe365.mopi.ImageProcessor#boundingBox(BinaryImage, com.moe365.mopi.geom.RectangleBuffer, int, int, int, int) ImageProcessor#boundingBox},
+ * the cost is linear in the size of the image (plus the number of runs), no
+ * matter how cluttered it is, and blobs that are close together aren't
+ * merged.
+ * </p>
+ * <p>
+ * For {@link BitsetBinaryImage}s, runs are found a word at a time with
+ * {@link BitsetBinaryImage#nextSetBit(int, int) nextSetBit} and
+ * {@link BitsetBinaryImage#nextClearBit(int, int) nextClearBit}, and
+ * {@link RunLengthBinaryImage}s' runs are just copied.
+ * </p>
+ * <p>
+ * The results are stored in primitive arrays, which are reused between calls,
+ * so this class is NOT thread safe.
+ * </p>
+ * @author mailmindlin
+ */
+public class RunLengthLabeler {
+	protected static final int INITIAL_CAPACITY = 64;
+
+	//Runs. Ends are exclusive.
+	protected int[] runStart = new int[INITIAL_CAPACITY];
+	protected int[] runEnd = new int[INITIAL_CAPACITY];
+	protected int[] runRow = new int[INITIAL_CAPACITY];
+	/**
+	 * Union-find parent of each run
+	 */
+	protected int[] runParent = new int[INITIAL_CAPACITY];
+	protected int numRuns = 0;
+
+	//Blobs. Maxes are inclusive.
+	protected int[] blobMinX = new int[INITIAL_CAPACITY];
+	protected int[] blobMinY = new int[INITIAL_CAPACITY];
+	protected int[] blobMaxX = new int[INITIAL_CAPACITY];
+	protected int[] blobMaxY = new int[INITIAL_CAPACITY];
+	protected int[] blobCount = new int[INITIAL_CAPACITY];
+	protected long[] blobSumX = new long[INITIAL_CAPACITY];
+	protected long[] blobSumY = new long[INITIAL_CAPACITY];
+	protected int numBlobs = 0;
+
+	/**
+	 * Label the blobs in the region [xMin, xMax] x [yMin, yMax] (inclusive,
+	 * like {@link com.moe365.mopi.ImageProcessor#boundingBox(BinaryImage, com.moe365.mopi.geom.RectangleBuffer, int, int, int, int) boundingBox})
+	 * of an image. Blobs are clipped to the region. The results replace the
+	 * results of any previous call.
+	 * @param img Image to label
+	 * @param xMin Left bound of region (inclusive)
+	 * @param xMax Right bound of region (inclusive)
+	 * @param yMin Top bound of region (inclusive)
+	 * @param yMax Bottom bound of region (inclusive)
+	 * @return number of blobs found
+	 */
+	public int label(BinaryImage img, int xMin, int xMax, int yMin, int yMax) {
+		this.numRuns = 0;
+		this.numBlobs = 0;
+		//Index of the first run on the previous row, and the end of the runs on the previous row
+		int prevStart = 0, prevEnd = 0;
+		for (int y = yMin; y <= yMax; y++) {
+			final int rowStart = this.numRuns;
+			if (img instanceof BitsetBinaryImage)
+				findRuns((BitsetBinaryImage) img, y, xMin, xMax);
+			else if (img instanceof RunLengthBinaryImage)
+				findRuns((RunLengthBinaryImage) img, y, xMin, xMax);
+			else
+				findRuns(img, y, xMin, xMax);
+			final int rowEnd = this.numRuns;
+
+			//Merge with overlapping runs on the row above
+			int p = prevStart;
+			for (int r = rowStart; r < rowEnd; r++) {
+				final int start = runStart[r], end = runEnd[r];
+				//Skip runs above that end before this run (including the diagonal)
+				while (p < prevEnd && runEnd[p] < start)
+					p++;
+				//Every run above that starts before the end of this one (including the diagonal) touches it
+				for (int q = p; q < prevEnd && runStart[q] <= end; q++)
+					union(r, q);
+			}
+			prevStart = rowStart;
+			prevEnd = rowEnd;
+		}
+
+		//Accumulate stats for each blob. The parent of each root run is set
+		//to -(blob index + 1), so we can tell them apart from the other runs.
+		for (int r = 0; r < this.numRuns; r++) {
+			int root = find(r);
+			int blob;
+			if (runParent[root] == root) {
+				blob = newBlob();
+				runParent[root] = -(blob + 1);
+			} else {
+				blob = -runParent[root] - 1;
+			}
+			final int start = runStart[r], end = runEnd[r], y = runRow[r];
+			final int length = end - start;
+			blobMinX[blob] = Math.min(blobMinX[blob], start);
+			blobMaxX[blob] = Math.max(blobMaxX[blob], end - 1);
+			blobMinY[blob] = Math.min(blobMinY[blob], y);
+			blobMaxY[blob] = Math.max(blobMaxY[blob], y);
+			blobCount[blob] += length;
+			//Sum of start..end-1
+			blobSumX[blob] += ((long) (start + end - 1)) * length / 2;
+			blobSumY[blob] += ((long) y) * length;
+		}
+		return this.numBlobs;
+	}
+
+	/**
+	 * Find the root of a run. Root runs are their own parent, except when
+	 * accumulating the stats (where they're negative).
+	 */
+	private int find(int run) {
+		final int[] parent = this.runParent;
+		int root = run;
+		while (parent[root] >= 0 && parent[root] != root)
+			root = parent[root];
+		//Path compression
+		while (run != root) {
+			int next = parent[run];
+			parent[run] = root;
+			run = next;
+		}
+		return root;
+	}
+
+	private void union(int a, int b) {
+		int rootA = find(a), rootB = find(b);
+		if (rootA == rootB)
+			return;
+		//Keep the earlier run as the root
+		if (rootA < rootB)
+			runParent[rootB] = rootA;
+		else
+			runParent[rootA] = rootB;
+	}
+
+	/**
+	 * Find the runs on row <var>y</var> of a bitset image
+	 */
+	protected void findRuns(BitsetBinaryImage img, int y, int xMin, int xMax) {
+		int x = img.nextSetBit(y, xMin);
+		while (x >= 0 && x <= xMax) {
+			int end = Math.min(img.nextClearBit(y, x), xMax + 1);
+			addRun(x, end, y);
+			if (end > xMax)
+				break;
+			x = img.nextSetBit(y, end);
+		}
+	}
+
+	/**
+	 * Copy the runs on row <var>y</var> of a run-length image, clipped to [xMin, xMax]
+	 */
+	protected void findRuns(RunLengthBinaryImage img, int y, int xMin, int xMax) {
+		final int count = img.getRunCount(y);
+		if (count == 0)
+			return;
+		final int[] runs = img.getRuns(y);
+		for (int i = RunLengthBinaryImage.findRun(runs, count * 2, xMin + 1); i < count * 2 && runs[i] <= xMax; i += 2)
+			addRun(Math.max(xMin, runs[i]), Math.min(xMax + 1, runs[i + 1]), y);
+	}
+
+	/**
+	 * Find the runs on row <var>y</var> of any image
+	 */
+	protected void findRuns(BinaryImage img, int y, int xMin, int xMax) {
+		int x = xMin;
+		while (x <= xMax) {
+			if (!img.test(x, y)) {
+				x++;
+				continue;
+			}
+			int start = x;
+			while (x <= xMax && img.test(x, y))
+				x++;
+			addRun(start, x, y);
+		}
+	}
+
+	private void addRun(int start, int end, int y) {
+		int idx = this.numRuns++;
+		if (idx >= runStart.length) {
+			int capacity = runStart.length * 2;
+			runStart = Arrays.copyOf(runStart, capacity);
+			runEnd = Arrays.copyOf(runEnd, capacity);
+			runRow = Arrays.copyOf(runRow, capacity);
+			runParent = Arrays.copyOf(runParent, capacity);
+		}
+		runStart[idx] = start;
+		runEnd[idx] = end;
+		runRow[idx] = y;
+		runParent[idx] = idx;
+	}
+
+	private int newBlob() {
+		int idx = this.numBlobs++;
+		if (idx >= blobMinX.length) {
+			int capacity = blobMinX.length * 2;
+			blobMinX = Arrays.copyOf(blobMinX, capacity);
+			blobMinY = Arrays.copyOf(blobMinY, capacity);
+			blobMaxX = Arrays.copyOf(blobMaxX, capacity);
+			blobMaxY = Arrays.copyOf(blobMaxY, capacity);
+			blobCount = Arrays.copyOf(blobCount, capacity);
+			blobSumX = Arrays.copyOf(blobSumX, capacity);
+			blobSumY = Arrays.copyOf(blobSumY, capacity);
+		}
+		blobMinX[idx] = Integer.MAX_VALUE;
+		blobMinY[idx] = Integer.MAX_VALUE;
+		blobMaxX[idx] = Integer.MIN_VALUE;
+		blobMaxY[idx] = Integer.MIN_VALUE;
+		blobCount[idx] = 0;
+		blobSumX[idx] = 0;
+		blobSumY[idx] = 0;
+		return idx;
+	}
+
+	/**
+	 * @return number of blobs found by the last call to {@link #label(BinaryImage, int, int, int, int) label}
+	 */
+	public int getBlobCount() {
+		return this.numBlobs;
+	}
+
+	/**
+	 * @return number of runs found by the last call to {@link #label(BinaryImage, int, int, int, int) label}
+	 */
+	public int getRunCount() {
+		return this.numRuns;
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return leftmost x coordinate of the blob (inclusive)
+	 */
+	public int getMinX(int blob) {
+		return blobMinX[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return topmost y coordinate of the blob (inclusive)
+	 */
+	public int getMinY(int blob) {
+		return blobMinY[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return rightmost x coordinate of the blob (inclusive)
+	 */
+	public int getMaxX(int blob) {
+		return blobMaxX[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return bottommost y coordinate of the blob (inclusive)
+	 */
+	public int getMaxY(int blob) {
+		return blobMaxY[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return number of pixels in the blob
+	 */
+	public int getPixelCount(int blob) {
+		return blobCount[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return x coordinate of the blob's centroid
+	 */
+	public double getCentroidX(int blob) {
+		return ((double) blobSumX[blob]) / blobCount[blob];
+	}
+
+	/**
+	 * @param blob Index of blob
+	 * @return y coordinate of the blob's centroid
+	 */
+	public double getCentroidY(int blob) {
+		return ((double) blobSumY[blob]) / blobCount[blob];
+	}
+}
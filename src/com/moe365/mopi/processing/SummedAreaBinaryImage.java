@@ -0,0 +1,127 @@
+package com.moe365.mopi.processing;
+
+import java.util.Arrays;
+
+/**
+ * A BinaryImage backed by a summed-area table (integral image), so
+ * {@link #count(int, int, int, int) count} and
+ * {@link #anyIn(int, int, int, int) anyIn} take constant time, no matter how
+ * big the rectangle is.
+ * <p>
+ * Entry <code>(x + 1, y + 1)</code> of the table is the number of pixels set
+ * in the rectangle from (0, 0) to (x, y), so the count for any rectangle is
+ * just 4 lookups:
+ *
+ * <pre>
+ * count = S[yMax + 1][xMax + 1] - S[yMin][xMax + 1] - S[yMax + 1][xMin] + S[yMin][xMin]
+ * </pre>
+ * </p>
+ * <p>
+ * The table is built one region at a time, and is integrated while it's
+ * built (see {@link SummedAreaDiffGenerator}), so there isn't a second pass
+ * over the frame. Sums are relative to the corner of the region that they
+ * were built in, and the row above and column to the left of the region are
+ * zeroed, so queries are only valid if they're entirely inside of one
+ * region. Because of that, regions must not touch (not even at a corner),
+ * and each one is built by a single thread.
+ * </p>
+ * @author mailmindlin
+ * @see SummedAreaDiffGenerator
+ */
+public class SummedAreaBinaryImage implements BinaryImage {
+	protected final int width;
+	protected final int height;
+	/**
+	 * Width of each row of the table (one more than the image)
+	 */
+	protected final int stride;
+	/**
+	 * The table
+	 */
+	protected final int[] sums;
+
+	public SummedAreaBinaryImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.stride = width + 1;
+		this.sums = new int[stride * (height + 1)];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Clear every pixel
+	 */
+	public void clear() {
+		Arrays.fill(this.sums, 0);
+	}
+
+	/**
+	 * Clear the region [xMin, xMax) x [yMin, yMax), along with the row above
+	 * it and the column to its left.
+	 */
+	public void clear(int xMin, int yMin, int xMax, int yMax) {
+		if (xMax <= xMin || yMax <= yMin)
+			return;
+		final int[] sums = this.sums;
+		final int stride = this.stride;
+		for (int y = yMin; y <= yMax; y++)
+			Arrays.fill(sums, y * stride + xMin, y * stride + xMax + 1, 0);
+	}
+
+	/**
+	 * Build the region [xMin, xMax) x [yMin, yMax) of the table from the
+	 * pixels of another image (i.e., to convert it).
+	 * @param src Image to copy
+	 */
+	public void integrate(BinaryImage src, int xMin, int yMin, int xMax, int yMax) {
+		if (xMax <= xMin || yMax <= yMin)
+			return;
+		final int[] sums = this.sums;
+		final int stride = this.stride;
+		//Zero the row above and the column to the left, so the sums start at this region
+		Arrays.fill(sums, yMin * stride + xMin, yMin * stride + xMax + 1, 0);
+		for (int y = yMin; y < yMax; y++) {
+			final int row = (y + 1) * stride;
+			sums[row + xMin] = 0;
+			int rowSum = 0;
+			for (int x = xMin; x < xMax; x++) {
+				if (src.test(x, y))
+					rowSum++;
+				sums[row + x + 1] = rowSum + sums[row - stride + x + 1];
+			}
+		}
+	}
+
+	@Override
+	public int count(int xMin, int yMin, int xMax, int yMax) {
+		final int top = yMin * stride, bottom = (yMax + 1) * stride;
+		return sums[bottom + xMax + 1] - sums[top + xMax + 1] - sums[bottom + xMin] + sums[top + xMin];
+	}
+
+	@Override
+	public boolean anyIn(int xMin, int yMin, int xMax, int yMax) {
+		return count(xMin, yMin, xMax, yMax) != 0;
+	}
+
+	@Override
+	public boolean test(int x, int y) {
+		return count(x, y, x, y) != 0;
+	}
+
+	@Override
+	public boolean testRow(int y, int xMin, int xMax) {
+		return xMax >= xMin && count(xMin, y, xMax, y) != 0;
+	}
+
+	@Override
+	public boolean testCol(int x, int yMin, int yMax) {
+		return yMax >= yMin && count(x, yMin, x, yMax) != 0;
+	}
+}
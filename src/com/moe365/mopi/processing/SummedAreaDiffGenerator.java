@@ -0,0 +1,91 @@
+package com.moe365.mopi.processing;
+
+import java.util.Arrays;
+
+/**
+ * The same algorithm as {@link DiffGenerator}, except that it writes to a
+ * {@link SummedAreaBinaryImage}, so every occupancy test that
+ * {@link com.moe365.mopi.ImageProcessor ImageProcessor} does while searching
+ * for blobs is constant-time.
+ * <p>
+ * The table is integrated as each row is diffed, so it's ready as soon as
+ * the diff is done. Since the sums on each row depend on the rows above
+ * them, a region is never split between threads (see
+ * {@link #getRowAlignment()}).
+ * </p>
+ * @author mailmindlin
+ * @see DiffGenerator
+ * @see SummedAreaBinaryImage
+ */
+public class SummedAreaDiffGenerator implements RegionDiffGenerator<SummedAreaBinaryImage> {
+	protected final int frameMinX, frameMaxX, frameMinY, frameMaxY;
+	protected final int tolerance;
+
+	public SummedAreaDiffGenerator(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, int tolerance) {
+		this.frameMinX = frameMinX;
+		this.frameMinY = frameMinY;
+		this.frameMaxX = frameMaxX;
+		this.frameMaxY = frameMaxY;
+		this.tolerance = tolerance;
+	}
+
+	@Override
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+
+	@Override
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+
+	@Override
+	public SummedAreaBinaryImage createMask() {
+		return new SummedAreaBinaryImage(getFrameWidth(), getFrameHeight());
+	}
+
+	/**
+	 * Each row of the table depends on the one above it, so regions can't be
+	 * split up.
+	 * @return the height of the frame
+	 */
+	@Override
+	public int getRowAlignment() {
+		return Math.max(1, getFrameHeight());
+	}
+
+	@Override
+	public void clearRegion(SummedAreaBinaryImage mask, int xMin, int yMin, int xMax, int yMax) {
+		mask.clear(xMin, yMin, xMax, yMax);
+	}
+
+	/**
+	 * Diff the region, and integrate it into the table at the same time. The
+	 * sums are relative to the corner of the region, so regions that are
+	 * diffed into the same mask must not touch.
+	 */
+	@Override
+	public void diffRegion(ImageRaster on, ImageRaster off, SummedAreaBinaryImage result, int xMin, int yMin, int xMax, int yMax) {
+		if (xMax <= xMin || yMax <= yMin)
+			return;
+		final int[] sums = result.sums;
+		final int stride = result.stride;
+		//Zero the row above and the column to the left, so the sums start at this region
+		Arrays.fill(sums, yMin * stride + xMin, yMin * stride + xMax + 1, 0);
+		for (int idxY = yMin; idxY < yMax; idxY++) {
+			final int y = idxY + frameMinY;
+			final int row = (idxY + 1) * stride;
+			sums[row + xMin] = 0;
+			int rowSum = 0;
+			for (int idxX = xMin; idxX < xMax; idxX++) {
+				final int x = idxX + frameMinX;
+				int dR = on.getRed(x, y) - off.getRed(x, y);
+				int dG = on.getGreen(x, y) - off.getGreen(x, y);
+				//Same predicate as DiffGenerator
+				if (dG > tolerance && (dR < dG - 10 || dR < tolerance))
+					rowSum++;
+				sums[row + idxX + 1] = rowSum + sums[row - stride + idxX + 1];
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * A fake camera, which generates JPEG frames of a scene with moving
+ * retroreflective targets, alternating between the flash being on and off
+ * (like the LED being toggled every frame).
+ * <p>
+ * Each frame is the scene, plus one of a few precomputed sensor noise
+ * patterns. On flash-on frames, the targets are drawn bright green. The
+ * targets move at a constant speed, and bounce off of the edges of the frame.
+ * Frames are JPEG-encoded at the given quality, like a
+ * {@link au.edu.jcu.v4l4j.JPEGFrameGrabber JPEGFrameGrabber}'s output, and
+ * delivered on this source's thread at the given framerate. If generating a
+ * frame takes longer than the frame interval, the source falls behind
+ * instead of trying to catch up, and the frame is counted as late.
+ * </p>
+ * @author mailmindlin
+ * @see ReplayFrameSource
+ */
+public class SyntheticFrameSource implements Runnable {
+	/**
+	 * Number of sensor noise patterns to cycle through
+	 */
+	protected static final int NOISE_FRAMES = 4;
+	/**
+	 * Color of a lit target, in BGR order
+	 */
+	protected static final byte[] TARGET_BGR = {0x40, (byte) 0xFF, 0x20};
+	
+	/**
+	 * Handles frames as they are generated
+	 */
+	@FunctionalInterface
+	public static interface FrameHandler {
+		/**
+		 * @param frame Frame generated
+		 * @param flash Whether the flash was on when the frame was 'captured'
+		 */
+		void onFrame(ImageFrame frame, boolean flash);
+	}
+	
+	protected final int width, height;
+	protected final double fps;
+	protected final FrameHandler handler;
+	/**
+	 * Scene + noise
+	 */
+	protected final byte[][] backgrounds = new byte[NOISE_FRAMES][];
+	protected final BufferedImage image;
+	protected final byte[] pixels;
+	/*
+	 * Target state, in pixels and pixels/second
+	 */
+	protected final double[] targetX, targetY, targetVX, targetVY;
+	protected final int targetWidth, targetHeight;
+	
+	protected final ImageWriter writer;
+	protected final ImageWriteParam writeParam;
+	protected final ByteArrayOutputStream jpegBuffer = new ByteArrayOutputStream();
+	
+	protected volatile long framesGenerated = 0;
+	protected volatile long lateFrames = 0;
+	protected Thread thread;
+	
+	/**
+	 * Create a source
+	 * @param width Width of the frames
+	 * @param height Height of the frames
+	 * @param fps Framerate
+	 * @param numTargets Number of targets
+	 * @param speed Speed of the targets, in frame widths per second
+	 * @param noise Maximum sensor noise, per channel (0-255)
+	 * @param jpegQuality JPEG quality (1-100)
+	 * @param handler Called with every frame
+	 */
+	public SyntheticFrameSource(int width, int height, double fps, int numTargets, double speed, int noise, int jpegQuality, FrameHandler handler) {
+		if (fps <= 0)
+			throw new IllegalArgumentException("Invalid framerate: " + fps);
+		if (jpegQuality < 1 || jpegQuality > 100)
+			throw new IllegalArgumentException("JPEG quality must be 1-100 (was " + jpegQuality + ")");
+		this.width = width;
+		this.height = height;
+		this.fps = fps;
+		this.handler = handler;
+		
+		Random random = new Random(365);
+		//A dim, cluttered scene
+		final byte[] scene = new byte[width * height * 3];
+		for (int i = 0; i < scene.length; i++)
+			scene[i] = (byte) random.nextInt(0x80);
+		for (int i = 0; i < NOISE_FRAMES; i++) {
+			byte[] background = backgrounds[i] = new byte[scene.length];
+			for (int j = 0; j < scene.length; j++)
+				background[j] = (byte) Math.min(0xFF, (scene[j] & 0xFF) + (noise > 0 ? random.nextInt(noise + 1) : 0));
+		}
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		this.pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		
+		//About the shape of the boiler tape
+		this.targetWidth = Math.max(2, width / 16);
+		this.targetHeight = Math.max(1, height / 24);
+		this.targetX = new double[numTargets];
+		this.targetY = new double[numTargets];
+		this.targetVX = new double[numTargets];
+		this.targetVY = new double[numTargets];
+		for (int i = 0; i < numTargets; i++) {
+			targetX[i] = random.nextInt(Math.max(1, width - targetWidth));
+			targetY[i] = random.nextInt(Math.max(1, height - targetHeight));
+			final double angle = random.nextDouble() * 2 * Math.PI;
+			targetVX[i] = Math.cos(angle) * speed * width;
+			targetVY[i] = Math.sin(angle) * speed * width;
+		}
+		
+		this.writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		this.writeParam = writer.getDefaultWriteParam();
+		this.writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		this.writeParam.setCompressionQuality(jpegQuality / 100f);
+	}
+	
+	/**
+	 * Start generating frames on a new thread
+	 * @return self
+	 */
+	public SyntheticFrameSource start() {
+		this.thread = new Thread(this, "SyntheticCamera");
+		this.thread.start();
+		return this;
+	}
+	
+	public void stop() {
+		if (this.thread != null)
+			this.thread.interrupt();
+	}
+	
+	/**
+	 * @return number of frames generated so far
+	 */
+	public long getFramesGenerated() {
+		return framesGenerated;
+	}
+	
+	/**
+	 * @return number of frames that couldn't be generated in time
+	 */
+	public long getLateFrames() {
+		return lateFrames;
+	}
+	
+	@Override
+	public void run() {
+		final long period = (long) (1e9 / fps);
+		final double dt = 1.0 / fps;
+		long deadline = System.nanoTime();
+		for (long n = 0; !Thread.interrupted(); n++) {
+			final boolean flash = (n & 1) == 0;
+			final ImageFrame frame;
+			try {
+				frame = render(flash, (int) (n % NOISE_FRAMES));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			moveTargets(dt);
+			handler.onFrame(frame, flash);
+			framesGenerated = n + 1;
+			
+			deadline += period;
+			long wait = deadline - System.nanoTime();
+			if (wait < 0) {
+				//Don't try to catch up
+				lateFrames++;
+				deadline = System.nanoTime();
+			}
+			while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+				LockSupport.parkNanos(wait);
+				wait = deadline - System.nanoTime();
+			}
+		}
+	}
+	
+	/**
+	 * Render and encode a frame
+	 */
+	protected ImageFrame render(boolean flash, int noiseFrame) throws IOException {
+		System.arraycopy(backgrounds[noiseFrame], 0, pixels, 0, pixels.length);
+		if (flash) {
+			for (int i = 0; i < targetX.length; i++) {
+				final int x0 = (int) targetX[i], y0 = (int) targetY[i];
+				final int x1 = Math.min(width, x0 + targetWidth), y1 = Math.min(height, y0 + targetHeight);
+				for (int y = y0; y < y1; y++) {
+					for (int idx = (y * width + x0) * 3, end = (y * width + x1) * 3; idx < end; idx += 3) {
+						pixels[idx] = TARGET_BGR[0];
+						pixels[idx + 1] = TARGET_BGR[1];
+						pixels[idx + 2] = TARGET_BGR[2];
+					}
+				}
+			}
+		}
+		jpegBuffer.reset();
+		try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(jpegBuffer)) {
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), writeParam);
+		}
+		return new RawImageFrame(ImageFrame.Format.JPEG, jpegBuffer.toByteArray(), width, height, System.nanoTime() / 1000);
+	}
+	
+	protected void moveTargets(double dt) {
+		for (int i = 0; i < targetX.length; i++) {
+			targetX[i] += targetVX[i] * dt;
+			targetY[i] += targetVY[i] * dt;
+			if (targetX[i] < 0 || targetX[i] > width - targetWidth) {
+				targetVX[i] = -targetVX[i];
+				targetX[i] = Math.max(0, Math.min(width - targetWidth, targetX[i]));
+			}
+			if (targetY[i] < 0 || targetY[i] > height - targetHeight) {
+				targetVY[i] = -targetVY[i];
+				targetY[i] = Math.max(0, Math.min(height - targetHeight, targetY[i]));
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package com.moe365.mopi.processing;
+
+import com.moe365.mopi.geom.ResultFrame;
+
+/**
+ * Tracks targets between frames with a constant-velocity alpha-beta filter,
+ * so their positions can be extrapolated to the time that they're sent to
+ * the Rio.
+ * <p>
+ * By the time a result is sent, it describes where the target was when the
+ * frame was captured, which can be a while ago if the robot is turning. Each
+ * track keeps a smoothed position and velocity of the target's center. When
+ * a new frame's rectangles come in, each is matched to the closest track (if
+ * it's within {@link #getGate() the gate}), and that track is corrected
+ * towards it:
+ *
+ * <pre>
+ * predicted = x + v * dt
+ * residual  = measured - predicted
+ * x         = predicted + alpha * residual
+ * v         = v + beta * residual / dt
+ * </pre>
+ *
+ * Rectangles that don't match any track start a new one (with no velocity),
+ * and tracks that haven't matched anything for a few frames are dropped.
+ * </p>
+ * <p>
+ * All state is kept in primitive arrays, so updating doesn't allocate. Not
+ * thread safe.
+ * </p>
+ * @author mailmindlin
+ * @see com.moe365.mopi.client.TrackedRioPacket
+ */
+public class TargetTracker {
+	public static final double DEFAULT_ALPHA = 0.5;
+	public static final double DEFAULT_BETA = 0.15;
+	/**
+	 * Default maximum distance (in frame widths/heights) between a track and
+	 * a rectangle for them to match
+	 */
+	public static final double DEFAULT_GATE = 0.1;
+	/**
+	 * Maximum number of tracks
+	 */
+	public static final int MAX_TRACKS = 8;
+	/**
+	 * Number of frames that a track can go without a match before it's
+	 * dropped
+	 */
+	public static final int MAX_MISSES = 3;
+	/**
+	 * Latencies longer than this (in microseconds) are assumed to be clock
+	 * errors, and aren't extrapolated over
+	 */
+	public static final long MAX_LATENCY = 500_000;
+
+	protected final double alpha;
+	protected final double beta;
+	protected final double gate;
+
+	/*
+	 * Track state. Positions are of the center of the target, in frame
+	 * widths/heights; velocities are per microsecond.
+	 */
+	protected final double[] x = new double[MAX_TRACKS];
+	protected final double[] y = new double[MAX_TRACKS];
+	protected final double[] vx = new double[MAX_TRACKS];
+	protected final double[] vy = new double[MAX_TRACKS];
+	protected final double[] width = new double[MAX_TRACKS];
+	protected final double[] height = new double[MAX_TRACKS];
+	protected final long[] lastUpdate = new long[MAX_TRACKS];
+	protected final int[] misses = new int[MAX_TRACKS];
+	protected final boolean[] active = new boolean[MAX_TRACKS];
+	protected final boolean[] matched = new boolean[MAX_TRACKS];
+
+	/*
+	 * Targets in the last frame, in the same order as its rectangles (largest
+	 * first)
+	 */
+	protected final int[] targetTracks = new int[MAX_TRACKS];
+	protected final double[] measuredX = new double[MAX_TRACKS];
+	protected final double[] measuredY = new double[MAX_TRACKS];
+	protected int numTargets = 0;
+	/**
+	 * Capture time of the last frame, in microseconds
+	 */
+	protected long captureTime = 0;
+
+	public TargetTracker() {
+		this(DEFAULT_ALPHA, DEFAULT_BETA, DEFAULT_GATE);
+	}
+
+	/**
+	 * Create a tracker
+	 * @param alpha Position gain (0 to 1). Higher values follow the measurements more closely.
+	 * @param beta Velocity gain (0 to 1)
+	 * @param gate Maximum distance between a track and a rectangle for them to match
+	 */
+	public TargetTracker(double alpha, double beta, double gate) {
+		if (alpha <= 0 || alpha > 1 || beta < 0 || beta > 1)
+			throw new IllegalArgumentException("Gains must be in (0, 1] (alpha=" + alpha + ", beta=" + beta + ")");
+		this.alpha = alpha;
+		this.beta = beta;
+		this.gate = gate;
+	}
+
+	public double getGate() {
+		return gate;
+	}
+
+	/**
+	 * Update the tracks with a frame's results
+	 * @param result Rectangles found, sorted by area (largest first). Only
+	 *            the {@value #MAX_TRACKS} largest are tracked.
+	 */
+	public void update(ResultFrame result) {
+		final long time = result.getCaptureTime();
+		this.captureTime = time;
+		for (int t = 0; t < MAX_TRACKS; t++)
+			matched[t] = false;
+
+		final int numTargets = Math.min(result.size(), MAX_TRACKS);
+		for (int i = 0; i < numTargets; i++) {
+			final double mx = result.getX(i) + result.getWidth(i) / 2;
+			final double my = result.getY(i) + result.getHeight(i) / 2;
+			this.measuredX[i] = mx;
+			this.measuredY[i] = my;
+
+			//Find the closest track (at the time of this frame)
+			int best = -1;
+			double bestDist = gate * gate;
+			for (int t = 0; t < MAX_TRACKS; t++) {
+				if (!active[t] || matched[t])
+					continue;
+				final double dt = time - lastUpdate[t];
+				final double dx = x[t] + vx[t] * dt - mx;
+				final double dy = y[t] + vy[t] * dt - my;
+				final double dist = dx * dx + dy * dy;
+				if (dist <= bestDist) {
+					best = t;
+					bestDist = dist;
+				}
+			}
+
+			if (best < 0) {
+				best = allocateTrack();
+				x[best] = mx;
+				y[best] = my;
+				vx[best] = vy[best] = 0;
+				active[best] = true;
+			} else {
+				final double dt = time - lastUpdate[best];
+				final double px = x[best] + vx[best] * dt, py = y[best] + vy[best] * dt;
+				final double rx = mx - px, ry = my - py;
+				x[best] = px + alpha * rx;
+				y[best] = py + alpha * ry;
+				if (dt > 0) {
+					vx[best] += beta * rx / dt;
+					vy[best] += beta * ry / dt;
+				}
+			}
+			width[best] = result.getWidth(i);
+			height[best] = result.getHeight(i);
+			lastUpdate[best] = time;
+			misses[best] = 0;
+			matched[best] = true;
+			targetTracks[i] = best;
+		}
+		this.numTargets = numTargets;
+
+		//Age tracks that weren't seen
+		for (int t = 0; t < MAX_TRACKS; t++)
+			if (active[t] && !matched[t] && ++misses[t] > MAX_MISSES)
+				active[t] = false;
+	}
+
+	/**
+	 * Find a free track, or the one that's gone the longest without a match
+	 */
+	protected int allocateTrack() {
+		int result = -1;
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			if (!active[t])
+				return t;
+			if (!matched[t] && (result < 0 || misses[t] > misses[result]))
+				result = t;
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of targets found in the last frame
+	 */
+	public int getNumTargets() {
+		return this.numTargets;
+	}
+
+	/**
+	 * @return capture time of the last frame, in microseconds
+	 */
+	public long getCaptureTime() {
+		return this.captureTime;
+	}
+
+	/**
+	 * Get how long ago the last frame was captured, or 0 if that doesn't make
+	 * sense (i.e., the capture time came from a different clock)
+	 * @param now Current time, in microseconds
+	 * @return latency, in microseconds
+	 */
+	public long getLatency(long now) {
+		final long latency = now - this.captureTime;
+		return (latency < 0 || latency > MAX_LATENCY) ? 0 : latency;
+	}
+
+	/**
+	 * @return measured x coordinate of the left side of target <var>i</var>
+	 */
+	public double getMeasuredX(int i) {
+		return measuredX[i] - width[targetTracks[i]] / 2;
+	}
+
+	/**
+	 * @return measured y coordinate of the top of target <var>i</var>
+	 */
+	public double getMeasuredY(int i) {
+		return measuredY[i] - height[targetTracks[i]] / 2;
+	}
+
+	public double getWidth(int i) {
+		return width[targetTracks[i]];
+	}
+
+	public double getHeight(int i) {
+		return height[targetTracks[i]];
+	}
+
+	/**
+	 * Extrapolate the x coordinate of the left side of target <var>i</var>
+	 * @param now Time to extrapolate to, in microseconds
+	 * @return predicted x coordinate
+	 */
+	public double getPredictedX(int i, long now) {
+		final int t = targetTracks[i];
+		return x[t] + vx[t] * getLatency(now) - width[t] / 2;
+	}
+
+	/**
+	 * Extrapolate the y coordinate of the top of target <var>i</var>
+	 * @param now Time to extrapolate to, in microseconds
+	 * @return predicted y coordinate
+	 */
+	public double getPredictedY(int i, long now) {
+		final int t = targetTracks[i];
+		return y[t] + vy[t] * getLatency(now) - height[t] / 2;
+	}
+}
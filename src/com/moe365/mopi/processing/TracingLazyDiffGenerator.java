@@ -1,6 +1,7 @@
 package com.moe365.mopi.processing;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.function.BiFunction;
 
 @Deprecated
@@ -73,19 +74,25 @@ public class TracingLazyDiffGenerator implements BiFunction<BufferedImage, Buffe
 		int[] onPixels = new int[64];
 		int[] offPixels = new int[64];
 		
+		final ImageRaster on = ImageRaster.wrap(onImg);
+		final ImageRaster off = ImageRaster.wrap(offImg);
+		
 		for (int v = 0; v < height / 8; v++) {
 			long[] tilesRow = tiles[v];
 			for (int u = 0; u < width / 8; u++) {
-				onImg.getRGB(u * 8, v * 8, 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, 8, 8, offPixels, 0, 8);
+				on.getRGB(u * 8, v * 8, 8, 8, onPixels, 0, 8);
+				off.getRGB(u * 8, v * 8, 8, 8, offPixels, 0, 8);
 				tilesRow[u] = evalTile(onPixels, offPixels);
 			}
 			
 			if (width % 8 != 0) {
 				int u = width / 8;
-				//Rightmost tile column isn't complete
-				onImg.getRGB(u * 8, v * 8, width - u, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, width - u, 8, offPixels, 0, 8);
+				//Rightmost tile column isn't complete. Columns past the edge of the
+				//image aren't overwritten, so make sure they don't differ
+				Arrays.fill(onPixels, 0);
+				Arrays.fill(offPixels, 0);
+				on.getRGB(u * 8, v * 8, width - u * 8, 8, onPixels, 0, 8);
+				off.getRGB(u * 8, v * 8, width - u * 8, 8, offPixels, 0, 8);
 				tilesRow[u] = evalTile(onPixels, offPixels);
 			}
 		}
@@ -93,18 +100,23 @@ public class TracingLazyDiffGenerator implements BiFunction<BufferedImage, Buffe
 			//Complete bottom tile row
 			int v = height / 8;
 			long[] tilesRow = tiles[v];
+			//Rows past the bottom of the image aren't overwritten, so make sure they don't differ
+			Arrays.fill(onPixels, 0);
+			Arrays.fill(offPixels, 0);
 			for (int u = 0; u < width / 8; u++) {
 				//Get chunk
-				onImg.getRGB(u * 8, v * 8, 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, 8, 8, offPixels, 0, 8);
+				on.getRGB(u * 8, v * 8, 8, height - v * 8, onPixels, 0, 8);
+				off.getRGB(u * 8, v * 8, 8, height - v * 8, offPixels, 0, 8);
 				tilesRow[u] = evalTile(onPixels, offPixels);
 			}
 			
 			if (width % 8 != 0) {
 				int u = width / 8;
-				//Rightmost tile column isn't complete
-				onImg.getRGB(u * 8, v * 8, width - u * 8, 8, onPixels, 0, 8);
-				offImg.getRGB(u * 8, v * 8, width - u * 8, 8, offPixels, 0, 8);
+				//Rightmost tile column isn't complete either
+				Arrays.fill(onPixels, 0);
+				Arrays.fill(offPixels, 0);
+				on.getRGB(u * 8, v * 8, width - u * 8, height - v * 8, onPixels, 0, 8);
+				off.getRGB(u * 8, v * 8, width - u * 8, height - v * 8, offPixels, 0, 8);
 				tilesRow[u] = evalTile(onPixels, offPixels);
 			}
 		}
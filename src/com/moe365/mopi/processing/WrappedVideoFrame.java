@@ -0,0 +1,84 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import au.edu.jcu.v4l4j.VideoFrame;
+
+/**
+ * An {@link ImageFrame} backed by a VideoFrame from v4l4j.
+ * @author mailmindlin
+ */
+public class WrappedVideoFrame implements ImageFrame {
+	/**
+	 * Wrap a frame from a {@link au.edu.jcu.v4l4j.JPEGFrameGrabber JPEGFrameGrabber}.
+	 * @param frame Frame to wrap
+	 * @return wrapped frame
+	 */
+	public static WrappedVideoFrame jpeg(VideoFrame frame) {
+		return new WrappedVideoFrame(frame, Format.JPEG, -1, -1);
+	}
+
+	/**
+	 * Wrap a YUYV frame from a {@link au.edu.jcu.v4l4j.RawFrameGrabber RawFrameGrabber}.
+	 * @param frame Frame to wrap
+	 * @param width Width of the frame
+	 * @param height Height of the frame
+	 * @return wrapped frame
+	 */
+	public static WrappedVideoFrame yuyv(VideoFrame frame, int width, int height) {
+		return new WrappedVideoFrame(frame, Format.YUYV, width, height);
+	}
+
+	protected final VideoFrame frame;
+	protected final Format format;
+	protected final int width, height;
+
+	protected WrappedVideoFrame(VideoFrame frame, Format format, int width, int height) {
+		this.frame = frame;
+		this.format = format;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return the wrapped frame
+	 */
+	public VideoFrame getVideoFrame() {
+		return this.frame;
+	}
+
+	@Override
+	public Format getFormat() {
+		return this.format;
+	}
+
+	@Override
+	public ByteBuffer getBuffer() {
+		return frame.getBuffer();
+	}
+
+	@Override
+	public BufferedImage getBufferedImage() {
+		if (this.format == Format.YUYV)
+			return getYuyvImage().toBufferedImage();
+		return frame.getBufferedImage();
+	}
+
+	@Override
+	public YuyvImage getYuyvImage() {
+		if (this.format != Format.YUYV)
+			throw new UnsupportedOperationException("Frame is not YUYV (format: " + this.format + ")");
+		return YuyvImage.wrap(frame.getBuffer(), this.width, this.height);
+	}
+
+	@Override
+	public long getCaptureTime() {
+		return frame.getCaptureTime();
+	}
+
+	@Override
+	public void recycle() {
+		frame.recycle();
+	}
+}
@@ -0,0 +1,123 @@
+package com.moe365.mopi.processing;
+
+import java.util.function.BiFunction;
+
+/**
+ * Calculates the difference between two YUYV frames, without converting them
+ * to RGB first.
+ * <p>
+ * The predicate that {@link DiffGenerator} uses is written in terms of the
+ * red and green deltas between the two frames. Because the YUV to RGB
+ * conversion is linear, we can calculate those deltas directly from the
+ * deltas of the Y, U, and V components (the constant offsets cancel out):
+ *
+ * <pre>
+ * dR = dY + 1.402 dV
+ * dG = dY - 0.344 dU - 0.714 dV
+ * </pre>
+ *
+ * The only thing we lose is the clamping that happens when converting each
+ * frame to RGB, which doesn't really matter for our purposes.
+ * </p>
+ * <p>
+ * Because the chroma samples are shared between pixel pairs, the chroma terms
+ * are only calculated once for every two pixels.
+ * </p>
+ * @author mailmindlin
+ * @see DiffGenerator
+ */
+public class YuvDiffGenerator implements BiFunction<YuyvImage, YuyvImage, BinaryImage> {
+	protected final int frameMinX, frameMaxX, frameMinY, frameMaxY;
+	protected final int tolerance;
+
+	public YuvDiffGenerator(int frameMinX, int frameMinY, int frameMaxX, int frameMaxY, int tolerance) {
+		this.frameMinX = frameMinX;
+		this.frameMinY = frameMinY;
+		this.frameMaxX = frameMaxX;
+		this.frameMaxY = frameMaxY;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * @return the width of the masks generated
+	 */
+	public int getFrameWidth() {
+		return this.frameMaxX - this.frameMinX;
+	}
+
+	/**
+	 * @return the height of the masks generated
+	 */
+	public int getFrameHeight() {
+		return this.frameMaxY - this.frameMinY;
+	}
+
+	/**
+	 * Create an empty mask that covers the entire frame
+	 * @return new mask
+	 */
+	public BitsetBinaryImage createMask() {
+		return new BitsetBinaryImage(getFrameWidth(), getFrameHeight());
+	}
+
+	@Override
+	public BitsetBinaryImage apply(YuyvImage onImg, YuyvImage offImg) {
+		return apply(onImg, offImg, null);
+	}
+
+	/**
+	 * Diff the entire frame, reusing a mask from an earlier frame instead of
+	 * allocating a new one.
+	 * @param onImg Image with the flash on
+	 * @param offImg Image with the flash off
+	 * @param reuse Mask returned by an earlier call to this method, which
+	 *            isn't being used anymore, or null to create a new one
+	 * @return the mask
+	 * @see RegionDiffGenerator#apply(java.awt.image.BufferedImage, java.awt.image.BufferedImage, BinaryImage)
+	 */
+	public BitsetBinaryImage apply(YuyvImage onImg, YuyvImage offImg, BitsetBinaryImage reuse) {
+		BitsetBinaryImage result = reuse;
+		if (result == null)
+			result = createMask();
+		else
+			result.clear();
+		diffRegion(onImg, offImg, result, 0, 0, result.getWidth(), result.getHeight());
+		return result;
+	}
+
+	/**
+	 * Diff the pixels in the region [xMin, xMax) x [yMin, yMax) of the mask.
+	 * @see RegionDiffGenerator#diffRegion(ImageRaster, ImageRaster, BinaryImage, int, int, int, int)
+	 */
+	public void diffRegion(YuyvImage onImg, YuyvImage offImg, BitsetBinaryImage result, int xMin, int yMin, int xMax, int yMax) {
+		final byte[] on = onImg.getData();
+		final byte[] off = offImg.getData();
+		final int pxMin = frameMinX + xMin, pxMax = frameMinX + xMax;
+		//Start on an even pixel, so we're aligned to the chroma samples
+		final int xStart = pxMin & ~1;
+		for (int idxY = yMin; idxY < yMax; idxY++) {
+			final int y = idxY + frameMinY;
+			int idxOn = onImg.getOffset() + y * onImg.getStride() + xStart * 2;
+			int idxOff = offImg.getOffset() + y * offImg.getStride() + xStart * 2;
+			for (int x = xStart; x < pxMax; x += 2, idxOn += 4, idxOff += 4) {
+				int dU = (on[idxOn + 1] & 0xFF) - (off[idxOff + 1] & 0xFF);
+				int dV = (on[idxOn + 3] & 0xFF) - (off[idxOff + 3] & 0xFF);
+				//Fixed-point (x256) coefficients
+				int chromaR = (359 * dV) >> 8;
+				int chromaG = (88 * dU + 183 * dV) >> 8;
+
+				for (int i = 0; i < 2; i++) {
+					int px = x + i;
+					if (px < pxMin || px >= pxMax)
+						continue;
+					int dY = (on[idxOn + i * 2] & 0xFF) - (off[idxOff + i * 2] & 0xFF);
+					int dR = dY + chromaR;
+					int dG = dY - chromaG;
+					//Same predicate as DiffGenerator
+					if (dG > tolerance && (dR < dG - 10 || dR < tolerance))
+						result.set(px - frameMinX, idxY);
+				}
+			}
+		}
+	}
+}
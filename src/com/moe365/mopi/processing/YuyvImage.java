@@ -0,0 +1,153 @@
+package com.moe365.mopi.processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+
+/**
+ * A view of an image in the packed YUYV (YUV 4:2:2) format, which is what
+ * most webcams deliver natively. Every 4 bytes store 2 pixels, in the order
+ * <code>Y0 U Y1 V</code>, where both pixels share the same chroma (U and V)
+ * samples.
+ * <p>
+ * Reading a YUYV image directly lets us skip the JPEG encode (on capture) and
+ * decode (on processing) for every frame.
+ * </p>
+ * @author mailmindlin
+ * @see YuvDiffGenerator
+ */
+public class YuyvImage {
+	protected final byte[] data;
+	/**
+	 * Index of pixel (0, 0) in the data array
+	 */
+	protected final int offset;
+	protected final int width;
+	protected final int height;
+	/**
+	 * Number of bytes per row
+	 */
+	protected final int stride;
+
+	/**
+	 * Wrap the data in a ByteBuffer. If the buffer isn't backed by an array,
+	 * its remaining bytes are copied.
+	 * @param buf Buffer with the image data
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @return view of the image
+	 */
+	public static YuyvImage wrap(ByteBuffer buf, int width, int height) {
+		if (buf.hasArray())
+			return new YuyvImage(buf.array(), buf.arrayOffset() + buf.position(), width, height, width * 2);
+		byte[] data = new byte[buf.remaining()];
+		buf.duplicate().get(data);
+		return new YuyvImage(data, 0, width, height, width * 2);
+	}
+
+	public YuyvImage(byte[] data, int width, int height) {
+		this(data, 0, width, height, width * 2);
+	}
+
+	public YuyvImage(byte[] data, int offset, int width, int height, int stride) {
+		if (width % 2 != 0)
+			throw new IllegalArgumentException("YUYV images must have an even width (width = " + width + ")");
+		if (data.length < offset + (height - 1) * stride + width * 2)
+			throw new IllegalArgumentException("Buffer is too small (expected >=" + (offset + (height - 1) * stride + width * 2) + "; was " + data.length + ")");
+		this.data = data;
+		this.offset = offset;
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the backing array
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return the index of pixel (0, 0) in the backing array
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the number of bytes per row
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Get the luma of the pixel at (x, y)
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return luma, in the range [0, 255]
+	 */
+	public int getY(int x, int y) {
+		return data[offset + y * stride + x * 2] & 0xFF;
+	}
+
+	/**
+	 * Get the blue-difference chroma of the pixel at (x, y). The U sample is
+	 * shared between pixel pairs (2n, 2n+1).
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return U, in the range [0, 255] (128 is neutral)
+	 */
+	public int getU(int x, int y) {
+		return data[offset + y * stride + (x & ~1) * 2 + 1] & 0xFF;
+	}
+
+	/**
+	 * Get the red-difference chroma of the pixel at (x, y). The V sample is
+	 * shared between pixel pairs (2n, 2n+1).
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @return V, in the range [0, 255] (128 is neutral)
+	 */
+	public int getV(int x, int y) {
+		return data[offset + y * stride + (x & ~1) * 2 + 3] & 0xFF;
+	}
+
+	/**
+	 * Convert this image to RGB (BT.601, full range). This is slow, and should
+	 * only be used for stuff like debugging or streaming.
+	 * @return converted image
+	 */
+	public BufferedImage toBufferedImage() {
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] bgr = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+		int dst = 0;
+		for (int y = 0; y < height; y++) {
+			int src = offset + y * stride;
+			for (int x = 0; x < width; x += 2, src += 4) {
+				int u = (data[src + 1] & 0xFF) - 128;
+				int v = (data[src + 3] & 0xFF) - 128;
+				//Fixed-point (x256) coefficients
+				int dr = (359 * v) >> 8;
+				int dg = (88 * u + 183 * v) >> 8;
+				int db = (454 * u) >> 8;
+				for (int i = 0; i < 2; i++) {
+					int luma = data[src + i * 2] & 0xFF;
+					bgr[dst++] = (byte) AbstractImageProcessor.saturateByte(luma + db);
+					bgr[dst++] = (byte) AbstractImageProcessor.saturateByte(luma - dg);
+					bgr[dst++] = (byte) AbstractImageProcessor.saturateByte(luma + dr);
+				}
+			}
+		}
+		return result;
+	}
+}
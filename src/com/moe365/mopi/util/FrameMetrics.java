@@ -0,0 +1,131 @@
+package com.moe365.mopi.util;
+
+/**
+ * Latency histograms for each stage of processing, aggregated from the
+ * {@link FrameTimestamps} of every frame.
+ * <p>
+ * Histogram <var>i</var> is the time from the last stage before <var>i</var>
+ * that the frame reached to stage <var>i</var> (so if a frame skips a stage,
+ * the time is counted towards the next one). There are also histograms for
+ * the total time from the capture callback to sending, and from capture to
+ * sending. Memory use is fixed.
+ * </p>
+ * <p>
+ * Frames must only be {@link #record(FrameTimestamps) recorded} from one
+ * thread at a time (i.e., the thread that sends results), but the metrics
+ * can be read from any thread.
+ * </p>
+ * @author mailmindlin
+ */
+public class FrameMetrics {
+	/**
+	 * Intervals longer than this (in nanoseconds) are assumed to be clock
+	 * errors (i.e., the camera's capture time being on a different clock), and
+	 * aren't recorded.
+	 */
+	public static final long MAX_INTERVAL = 1_000_000_000L;
+
+	protected final LatencyHistogram[] stages = new LatencyHistogram[FrameTimestamps.NUM_STAGES];
+	/**
+	 * Time from the capture callback to sending
+	 */
+	protected final LatencyHistogram total = new LatencyHistogram();
+	/**
+	 * Time from capture to sending
+	 */
+	protected final LatencyHistogram endToEnd = new LatencyHistogram();
+
+	public FrameMetrics() {
+		for (int i = 1; i < stages.length; i++)
+			stages[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * Record a frame's timestamps
+	 * @param timestamps timestamps
+	 */
+	public void record(FrameTimestamps timestamps) {
+		long last = timestamps.get(FrameTimestamps.CAPTURE);
+		for (int i = 1; i < FrameTimestamps.NUM_STAGES; i++) {
+			final long time = timestamps.get(i);
+			if (time == 0)
+				continue;
+			if (last != 0)
+				record(stages[i], time - last);
+			last = time;
+		}
+		final long sent = timestamps.get(FrameTimestamps.SENT);
+		if (sent != 0) {
+			final long callback = timestamps.get(FrameTimestamps.CALLBACK), capture = timestamps.get(FrameTimestamps.CAPTURE);
+			if (callback != 0)
+				record(total, sent - callback);
+			if (capture != 0)
+				record(endToEnd, sent - capture);
+		}
+	}
+
+	protected static void record(LatencyHistogram histogram, long interval) {
+		if (interval >= 0 && interval <= MAX_INTERVAL)
+			histogram.record(interval);
+	}
+
+	/**
+	 * Get the histogram of the time it took frames to reach a stage
+	 * @param stage stage (see {@link FrameTimestamps})
+	 * @return histogram, or null for {@link FrameTimestamps#CAPTURE CAPTURE}
+	 */
+	public LatencyHistogram getStage(int stage) {
+		return stages[stage];
+	}
+
+	public LatencyHistogram getTotal() {
+		return total;
+	}
+
+	public LatencyHistogram getEndToEnd() {
+		return endToEnd;
+	}
+
+	/**
+	 * Serialize the metrics to JSON. All times are in microseconds.
+	 * <pre>
+	 * {"stages":{"callback":{"n":..., "mean":..., "p50":..., "p99":..., "max":...}, ...}, "total":{...}, "endToEnd":{...}}
+	 * </pre>
+	 * @return JSON
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("{\"stages\":{");
+		for (int i = 1; i < stages.length; i++) {
+			if (i > 1)
+				sb.append(',');
+			sb.append('"').append(FrameTimestamps.getName(i)).append("\":");
+			appendJson(sb, stages[i]);
+		}
+		sb.append("},\"total\":");
+		appendJson(sb, total);
+		sb.append(",\"endToEnd\":");
+		appendJson(sb, endToEnd);
+		sb.append('}');
+		return sb.toString();
+	}
+
+	protected static void appendJson(StringBuilder sb, LatencyHistogram histogram) {
+		sb.append("{\"n\":").append(histogram.getCount())
+			.append(",\"mean\":").append(histogram.getMean() / 1e3)
+			.append(",\"p50\":").append(histogram.getPercentile(50) / 1e3)
+			.append(",\"p99\":").append(histogram.getPercentile(99) / 1e3)
+			.append(",\"max\":").append(histogram.getMax() / 1e3)
+			.append('}');
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < stages.length; i++)
+			sb.append(String.format("%-10s %s%n", FrameTimestamps.getName(i), stages[i]));
+		sb.append(String.format("%-10s %s%n", "total", total));
+		sb.append(String.format("%-10s %s", "endToEnd", endToEnd));
+		return sb.toString();
+	}
+}
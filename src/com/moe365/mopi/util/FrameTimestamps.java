@@ -0,0 +1,86 @@
+package com.moe365.mopi.util;
+
+import java.util.Arrays;
+
+/**
+ * When a frame reached each stage of processing, from capture to being sent
+ * to the Rio. Times are from {@link System#nanoTime()}, and 0 if the frame
+ * didn't reach (or skipped) a stage. Reused between frames.
+ * @author mailmindlin
+ * @see FrameMetrics
+ */
+public class FrameTimestamps {
+	/**
+	 * When the (newer) frame of the pair was captured. This comes from the
+	 * camera driver, so it might not be on the same clock as the rest.
+	 */
+	public static final int CAPTURE = 0;
+	/**
+	 * When the capture callback completed the pair
+	 */
+	public static final int CALLBACK = 1;
+	/**
+	 * When the processor took the pair to start processing it
+	 */
+	public static final int ADMITTED = 2;
+	/**
+	 * When both frames were decoded
+	 */
+	public static final int DECODED = 3;
+	/**
+	 * When the diff was done
+	 */
+	public static final int DIFFED = 4;
+	/**
+	 * When the blobs were found
+	 */
+	public static final int EXTRACTED = 5;
+	/**
+	 * When the results were sent to the Rio
+	 */
+	public static final int SENT = 6;
+	public static final int NUM_STAGES = 7;
+	/**
+	 * Names of the stages, for printing
+	 */
+	protected static final String[] NAMES = {"capture", "callback", "admitted", "decoded", "diffed", "extracted", "sent"};
+
+	public static String getName(int stage) {
+		return NAMES[stage];
+	}
+
+	protected final long[] times = new long[NUM_STAGES];
+
+	/**
+	 * Set a stage's time to now
+	 * @param stage stage to mark
+	 */
+	public void mark(int stage) {
+		this.times[stage] = System.nanoTime();
+	}
+
+	public void set(int stage, long nanos) {
+		this.times[stage] = nanos;
+	}
+
+	public long get(int stage) {
+		return this.times[stage];
+	}
+
+	/**
+	 * Set the capture time, from a frame's capture time
+	 * @param micros capture time, in microseconds
+	 * @see com.moe365.mopi.processing.ImageFrame#getCaptureTime()
+	 */
+	public void setCaptureTime(long micros) {
+		this.times[CAPTURE] = micros * 1000;
+	}
+
+	public void clear() {
+		Arrays.fill(this.times, 0);
+	}
+
+	public void copyFrom(FrameTimestamps other) {
+		System.arraycopy(other.times, 0, this.times, 0, NUM_STAGES);
+	}
+}
@@ -0,0 +1,128 @@
+package com.moe365.mopi.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies (in nanoseconds), with log-linear buckets.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} buckets, so any
+ * value that is read back (i.e., a percentile) is within 12.5% of the value
+ * that was recorded, and the histogram is a fixed size, no matter how many
+ * values are recorded. Recording doesn't allocate or lock.
+ * </p>
+ * <p>
+ * Values must only be recorded from one thread at a time, but can be read from
+ * any thread.
+ * </p>
+ * @author mailmindlin
+ */
+public class LatencyHistogram {
+	/**
+	 * Number of buckets that each power of two is split into. Must be a power
+	 * of two.
+	 */
+	protected static final int SUB_BUCKETS = 8;
+	protected static final int SUB_BUCKET_BITS = 3;
+
+	protected final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	protected final AtomicLong count = new AtomicLong(0);
+	protected final AtomicLong sum = new AtomicLong(0);
+	protected final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Get the index of the bucket that a value falls into
+	 */
+	protected static int bucketFor(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	/**
+	 * Get the smallest value that falls into a bucket
+	 */
+	protected static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final int mantissa = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + mantissa)) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Record a value
+	 * @param nanos Latency, in nanoseconds. Negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		final int bucket = bucketFor(nanos);
+		//We're the only writer, so we don't need to CAS
+		buckets.lazySet(bucket, buckets.get(bucket) + 1);
+		sum.lazySet(sum.get() + nanos);
+		if (nanos > max.get())
+			max.lazySet(nanos);
+		count.lazySet(count.get() + 1);
+	}
+
+	/**
+	 * @return number of values recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return largest value recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return mean of the values recorded, in nanoseconds
+	 */
+	public double getMean() {
+		final long count = getCount();
+		return count == 0 ? 0 : ((double) sum.get()) / count;
+	}
+
+	/**
+	 * Get (an upper bound of) a percentile of the recorded values
+	 * @param percentile Percentile, from 0 to 100
+	 * @return value, in nanoseconds
+	 */
+	public long getPercentile(double percentile) {
+		final long count = getCount();
+		if (count == 0)
+			return 0;
+		final long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= target)
+				return Math.min(lowerBound(i + 1) - 1, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clear the histogram. Must be called from the thread that records.
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++)
+			buckets.lazySet(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus", getCount(), getMean() / 1e3,
+				getPercentile(50) / 1e3, getPercentile(90) / 1e3, getPercentile(99) / 1e3, getMax() / 1e3);
+	}
+}